@@ -0,0 +1,68 @@
+package codechicken.diffpatch.gradle.benchmark;
+
+import codechicken.diffpatch.gradle.benchmark.SyntheticTrees.Shape;
+import codechicken.diffpatch.gradle.util.ConsumingOutputStream;
+import codechicken.diffpatch.gradle.util.Utils;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ConsumingOutputStream} splitting log output into lines,
+ * both written in bulk and byte by byte through a {@link PrintStream} as DiffPatch does.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ConsumingOutputStreamBenchmark {
+
+    @Param({"FILES_1K_SMALL", "FILES_16_LARGE"})
+    public Shape shape;
+
+    private byte[] log;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        File root = Files.createTempDirectory("diffpatch-bench").toFile();
+        try {
+            SyntheticTrees.generateBase(root, shape);
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            SyntheticTrees.writeLines(root, bos);
+            log = bos.toByteArray();
+        } finally {
+            Utils.deleteDirectory(root);
+        }
+    }
+
+    @Benchmark
+    public void bulk(Blackhole bh) {
+        try (ConsumingOutputStream os = new ConsumingOutputStream(bh::consume)) {
+            os.write(log, 0, log.length);
+        }
+    }
+
+    @Benchmark
+    public void singleBytes(Blackhole bh) {
+        try (ConsumingOutputStream os = new ConsumingOutputStream(bh::consume)) {
+            for (byte b : log) {
+                os.write(b);
+            }
+        }
+    }
+
+    @Benchmark
+    public void printStream(Blackhole bh) {
+        try (PrintStream ps = new PrintStream(new ConsumingOutputStream(bh::consume))) {
+            ps.write(log, 0, log.length);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package codechicken.diffpatch.gradle.benchmark;
+
+import codechicken.diffpatch.gradle.benchmark.SyntheticTrees.Shape;
+import codechicken.diffpatch.gradle.diff.DiffAction;
+import codechicken.diffpatch.gradle.engine.DiffReport;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link DiffAction} over synthetic trees.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class DiffActionBenchmark {
+
+    @Param({"FILES_1K_SMALL", "FILES_10K_SMALL", "FILES_16_LARGE"})
+    public Shape shape;
+
+    @Param({"DIRECTORY", "ZIP"})
+    public String format;
+
+    @Param({"1"})
+    public int threads;
+
+    private File root;
+    private File base;
+    private File modified;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("diffpatch-bench").toFile();
+        File baseDir = new File(root, "base");
+        File modifiedDir = new File(root, "modified");
+        SyntheticTrees.generateBase(baseDir, shape);
+        SyntheticTrees.generateModified(baseDir, modifiedDir);
+
+        if (format.equals("ZIP")) {
+            base = new File(root, "base.zip");
+            modified = new File(root, "modified.zip");
+            output = new File(root, "patches.zip");
+            SyntheticTrees.zip(baseDir, base);
+            SyntheticTrees.zip(modifiedDir, modified);
+        } else {
+            base = baseDir;
+            modified = modifiedDir;
+            output = new File(root, "patches");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public DiffReport diff() {
+        DiffAction action = new DiffAction((Logger) null);
+        action.setBase(base);
+        action.setModified(modified);
+        action.setOutput(output);
+        if (format.equals("ZIP")) {
+            action.setOutputFormat(ArchiveFormat.ZIP);
+        }
+        action.setThreads(threads);
+        action.setVerbose(false);
+        action.setPrintSummary(false);
+        action.setLifecycleLogging(false);
+        return action.execute();
+    }
+}
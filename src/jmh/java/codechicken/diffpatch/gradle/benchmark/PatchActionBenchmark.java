@@ -0,0 +1,103 @@
+package codechicken.diffpatch.gradle.benchmark;
+
+import codechicken.diffpatch.gradle.benchmark.SyntheticTrees.Drift;
+import codechicken.diffpatch.gradle.benchmark.SyntheticTrees.Shape;
+import codechicken.diffpatch.gradle.diff.DiffAction;
+import codechicken.diffpatch.gradle.engine.PatchReport;
+import codechicken.diffpatch.gradle.patch.PatchAction;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.logging.Logger;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link PatchAction} over synthetic trees.
+ * Patches are made against a base tree, then applied to a copy which has drifted as given by {@link Drift}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PatchActionBenchmark {
+
+    @Param({"FILES_1K_SMALL", "FILES_10K_SMALL", "FILES_16_LARGE"})
+    public Shape shape;
+
+    @Param({"EXACT", "OFFSET", "FUZZY"})
+    public Drift drift;
+
+    @Param({"DIRECTORY", "ZIP"})
+    public String format;
+
+    @Param({"1"})
+    public int threads;
+
+    private File root;
+    private File base;
+    private File patches;
+    private File output;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        root = Files.createTempDirectory("diffpatch-bench").toFile();
+        File original = new File(root, "original");
+        File modified = new File(root, "modified");
+        File drifted = new File(root, "drifted");
+        File patchDir = new File(root, "patches");
+        SyntheticTrees.generateBase(original, shape);
+        SyntheticTrees.generateModified(original, modified);
+        SyntheticTrees.generateDrifted(original, drifted, drift);
+
+        DiffAction diff = new DiffAction((Logger) null);
+        diff.setBase(original);
+        diff.setModified(modified);
+        diff.setOutput(patchDir);
+        diff.setVerbose(false);
+        diff.setPrintSummary(false);
+        diff.setLifecycleLogging(false);
+        diff.execute();
+
+        if (format.equals("ZIP")) {
+            base = new File(root, "base.zip");
+            patches = new File(root, "patches.zip");
+            output = new File(root, "output.zip");
+            SyntheticTrees.zip(drifted, base);
+            SyntheticTrees.zip(patchDir, patches);
+        } else {
+            base = drifted;
+            patches = patchDir;
+            output = new File(root, "output");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Utils.deleteDirectory(root);
+    }
+
+    @Benchmark
+    public PatchReport patch() {
+        PatchAction action = new PatchAction((Logger) null);
+        action.setBase(base);
+        action.setPatches(patches);
+        action.setOutput(output);
+        if (format.equals("ZIP")) {
+            action.setOutputFormat(ArchiveFormat.ZIP);
+        }
+        action.setPatchMode(drift == Drift.FUZZY ? PatchMode.FUZZY : PatchMode.OFFSET);
+        action.setThreads(threads);
+        action.setVerbose(false);
+        action.setPrintSummary(false);
+        action.setLifecycleLogging(false);
+        action.setFailOnError(false);
+        return action.execute();
+    }
+}
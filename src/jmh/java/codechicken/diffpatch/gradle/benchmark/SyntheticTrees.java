@@ -0,0 +1,183 @@
+package codechicken.diffpatch.gradle.benchmark;
+
+import codechicken.diffpatch.gradle.util.Utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.UnaryOperator;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Generates deterministic source-like trees for benchmarks.
+ */
+public class SyntheticTrees {
+
+    /**
+     * A line in the modified tree is changed every this many lines.
+     */
+    private static final int CHANGE_INTERVAL = 25;
+
+    /**
+     * Generates a base tree.
+     *
+     * @param dir   The directory to generate into.
+     * @param shape The shape of the tree.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void generateBase(File dir, Shape shape) throws IOException {
+        Random rand = new Random(shape.ordinal());
+        for (int i = 0; i < shape.files; i++) {
+            List<String> lines = new ArrayList<>(shape.lines);
+            for (int j = 0; j < shape.lines; j++) {
+                lines.add("    public int value" + j + " = " + rand.nextInt(100000) + ";");
+            }
+            Utils.writeFile(new File(dir, path(i)), Utils.joinLines(lines));
+        }
+    }
+
+    /**
+     * Generates a modified copy of a tree, changing, inserting and removing lines at regular intervals.
+     *
+     * @param base     The base tree.
+     * @param modified The directory to generate into.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void generateModified(File base, File modified) throws IOException {
+        transform(base, modified, lines -> {
+            List<String> out = new ArrayList<>(lines.size());
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                if (i % CHANGE_INTERVAL != CHANGE_INTERVAL - 1) {
+                    out.add(line);
+                } else if (i % (CHANGE_INTERVAL * 3) == CHANGE_INTERVAL - 1) {
+                    out.add(line);
+                    out.add("    // Inserted after line " + i);
+                } else if (i % (CHANGE_INTERVAL * 3) != CHANGE_INTERVAL * 2 - 1) {
+                    out.add(line.replace("public", "private"));
+                }
+            }
+            return out;
+        });
+    }
+
+    /**
+     * Generates a copy of a base tree which patches made against the original base apply to
+     * with the given {@link Drift}.
+     *
+     * @param base    The base tree.
+     * @param drifted The directory to generate into.
+     * @param drift   The drift.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void generateDrifted(File base, File drifted, Drift drift) throws IOException {
+        transform(base, drifted, lines -> {
+            List<String> out = new ArrayList<>(lines.size() + 10);
+            if (drift != Drift.EXACT) {
+                for (int i = 0; i < 10; i++) {
+                    out.add("// Drift " + i);
+                }
+            }
+            for (int i = 0; i < lines.size(); i++) {
+                String line = lines.get(i);
+                //Touches a context line of every other hunk.
+                if (drift == Drift.FUZZY && i % (CHANGE_INTERVAL * 2) == CHANGE_INTERVAL + 1) {
+                    line = line + " // Drifted";
+                }
+                out.add(line);
+            }
+            return out;
+        });
+    }
+
+    /**
+     * Packs a tree into a zip.
+     *
+     * @param dir The tree.
+     * @param zip The zip to write.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void zip(File dir, File zip) throws IOException {
+        try (ZipOutputStream zos = new ZipOutputStream(Files.newOutputStream(zip.toPath()))) {
+            for (String path : list(dir)) {
+                zos.putNextEntry(new ZipEntry(path));
+                zos.write(Files.readAllBytes(new File(dir, path).toPath()));
+                zos.closeEntry();
+            }
+        }
+    }
+
+    /**
+     * @return Relative paths of all files in the given tree, sorted.
+     */
+    public static List<String> list(File dir) throws IOException {
+        try (Stream<Path> stream = Files.walk(dir.toPath())) {
+            return stream.filter(Files::isRegularFile)
+                    .map(e -> dir.toPath().relativize(e).toString().replace(File.separatorChar, '/'))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    /**
+     * Writes log-like output for the given tree to the stream, a header line followed by the contents of each file.
+     */
+    public static void writeLines(File dir, OutputStream os) throws IOException {
+        for (String path : list(dir)) {
+            os.write(("Patched: " + path + "\n").getBytes(StandardCharsets.UTF_8));
+            os.write(Files.readAllBytes(new File(dir, path).toPath()));
+        }
+    }
+
+    private static void transform(File from, File to, UnaryOperator<List<String>> transformer) throws IOException {
+        for (String path : list(from)) {
+            List<String> lines = Utils.splitLines(Files.readAllBytes(new File(from, path).toPath()));
+            Utils.writeFile(new File(to, path), Utils.joinLines(transformer.apply(lines)));
+        }
+    }
+
+    private static String path(int index) {
+        return "pkg" + (index / 100) + "/File" + index + ".java";
+    }
+
+    public enum Shape {
+        FILES_1K_SMALL(1000, 60),
+        FILES_10K_SMALL(10000, 60),
+        FILES_16_LARGE(16, 40000);
+
+        private final int files;
+        private final int lines;
+
+        Shape(int files, int lines) {
+            this.files = files;
+            this.lines = lines;
+        }
+    }
+
+    /**
+     * How the base tree being patched has drifted from the base the patches were made against.
+     */
+    public enum Drift {
+        /**
+         * Identical, all hunks apply exactly.
+         */
+        EXACT,
+        /**
+         * Lines are inserted at the start of every file, all hunks apply with an offset.
+         */
+        OFFSET,
+        /**
+         * As {@link #OFFSET}, with context lines of some hunks changed, requiring fuzzy matching.
+         */
+        FUZZY
+    }
+}
@@ -0,0 +1,189 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffEngine;
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.service.MetricsService;
+import codechicken.diffpatch.gradle.service.ZipCacheService;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.WorkerIsolation;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Console;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Base for Task implementations of {@link DiffAction} which declare
+ * their inputs and outputs to Gradle.
+ * <p>
+ * The output path is exposed as either an output directory or an
+ * output file, depending on if an {@link ArchiveFormat} is set.
+ */
+public abstract class AbstractDiffTask extends DefaultTask implements DiffSpec {
+
+    protected final DiffProperties spec;
+    private Object isolation;
+    private final ConfigurableFileCollection baseFiles;
+    private final ConfigurableFileCollection modifiedFiles;
+    private final Provider<MetricsService> metricsService;
+    private final Provider<ZipCacheService> zipCacheService;
+
+    public AbstractDiffTask() {
+        spec = new DiffProperties(getProject());
+        metricsService = MetricsService.register(getProject());
+        zipCacheService = ZipCacheService.register(getProject());
+        spec.setHashIndexDir(getProject().getLayout().getBuildDirectory().dir("tmp/" + getName()));
+        baseFiles = getProject().files((Callable<Object>) () -> spec.getBaseProvider().isPresent() ? spec.getBaseProvider() : null);
+        modifiedFiles = getProject().files((Callable<Object>) () -> spec.getModifiedProvider().isPresent() ? spec.getModifiedProvider() : null);
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getBaseFiles() {
+        return baseFiles;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getModifiedFiles() {
+        return modifiedFiles;
+    }
+
+    @Optional
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return getOutputFormat() == null ? getOutput() : null;
+    }
+
+    @Optional
+    @OutputFile
+    public File getOutputArchive() {
+        return getOutputFormat() != null ? getOutput() : null;
+    }
+
+    /**
+     * Sets the isolation mode to execute this task with Gradle's worker API.
+     * When unset (default), the DiffAction runs directly on the task thread.
+     * May be a {@link WorkerIsolation} or a string
+     * representing one of its values. Metrics and the shared zip cache are
+     * only available without isolation, see {@link DiffWorkAction}.
+     *
+     * @param isolation The isolation.
+     */
+    public void setIsolation(Object isolation) {
+        this.isolation = isolation;
+    }
+
+    public void isolation(Object isolation) {
+        setIsolation(isolation);
+    }
+
+    /**
+     * @return The worker isolation mode, or null if the worker API is not used.
+     */
+    @Internal
+    public WorkerIsolation getIsolation() {
+        return isolation != null ? Utils.resolveWorkerIsolation(isolation) : null;
+    }
+
+    @Inject
+    protected WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Executes the action, either directly or through the worker API.
+     */
+    protected void execute() {
+        WorkerIsolation isolation = getIsolation();
+        if (isolation != null) {
+            DiffWorkAction.submit(getWorkerExecutor(), isolation, this, getPath(), metricsService, zipCacheService);
+        } else {
+            recordMetrics(createAction().execute().getMetrics());
+        }
+    }
+
+    /**
+     * Creates the {@link DiffAction} to execute from this task's current values,
+     * using the build's shared caches.
+     *
+     * @return The action.
+     */
+    protected DiffAction createAction() {
+        DiffAction action = spec.toAction(getLogger());
+        action.setZipCache(getZipCache());
+        return action;
+    }
+
+    /**
+     * @return The build's shared cache of zip input indexes.
+     */
+    @Internal
+    protected ZipIndexCache getZipCache() {
+        return zipCacheService.get().getCache();
+    }
+
+    /**
+     * Records metrics for this task with the build's {@link MetricsService}.
+     *
+     * @param metrics The metrics.
+     */
+    protected void recordMetrics(ExecutionMetrics metrics) {
+        metricsService.get().record(getPath(), "diff", metrics);
+    }
+
+    //@formatter:off
+    @Internal @Override public File getBase() { return spec.getBase(); }
+    @Internal @Override public File getModified() { return spec.getModified(); }
+    @Internal @Override public File getOutput() { return spec.getOutput(); }
+    @Optional @Input @Override public ArchiveFormat getOutputFormat() { return spec.getOutputFormat(); }
+    @Input @Override public boolean isAutoHeader() { return spec.isAutoHeader(); }
+    @Input @Override public int getContextLines() { return spec.getContextLines(); }
+    @Console @Override public boolean isVerbose() { return spec.isVerbose(); }
+    @Console @Override public boolean isPrintSummary() { return spec.isPrintSummary(); }
+    @Internal @Override public int getThreads() { return spec.getThreads(); }
+    @Internal @Override public File getLogFile() { return spec.getLogFile(); }
+    @Console @Override public boolean isLifecycleLogging() { return spec.isLifecycleLogging(); }
+    @Console @Override public boolean isAsyncLogging() { return spec.isAsyncLogging(); }
+    @Optional @OutputFile @Override public File getReportFile() { return spec.getReportFile(); }
+    @Input @Override public int getCompressionLevel() { return spec.getCompressionLevel(); }
+    @Internal @Override public File getHashIndexDir() { return spec.getHashIndexDir(); }
+    @Internal @Override public int getMaxInFlight() { return spec.getMaxInFlight(); }
+    @Input @Override public DiffEngine getDiffEngine() { return spec.getDiffEngine(); }
+    @Input @Override public boolean isVerify() { return spec.isVerify(); }
+    @Override public void setBase(Object base) { spec.setBase(base); }
+    @Override public void setModified(Object modified) { spec.setModified(modified); }
+    @Override public void setOutput(Object patches) { spec.setOutput(patches); }
+    @Override public void setOutputFormat(Object format) { spec.setOutputFormat(format); }
+    @Override public void setAutoHeader(boolean autoHeader) { spec.setAutoHeader(autoHeader); }
+    @Override public void setContextLines(int lines) { spec.setContextLines(lines); }
+    @Override public void setVerbose(boolean verbose) { spec.setVerbose(verbose); }
+    @Override public void setPrintSummary(boolean printSummary) { spec.setPrintSummary(printSummary); }
+    @Override public void setThreads(int threads) { spec.setThreads(threads); }
+    @Override public void setLogFile(Object logFile) { spec.setLogFile(logFile); }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { spec.setLifecycleLogging(lifecycleLogging); }
+    @Override public void setAsyncLogging(boolean asyncLogging) { spec.setAsyncLogging(asyncLogging); }
+    @Override public void setReportFile(Object reportFile) { spec.setReportFile(reportFile); }
+    @Override public void setCompressionLevel(int compressionLevel) { spec.setCompressionLevel(compressionLevel); }
+    @Override public void setHashIndexDir(Object hashIndexDir) { spec.setHashIndexDir(hashIndexDir); }
+    @Override public void setMaxInFlight(int maxInFlight) { spec.setMaxInFlight(maxInFlight); }
+    @Override public void setDiffEngine(Object diffEngine) { spec.setDiffEngine(diffEngine); }
+    @Override public void setVerify(boolean verify) { spec.setVerify(verify); }
+    //@formatter:on
+}
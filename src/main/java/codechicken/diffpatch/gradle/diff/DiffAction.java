@@ -1,10 +1,17 @@
 package codechicken.diffpatch.gradle.diff;
 
 import codechicken.diffpatch.DiffPatch;
+import codechicken.diffpatch.gradle.engine.DiffEngine;
+import codechicken.diffpatch.gradle.engine.DiffOptions;
+import codechicken.diffpatch.gradle.engine.DiffReport;
+import codechicken.diffpatch.gradle.engine.DiffRunner;
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
 import codechicken.diffpatch.gradle.util.ConsumingOutputStream;
+import codechicken.diffpatch.gradle.util.LogSink;
 import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
 import codechicken.diffpatch.util.archiver.ArchiveFormat;
-import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
 
 import java.io.File;
 import java.io.IOException;
@@ -15,6 +22,9 @@ import java.util.stream.Collectors;
 
 /**
  * Executes a Diff operation with DiffPatch.
+ * <p>
+ * Directories and zips are diffed in-process by a {@link DiffRunner},
+ * other archive formats are passed to DiffPatch's command line entry point.
  *
  * @see DiffSpec
  * Created by covers1624 on 14/8/20.
@@ -23,22 +33,58 @@ public class DiffAction implements DiffSpec {
 
     private final boolean DEBUG = Boolean.getBoolean("codechicken.diffpatch.gradle.debug");
 
-    private final Project project;
+    //Defaults, shared with DiffProperties.
+    static final boolean DEFAULT_AUTO_HEADER = false;
+    static final int DEFAULT_CONTEXT_LINES = -1;
+    static final boolean DEFAULT_VERBOSE = true;
+    static final boolean DEFAULT_PRINT_SUMMARY = true;
+    static final int DEFAULT_THREADS = 1;
+    static final boolean DEFAULT_LIFECYCLE_LOGGING = true;
+    static final boolean DEFAULT_ASYNC_LOGGING = false;
+    static final int DEFAULT_COMPRESSION_LEVEL = -1;
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+    static final DiffEngine DEFAULT_DIFF_ENGINE = DiffEngine.PATIENCE;
+    static final boolean DEFAULT_VERIFY = false;
+
+    private final Logger logger;
 
     private Object base;
     private Object modified;
     private Object output;
     private Object outputFormat;
-    private boolean autoHeader;
-    private int contextLines = -1;
-    private boolean verbose = true;
-    private boolean printSummary = true;
+    private boolean autoHeader = DEFAULT_AUTO_HEADER;
+    private int contextLines = DEFAULT_CONTEXT_LINES;
+    private boolean verbose = DEFAULT_VERBOSE;
+    private boolean printSummary = DEFAULT_PRINT_SUMMARY;
+    private int threads = DEFAULT_THREADS;
+    private Object logFile;
+    private boolean lifecycleLogging = DEFAULT_LIFECYCLE_LOGGING;
+    private boolean asyncLogging = DEFAULT_ASYNC_LOGGING;
+    private Object reportFile;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private Object hashIndexDir;
+    private ZipIndexCache zipCache;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+    private Object diffEngine = DEFAULT_DIFF_ENGINE;
+    private boolean verify = DEFAULT_VERIFY;
 
-    public DiffAction(Project project) {
-        this.project = project;
+    /**
+     * Creates a DiffAction. It is not bound to a Project, so all paths
+     * set on it must be absolute. {@link DiffProperties#toAction} creates
+     * one from a task's values.
+     *
+     * @param logger The logger to output to.
+     */
+    public DiffAction(Logger logger) {
+        this.logger = logger;
     }
 
-    public void execute() {
+    /**
+     * Executes the diff operation.
+     *
+     * @return The report.
+     */
+    public DiffReport execute() {
         if (base == null) {
             throw new IllegalStateException("Base path not specified.");
         }
@@ -49,62 +95,174 @@ public class DiffAction implements DiffSpec {
             throw new IllegalStateException("Output path not specified.");
         }
 
-        File base = getBase();
-        File modified = getModified();
-        File output = getOutput();
-        ArchiveFormat outputFormat = getOutputFormat();
-        int contextLines = getContextLines();
+        long resolveStart = System.nanoTime();
+        DiffOptions options = toOptions();
+        File reportFile = getReportFile();
+        long resolveNanos = System.nanoTime() - resolveStart;
+
+        DiffReport report = null;
+        try (LogSink sink = createLogSink()) {
+            if (DiffRunner.isSupported(options)) {
+                report = new DiffRunner(options, sink, zipCache).diff();
+            } else if (options.isVerify()) {
+                throw new IllegalStateException("Verification requires the base and modified to be directories or zips.");
+            } else if (options.getEngine() != DiffEngine.PATIENCE) {
+                throw new IllegalStateException("DiffEngine " + options.getEngine() + " requires the base and modified to be directories or zips.");
+            } else {
+                warnIgnored();
+                long start = System.nanoTime();
+                int exit = executeCli(options, sink);
+                report = DiffReport.fromExitCode(exit, System.nanoTime() - start);
+                report.getMetrics().addTime(ExecutionMetrics.Phase.PROCESS, report.getElapsedNanos());
+                report.getMetrics().addElapsed(report.getElapsedNanos());
+            }
+            report.getMetrics().addTime(ExecutionMetrics.Phase.RESOLVE, resolveNanos);
+            report.getMetrics().addElapsed(resolveNanos);
+            if (reportFile != null) {
+                report.write(reportFile);
+            }
+        } catch (IOException e) {
+            codechicken.diffpatch.util.Utils.throwUnchecked(e);
+        }
+        if (report.getVerifyFailed() != 0) {
+            throw new RuntimeException("Generated patches failed to re-apply for " + report.getVerifyFailed() + " files.");
+        }
+        return report;
+    }
+
+    /**
+     * Resolves this action into typed {@link DiffOptions}.
+     *
+     * @return The options.
+     */
+    public DiffOptions toOptions() {
+        DiffOptions options = new DiffOptions();
+        options.setBase(getBase());
+        options.setModified(getModified());
+        options.setOutput(getOutput());
+        options.setOutputFormat(getOutputFormat());
+        options.setAutoHeader(isAutoHeader());
+        options.setContextLines(getContextLines());
+        options.setThreads(getThreads());
+        options.setCompressionLevel(getCompressionLevel());
+        options.setHashIndexDir(getHashIndexDir());
+        options.setEngine(getDiffEngine());
+        options.setVerify(isVerify());
+        options.setMaxInFlightBytes(getMaxInFlight() * 1024L * 1024L);
+        options.setVerbose(isVerbose());
+        options.setPrintSummary(isPrintSummary());
+        return options;
+    }
+
+    /**
+     * Sets the cache to open zip inputs from, when diffing in-process.
+     *
+     * @param zipCache The cache, null to index zips for each execution.
+     */
+    public void setZipCache(ZipIndexCache zipCache) {
+        this.zipCache = zipCache;
+    }
+
+    public ZipIndexCache getZipCache() {
+        return zipCache;
+    }
+
+    /**
+     * Creates the {@link LogSink} for an execution of this action.
+     *
+     * @return The sink.
+     * @throws IOException If the log file could not be opened.
+     */
+    public LogSink createLogSink() throws IOException {
+        return new LogSink(isLifecycleLogging() ? logger : null, getLogFile(), isAsyncLogging());
+    }
+
+    /**
+     * Warns about options which only apply in-process, and so are ignored by {@link #executeCli}.
+     */
+    private void warnIgnored() {
+        List<String> ignored = new ArrayList<>();
+        if (getThreads() != DEFAULT_THREADS) {
+            ignored.add("threads");
+        }
+        if (getCompressionLevel() != DEFAULT_COMPRESSION_LEVEL) {
+            ignored.add("compressionLevel");
+        }
+        //Hash indexes are only kept for directory inputs, for others it would go unused in-process too.
+        if (getHashIndexDir() != null && (getBase().isDirectory() || getModified().isDirectory())) {
+            ignored.add("hashIndexDir");
+        }
+        if (getMaxInFlight() != DEFAULT_MAX_IN_FLIGHT) {
+            ignored.add("maxInFlight");
+        }
+        if (!ignored.isEmpty() && logger != null) {
+            logger.warn("Ignoring {}, only supported when the inputs and output are directories or zips.", String.join(", ", ignored));
+        }
+    }
 
+    /**
+     * Runs DiffPatch through its command line entry point.
+     * Only used for archive formats the {@link DiffRunner} does not support.
+     */
+    private int executeCli(DiffOptions options, LogSink sink) throws IOException {
         List<String> args = new ArrayList<>();
         args.add("-d");
-        if (isAutoHeader()) {
+        if (options.isAutoHeader()) {
             args.add("--auto-header");
         }
-        if (contextLines != -1) {
+        if (options.getContextLines() != -1) {
             args.add("--context");
-            args.add(String.valueOf(contextLines));
+            args.add(String.valueOf(options.getContextLines()));
         }
-        if (isVerbose()) {
+        if (options.isVerbose()) {
             args.add("--verbose");
         }
-        if (isPrintSummary()) {
+        if (options.isPrintSummary()) {
             args.add("--summary");
         }
         args.add("--output");
-        args.add(output.getAbsolutePath());
-        if (outputFormat != null) {
+        args.add(options.getOutput().getAbsolutePath());
+        if (options.getOutputFormat() != null) {
             args.add("--archive");
-            args.add(outputFormat.name());
+            args.add(options.getOutputFormat().name());
         }
-        args.add(base.getAbsolutePath());
-        args.add(modified.getAbsolutePath());
+        args.add(options.getBase().getAbsolutePath());
+        args.add(options.getModified().getAbsolutePath());
 
         if (DEBUG) {
             String line = args.stream().map(e -> "\"" + e + "\"").collect(Collectors.joining(" "));
-            project.getLogger().info("Starting DiffPatch with arguments: {}", line);
+            logger.info("Starting DiffPatch with arguments: {}", line);
         }
 
-        PrintStream logger = new PrintStream(new ConsumingOutputStream(line -> project.getLogger().lifecycle(line)));
-        int exit = 0;
-        try {
-            exit = DiffPatch.mainI(args.toArray(new String[0]), logger, null);
-        } catch (IOException e) {
-            codechicken.diffpatch.util.Utils.throwUnchecked(e);
+        int exit;
+        try (PrintStream printer = new PrintStream(new ConsumingOutputStream(sink))) {
+            exit = DiffPatch.mainI(args.toArray(new String[0]), printer, null);
         }
         if (exit != 0 && exit != 1) {
             throw new RuntimeException("DiffPatch failed with exit code: " + exit);
         }
+        return exit;
     }
 
     //@formatter:off
-    @Override public File getBase() { return base != null ? Utils.resolveFile(project, base) : null; }
-    @Override public File getModified() { return modified != null ? Utils.resolveFile(project, modified) : null; }
-    @Override public File getOutput() { return output != null ? Utils.resolveFile(project, output) : null; }
+    @Override public File getBase() { return Utils.resolveAbsoluteFile(base); }
+    @Override public File getModified() { return Utils.resolveAbsoluteFile(modified); }
+    @Override public File getOutput() { return Utils.resolveAbsoluteFile(output); }
     @Override public ArchiveFormat getOutputFormat() { return outputFormat != null ? Utils.resolveArchiveFormat(outputFormat) : null; }
     @Override public boolean isAutoHeader() { return autoHeader; }
     @Override public int getContextLines() { return contextLines; }
     @Override public boolean isVerbose() { return verbose; }
     @Override public boolean isPrintSummary() { return printSummary; }
+    @Override public int getThreads() { return threads; }
+    @Override public File getLogFile() { return Utils.resolveAbsoluteFile(logFile); }
+    @Override public boolean isLifecycleLogging() { return lifecycleLogging; }
+    @Override public boolean isAsyncLogging() { return asyncLogging; }
+    @Override public File getReportFile() { return Utils.resolveAbsoluteFile(reportFile); }
+    @Override public int getCompressionLevel() { return compressionLevel; }
+    @Override public File getHashIndexDir() { return Utils.resolveAbsoluteFile(hashIndexDir); }
+    @Override public int getMaxInFlight() { return maxInFlight; }
+    @Override public DiffEngine getDiffEngine() { return Utils.resolveDiffEngine(diffEngine); }
+    @Override public boolean isVerify() { return verify; }
     @Override public void setBase(Object base) { this.base = base; }
     @Override public void setModified(Object modified) { this.modified = modified; }
     @Override public void setOutput(Object patches) { this.output = patches; }
@@ -113,5 +271,15 @@ public class DiffAction implements DiffSpec {
     @Override public void setContextLines(int lines) { this.contextLines = lines; }
     @Override public void setVerbose(boolean verbose) { this.verbose = verbose; }
     @Override public void setPrintSummary(boolean printSummary) { this.printSummary = printSummary; }
+    @Override public void setThreads(int threads) { this.threads = threads; }
+    @Override public void setLogFile(Object logFile) { this.logFile = logFile; }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { this.lifecycleLogging = lifecycleLogging; }
+    @Override public void setAsyncLogging(boolean asyncLogging) { this.asyncLogging = asyncLogging; }
+    @Override public void setReportFile(Object reportFile) { this.reportFile = reportFile; }
+    @Override public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+    @Override public void setHashIndexDir(Object hashIndexDir) { this.hashIndexDir = hashIndexDir; }
+    @Override public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
+    @Override public void setDiffEngine(Object diffEngine) { this.diffEngine = diffEngine; }
+    @Override public void setVerify(boolean verify) { this.verify = verify; }
     //@formatter:on
 }
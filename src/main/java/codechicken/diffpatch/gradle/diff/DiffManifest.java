@@ -0,0 +1,135 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffReport;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Persisted record of the {@link DiffReport.FileReport} for each patch
+ * in the output of an {@link IncrementalDiffTask}, so an incremental
+ * execution can report on the whole tree and not just the files it diffed.
+ * <p>
+ * Stored as a simple tab separated file, one line per changed file.
+ */
+public class DiffManifest {
+
+    private static final String NULL_ERROR = "-";
+
+    private final Map<String, DiffReport.FileReport> files = new TreeMap<>();
+
+    /**
+     * Loads a manifest from disk.
+     *
+     * @param file The file.
+     * @return The manifest, or null if it does not exist or is malformed.
+     * @throws IOException If an IO error occurs.
+     */
+    public static DiffManifest load(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        DiffManifest manifest = new DiffManifest();
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] split = line.split("\t", -1);
+                if (split.length != 7) {
+                    return null;
+                }
+                try {
+                    manifest.put(new DiffReport.FileReport(
+                            split[0],
+                            DiffReport.Status.valueOf(split[1]),
+                            Integer.parseInt(split[2]),
+                            Long.parseLong(split[3]),
+                            Long.parseLong(split[4]),
+                            Long.parseLong(split[5]),
+                            NULL_ERROR.equals(split[6]) ? null : unescape(split[6])
+                    ));
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+            }
+        }
+        return manifest;
+    }
+
+    public void save(File file) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            for (DiffReport.FileReport report : files.values()) {
+                writer.write(report.getPath() + "\t" + report.getStatus() + "\t" + report.getHunks()
+                        + "\t" + report.getBytesRead() + "\t" + report.getBytesWritten() + "\t" + report.getElapsedNanos()
+                        + "\t" + (report.getVerifyError() != null ? escape(report.getVerifyError()) : NULL_ERROR) + "\n");
+            }
+        }
+    }
+
+    public void put(DiffReport.FileReport report) {
+        files.put(report.getPath(), report);
+    }
+
+    /**
+     * Replaces the reports for the given paths with the reports of diffing them again.
+     * Paths without a new report are now unchanged, and are removed.
+     *
+     * @param paths   The paths which were diffed again.
+     * @param reports The new reports, for the paths which still changed.
+     */
+    public void update(Collection<String> paths, Collection<DiffReport.FileReport> reports) {
+        for (String path : paths) {
+            files.remove(path);
+        }
+        for (DiffReport.FileReport report : reports) {
+            put(report);
+        }
+    }
+
+    /**
+     * @return The reports, in path order.
+     */
+    public List<DiffReport.FileReport> getFiles() {
+        return new ArrayList<>(files.values());
+    }
+
+    private static String escape(String str) {
+        return str.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    private static String unescape(String str) {
+        StringBuilder builder = new StringBuilder(str.length());
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            if (c != '\\' || i + 1 == str.length()) {
+                builder.append(c);
+                continue;
+            }
+            char next = str.charAt(++i);
+            switch (next) {
+                case 't':
+                    builder.append('\t');
+                    break;
+                case 'n':
+                    builder.append('\n');
+                    break;
+                case 'r':
+                    builder.append('\r');
+                    break;
+                default:
+                    builder.append(next);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+}
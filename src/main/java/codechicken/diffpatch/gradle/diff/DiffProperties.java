@@ -0,0 +1,175 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffEngine;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+
+import java.io.File;
+import java.util.function.Function;
+
+/**
+ * A {@link DiffSpec} which holds its values in Gradle {@link Property}s, used by the diff tasks.
+ * <p>
+ * Values given to the setters are resolved lazily, when they are read. A {@link Provider}
+ * may be given for any file or enum value, and is wired in directly, so task dependencies
+ * carry through. Relative paths are resolved against the project directory.
+ * <p>
+ * No reference to the Project is kept, so tasks holding this are compatible with
+ * Gradle's configuration cache. {@link #toAction(Logger)} creates the action to execute.
+ */
+public class DiffProperties implements DiffSpec {
+
+    private final ProviderFactory providers;
+    private final File projectDir;
+    private final Property<File> base;
+    private final Property<File> modified;
+    private final Property<File> output;
+    private final Property<ArchiveFormat> outputFormat;
+    private final Property<Boolean> autoHeader;
+    private final Property<Integer> contextLines;
+    private final Property<Boolean> verbose;
+    private final Property<Boolean> printSummary;
+    private final Property<Integer> threads;
+    private final Property<File> logFile;
+    private final Property<Boolean> lifecycleLogging;
+    private final Property<Boolean> asyncLogging;
+    private final Property<File> reportFile;
+    private final Property<Integer> compressionLevel;
+    private final Property<File> hashIndexDir;
+    private final Property<Integer> maxInFlight;
+    private final Property<DiffEngine> diffEngine;
+    private final Property<Boolean> verify;
+
+    public DiffProperties(Project project) {
+        ObjectFactory objects = project.getObjects();
+        providers = project.getProviders();
+        projectDir = project.getProjectDir();
+        base = objects.property(File.class);
+        modified = objects.property(File.class);
+        output = objects.property(File.class);
+        outputFormat = objects.property(ArchiveFormat.class);
+        autoHeader = objects.property(Boolean.class).convention(DiffAction.DEFAULT_AUTO_HEADER);
+        contextLines = objects.property(Integer.class).convention(DiffAction.DEFAULT_CONTEXT_LINES);
+        verbose = objects.property(Boolean.class).convention(DiffAction.DEFAULT_VERBOSE);
+        printSummary = objects.property(Boolean.class).convention(DiffAction.DEFAULT_PRINT_SUMMARY);
+        threads = objects.property(Integer.class).convention(DiffAction.DEFAULT_THREADS);
+        logFile = objects.property(File.class);
+        lifecycleLogging = objects.property(Boolean.class).convention(DiffAction.DEFAULT_LIFECYCLE_LOGGING);
+        asyncLogging = objects.property(Boolean.class).convention(DiffAction.DEFAULT_ASYNC_LOGGING);
+        reportFile = objects.property(File.class);
+        compressionLevel = objects.property(Integer.class).convention(DiffAction.DEFAULT_COMPRESSION_LEVEL);
+        hashIndexDir = objects.property(File.class);
+        maxInFlight = objects.property(Integer.class).convention(DiffAction.DEFAULT_MAX_IN_FLIGHT);
+        diffEngine = objects.property(DiffEngine.class).convention(DiffAction.DEFAULT_DIFF_ENGINE);
+        verify = objects.property(Boolean.class).convention(DiffAction.DEFAULT_VERIFY);
+    }
+
+    /**
+     * Creates a {@link DiffAction} from the current values, with all paths absolute.
+     * The action does not reference the Project, so may be created at execution time.
+     *
+     * @param logger The logger for the action to output to.
+     * @return The action.
+     */
+    public DiffAction toAction(Logger logger) {
+        DiffAction action = new DiffAction(logger);
+        action.setBase(absolute(getBase()));
+        action.setModified(absolute(getModified()));
+        action.setOutput(absolute(getOutput()));
+        action.setOutputFormat(getOutputFormat());
+        action.setAutoHeader(isAutoHeader());
+        action.setContextLines(getContextLines());
+        action.setVerbose(isVerbose());
+        action.setPrintSummary(isPrintSummary());
+        action.setThreads(getThreads());
+        action.setLogFile(absolute(getLogFile()));
+        action.setLifecycleLogging(isLifecycleLogging());
+        action.setAsyncLogging(isAsyncLogging());
+        action.setReportFile(absolute(getReportFile()));
+        action.setCompressionLevel(getCompressionLevel());
+        action.setHashIndexDir(absolute(getHashIndexDir()));
+        action.setMaxInFlight(getMaxInFlight());
+        action.setDiffEngine(getDiffEngine());
+        action.setVerify(isVerify());
+        return action;
+    }
+
+    /**
+     * @return The base path, as a provider carrying the task dependencies of any provider it was set from.
+     */
+    public Provider<File> getBaseProvider() {
+        return base;
+    }
+
+    /**
+     * @return The modified path, as a provider carrying the task dependencies of any provider it was set from.
+     */
+    public Provider<File> getModifiedProvider() {
+        return modified;
+    }
+
+    /**
+     * Wraps a value given to a setter so it is resolved when read.
+     * Providers are mapped rather than wrapped, keeping their task dependencies.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Provider<T> lazy(Object value, Function<Object, T> resolver) {
+        if (value instanceof Provider) {
+            return ((Provider<Object>) value).map(resolver::apply);
+        }
+        return providers.provider(() -> value != null ? resolver.apply(value) : null);
+    }
+
+    private File file(Object value) {
+        return Utils.resolveFile(projectDir, value);
+    }
+
+    private static File absolute(File file) {
+        return file != null ? file.getAbsoluteFile() : null;
+    }
+
+    //@formatter:off
+    @Override public File getBase() { return base.getOrNull(); }
+    @Override public File getModified() { return modified.getOrNull(); }
+    @Override public File getOutput() { return output.getOrNull(); }
+    @Override public ArchiveFormat getOutputFormat() { return outputFormat.getOrNull(); }
+    @Override public boolean isAutoHeader() { return autoHeader.get(); }
+    @Override public int getContextLines() { return contextLines.get(); }
+    @Override public boolean isVerbose() { return verbose.get(); }
+    @Override public boolean isPrintSummary() { return printSummary.get(); }
+    @Override public int getThreads() { return threads.get(); }
+    @Override public File getLogFile() { return logFile.getOrNull(); }
+    @Override public boolean isLifecycleLogging() { return lifecycleLogging.get(); }
+    @Override public boolean isAsyncLogging() { return asyncLogging.get(); }
+    @Override public File getReportFile() { return reportFile.getOrNull(); }
+    @Override public int getCompressionLevel() { return compressionLevel.get(); }
+    @Override public File getHashIndexDir() { return hashIndexDir.getOrNull(); }
+    @Override public int getMaxInFlight() { return maxInFlight.get(); }
+    @Override public DiffEngine getDiffEngine() { return diffEngine.getOrNull(); }
+    @Override public boolean isVerify() { return verify.get(); }
+    @Override public void setBase(Object base) { this.base.set(lazy(base, this::file)); }
+    @Override public void setModified(Object modified) { this.modified.set(lazy(modified, this::file)); }
+    @Override public void setOutput(Object patches) { this.output.set(lazy(patches, this::file)); }
+    @Override public void setOutputFormat(Object format) { this.outputFormat.set(lazy(format, Utils::resolveArchiveFormat)); }
+    @Override public void setAutoHeader(boolean autoHeader) { this.autoHeader.set(autoHeader); }
+    @Override public void setContextLines(int lines) { this.contextLines.set(lines); }
+    @Override public void setVerbose(boolean verbose) { this.verbose.set(verbose); }
+    @Override public void setPrintSummary(boolean printSummary) { this.printSummary.set(printSummary); }
+    @Override public void setThreads(int threads) { this.threads.set(threads); }
+    @Override public void setLogFile(Object logFile) { this.logFile.set(lazy(logFile, this::file)); }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { this.lifecycleLogging.set(lifecycleLogging); }
+    @Override public void setAsyncLogging(boolean asyncLogging) { this.asyncLogging.set(asyncLogging); }
+    @Override public void setReportFile(Object reportFile) { this.reportFile.set(lazy(reportFile, this::file)); }
+    @Override public void setCompressionLevel(int compressionLevel) { this.compressionLevel.set(compressionLevel); }
+    @Override public void setHashIndexDir(Object hashIndexDir) { this.hashIndexDir.set(lazy(hashIndexDir, this::file)); }
+    @Override public void setMaxInFlight(int maxInFlight) { this.maxInFlight.set(maxInFlight); }
+    @Override public void setDiffEngine(Object diffEngine) { this.diffEngine.set(lazy(diffEngine, Utils::resolveDiffEngine)); }
+    @Override public void setVerify(boolean verify) { this.verify.set(verify); }
+    //@formatter:on
+}
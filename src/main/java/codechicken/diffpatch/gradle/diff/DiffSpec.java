@@ -1,10 +1,15 @@
 package codechicken.diffpatch.gradle.diff;
 
+import codechicken.diffpatch.gradle.engine.DiffEngine;
 import codechicken.diffpatch.util.archiver.ArchiveFormat;
 
 import java.io.File;
 
 /**
+ * Setters taking an Object accept anything Gradle can resolve to a File or value,
+ * including a {@link org.gradle.api.provider.Provider}. On the diff tasks, values are
+ * resolved lazily and Providers keep their task dependencies, see {@link DiffProperties}.
+ * <p>
  * Created by covers1624 on 14/8/20.
  */
 public interface DiffSpec {
@@ -59,6 +64,72 @@ public interface DiffSpec {
 
     boolean isPrintSummary();
 
+    /**
+     * The number of threads to diff files with.
+     *
+     * @return The number of threads.
+     */
+    int getThreads();
+
+    /**
+     * Gets the file log output is written to.
+     *
+     * @return The file, or null.
+     */
+    File getLogFile();
+
+    /**
+     * @return If log output is sent to Gradle's lifecycle logger.
+     */
+    boolean isLifecycleLogging();
+
+    /**
+     * @return If log output is written by a background thread.
+     */
+    boolean isAsyncLogging();
+
+    /**
+     * Gets the file a JSON {@link codechicken.diffpatch.gradle.engine.DiffReport} is written to.
+     *
+     * @return The file, or null.
+     */
+    File getReportFile();
+
+    /**
+     * The compression level used when writing the output archive.
+     *
+     * @return The level, -1 for the default, 0 to store entries uncompressed.
+     */
+    int getCompressionLevel();
+
+    /**
+     * The directory hash indexes of the input trees are persisted in.
+     *
+     * @return The directory, or null if hashes are not persisted.
+     */
+    File getHashIndexDir();
+
+    /**
+     * The maximum size of files held in memory at once, in MiB.
+     *
+     * @return The size.
+     */
+    int getMaxInFlight();
+
+    /**
+     * The engine used to compute diffs.
+     *
+     * @return The engine.
+     */
+    DiffEngine getDiffEngine();
+
+    /**
+     * If generated patches are verified to re-apply.
+     *
+     * @return If patches are verified.
+     */
+    boolean isVerify();
+
     /**
      * Set the base file path for the diff operation.
      * Can be a File, Supplier, Closure, String.
@@ -119,6 +190,106 @@ public interface DiffSpec {
 
     void setPrintSummary(boolean printSummary);
 
+    /**
+     * Sets the number of threads to diff files with.
+     * When greater than 1, file pairs are diffed concurrently on a
+     * bounded pool, with patches still written in a deterministic order.
+     * Only directories and zips are supported by the in-process engine,
+     * other archive formats always run single threaded.
+     *
+     * @param threads The number of threads.
+     */
+    void setThreads(int threads);
+
+    /**
+     * Sets a file to write log output to, in addition to or
+     * instead of the lifecycle logger.
+     * Can be a File, Supplier, Closure, String.
+     * A Supplier or Closure will be evaluated at task execution.
+     *
+     * @param logFile The file.
+     */
+    void setLogFile(Object logFile);
+
+    /**
+     * Sets if log output is sent to Gradle's lifecycle logger.
+     * Disable along with setting a log file to only log to the file.
+     *
+     * @param lifecycleLogging The value.
+     */
+    void setLifecycleLogging(boolean lifecycleLogging);
+
+    /**
+     * Sets if log output is queued and written by a background thread,
+     * so diffing and patching never blocks on the logger or log file.
+     *
+     * @param asyncLogging The value.
+     */
+    void setAsyncLogging(boolean asyncLogging);
+
+    /**
+     * Sets a file to write a JSON report of the diff operation to,
+     * with per-file status, hunk counts, bytes and timing.
+     * Can be a File, Supplier, Closure, String.
+     * A Supplier or Closure will be evaluated at task execution.
+     *
+     * @param reportFile The file.
+     */
+    void setReportFile(Object reportFile);
+
+    /**
+     * Sets the compression level used when writing the output archive,
+     * from 0 to 9. -1 (default) uses the Deflater's default level, and 0 stores
+     * entries without compression, the cheapest option for intermediate archives
+     * consumed by another task. Ignored for directory outputs.
+     *
+     * @param compressionLevel The level.
+     */
+    void setCompressionLevel(int compressionLevel);
+
+    /**
+     * Sets the directory to persist a hash index of each directory input tree in.
+     * Files which are unchanged since the last execution, by size and modification
+     * time, are compared by their indexed hash without being read.
+     * The tasks default this to their temporary directory.
+     *
+     * @param hashIndexDir The directory, null to not persist hashes.
+     */
+    void setHashIndexDir(Object hashIndexDir);
+
+    /**
+     * Sets the maximum size of files held in memory at once, in MiB.
+     * Trees are processed file by file, with output written as it goes,
+     * so this bounds the memory used across all threads. A single file
+     * larger than this is still processed, on its own. Defaults to 64,
+     * lower it for memory limited daemons.
+     *
+     * @param maxInFlight The size.
+     */
+    void setMaxInFlight(int maxInFlight);
+
+    /**
+     * Sets the engine used to compute diffs.
+     * May be a {@link DiffEngine} or a string
+     * representing one of its values.
+     * Defaults to {@link DiffEngine#PATIENCE}.
+     *
+     * @param diffEngine The engine.
+     */
+    void setDiffEngine(Object diffEngine);
+
+    /**
+     * Sets if each generated patch is verified as it is diffed, by parsing it back
+     * and applying it exactly, in memory, to the base file, then checking the result
+     * is identical to the modified file. Only files which
+     * fail to round trip are logged and recorded in the report, and fail the task.
+     * This gives the same guarantee as patching the output again, without reading
+     * the trees or writing a patched tree a second time.
+     *
+     * @param verify If patches are verified.
+     */
+    void setVerify(boolean verify);
+
     //Groovy magic overloads.
     //@formatter:off
     default void base(Object base) { setBase(base); }
@@ -129,5 +300,15 @@ public interface DiffSpec {
     default void contextLines(int lines) { setContextLines(lines); }
     default void verbose(boolean quiet) { setVerbose(quiet); }
     default void printSummary(boolean quiet) { setPrintSummary(quiet); }
+    default void threads(int threads) { setThreads(threads); }
+    default void logFile(Object logFile) { setLogFile(logFile); }
+    default void lifecycleLogging(boolean lifecycleLogging) { setLifecycleLogging(lifecycleLogging); }
+    default void asyncLogging(boolean asyncLogging) { setAsyncLogging(asyncLogging); }
+    default void reportFile(Object reportFile) { setReportFile(reportFile); }
+    default void compressionLevel(int compressionLevel) { setCompressionLevel(compressionLevel); }
+    default void hashIndexDir(Object hashIndexDir) { setHashIndexDir(hashIndexDir); }
+    default void maxInFlight(int maxInFlight) { setMaxInFlight(maxInFlight); }
+    default void diffEngine(Object diffEngine) { setDiffEngine(diffEngine); }
+    default void verify(boolean verify) { setVerify(verify); }
     //@formatter:on
 }
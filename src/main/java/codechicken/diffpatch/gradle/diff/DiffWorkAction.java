@@ -0,0 +1,136 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffEngine;
+import codechicken.diffpatch.gradle.engine.DiffReport;
+import codechicken.diffpatch.gradle.service.MetricsService;
+import codechicken.diffpatch.gradle.service.ZipCacheService;
+import codechicken.diffpatch.gradle.util.WorkerIsolation;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkerExecutor;
+
+import java.io.File;
+
+/**
+ * Runs a {@link DiffAction} inside a Gradle worker.
+ * <p>
+ * Without isolation, the work uses the build's {@link MetricsService} and {@link ZipCacheService}
+ * like a task executing directly. Gradle can't pass build services into isolated workers, so with
+ * {@link WorkerIsolation#CLASSLOADER classloader} or {@link WorkerIsolation#PROCESS process}
+ * isolation no metrics are recorded, and every zip is indexed afresh.
+ *
+ * @see #submit(WorkerExecutor, WorkerIsolation, DiffSpec, String, Provider, Provider)
+ */
+public abstract class DiffWorkAction implements WorkAction<DiffWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(DiffWorkAction.class);
+
+    /**
+     * Submits the given {@link DiffSpec} for execution with the {@link WorkerExecutor}.
+     * All values are resolved immediately.
+     *
+     * @param executor        The {@link WorkerExecutor}.
+     * @param isolation       The isolation mode to run the work with.
+     * @param spec            The spec to execute.
+     * @param taskPath        The path of the task submitting the work, to record metrics against.
+     * @param metricsService  The build's metrics service.
+     * @param zipCacheService The build's zip cache service.
+     */
+    public static void submit(WorkerExecutor executor, WorkerIsolation isolation, DiffSpec spec, String taskPath, Provider<MetricsService> metricsService, Provider<ZipCacheService> zipCacheService) {
+        if (isolation != WorkerIsolation.NONE) {
+            LOGGER.info("Metrics and the zip cache are disabled for {}, build services are not available with {} isolation.", taskPath, isolation);
+        }
+        isolation.createQueue(executor).submit(DiffWorkAction.class, params -> {
+            params.getTaskPath().set(taskPath);
+            if (isolation == WorkerIsolation.NONE) {
+                params.getMetricsService().set(metricsService);
+                params.getZipCacheService().set(zipCacheService);
+            }
+            params.getBase().set(absolute(spec.getBase()));
+            params.getModified().set(absolute(spec.getModified()));
+            params.getOutput().set(absolute(spec.getOutput()));
+            params.getOutputFormat().set(spec.getOutputFormat());
+            params.getAutoHeader().set(spec.isAutoHeader());
+            params.getContextLines().set(spec.getContextLines());
+            params.getVerbose().set(spec.isVerbose());
+            params.getPrintSummary().set(spec.isPrintSummary());
+            params.getThreads().set(spec.getThreads());
+            params.getLogFile().set(absolute(spec.getLogFile()));
+            params.getLifecycleLogging().set(spec.isLifecycleLogging());
+            params.getAsyncLogging().set(spec.isAsyncLogging());
+            params.getReportFile().set(absolute(spec.getReportFile()));
+            params.getCompressionLevel().set(spec.getCompressionLevel());
+            params.getHashIndexDir().set(absolute(spec.getHashIndexDir()));
+            params.getMaxInFlight().set(spec.getMaxInFlight());
+            params.getDiffEngine().set(spec.getDiffEngine());
+            params.getVerify().set(spec.isVerify());
+        });
+    }
+
+    @Override
+    public void execute() {
+        Parameters params = getParameters();
+        DiffAction action = new DiffAction(Logging.getLogger(DiffAction.class));
+        action.setBase(params.getBase().getOrNull());
+        action.setModified(params.getModified().getOrNull());
+        action.setOutput(params.getOutput().getOrNull());
+        action.setOutputFormat(params.getOutputFormat().getOrNull());
+        action.setAutoHeader(params.getAutoHeader().get());
+        action.setContextLines(params.getContextLines().get());
+        action.setVerbose(params.getVerbose().get());
+        action.setPrintSummary(params.getPrintSummary().get());
+        action.setThreads(params.getThreads().get());
+        action.setLogFile(params.getLogFile().getOrNull());
+        action.setLifecycleLogging(params.getLifecycleLogging().get());
+        action.setAsyncLogging(params.getAsyncLogging().get());
+        action.setReportFile(params.getReportFile().getOrNull());
+        action.setCompressionLevel(params.getCompressionLevel().get());
+        action.setHashIndexDir(params.getHashIndexDir().getOrNull());
+        action.setMaxInFlight(params.getMaxInFlight().get());
+        action.setDiffEngine(params.getDiffEngine().get());
+        action.setVerify(params.getVerify().get());
+        if (params.getZipCacheService().isPresent()) {
+            action.setZipCache(params.getZipCacheService().get().getCache());
+        }
+        DiffReport report = action.execute();
+        if (params.getMetricsService().isPresent()) {
+            params.getMetricsService().get().record(params.getTaskPath().get(), "diff", report.getMetrics());
+        }
+    }
+
+    private static File absolute(File file) {
+        return file != null ? file.getAbsoluteFile() : null;
+    }
+
+    public interface Parameters extends WorkParameters {
+
+        //@formatter:off
+        Property<File> getBase();
+        Property<File> getModified();
+        Property<File> getOutput();
+        Property<ArchiveFormat> getOutputFormat();
+        Property<Boolean> getAutoHeader();
+        Property<Integer> getContextLines();
+        Property<Boolean> getVerbose();
+        Property<Boolean> getPrintSummary();
+        Property<Integer> getThreads();
+        Property<File> getLogFile();
+        Property<Boolean> getLifecycleLogging();
+        Property<Boolean> getAsyncLogging();
+        Property<File> getReportFile();
+        Property<Integer> getCompressionLevel();
+        Property<File> getHashIndexDir();
+        Property<Integer> getMaxInFlight();
+        Property<DiffEngine> getDiffEngine();
+        Property<Boolean> getVerify();
+        Property<String> getTaskPath();
+        Property<MetricsService> getMetricsService();
+        Property<ZipCacheService> getZipCacheService();
+        //@formatter:on
+    }
+}
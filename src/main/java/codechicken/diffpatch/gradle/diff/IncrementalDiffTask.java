@@ -0,0 +1,276 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffOptions;
+import codechicken.diffpatch.gradle.engine.DiffReport;
+import codechicken.diffpatch.gradle.engine.DiffRunner;
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.engine.FileDiffResult;
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.LogSink;
+import codechicken.diffpatch.gradle.util.Utils;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+/**
+ * An incremental Task implementation of {@link DiffAction}.
+ * <p>
+ * When the base and modified trees are directories, and the output is a directory,
+ * only the patches for files which changed in either tree since the last execution
+ * are regenerated, on the configured number of threads. Patches for files which are
+ * now identical or removed from both trees are deleted, everything else in the output
+ * is left untouched.
+ * <p>
+ * A {@link DiffManifest} of the report for every patch in the output is kept alongside
+ * the task, so the report of an incremental execution still covers the whole tree. Its
+ * byte counts and timings cover only the files diffed by that execution.
+ * <p>
+ * Non-incremental executions, and any other configuration, run a full {@link DiffAction}.
+ */
+@CacheableTask
+public class IncrementalDiffTask extends AbstractDiffTask {
+
+    @TaskAction
+    public void doTask(InputChanges inputChanges) throws IOException {
+        File base = getBase();
+        File modified = getModified();
+        File output = getOutput();
+        if (base == null) {
+            throw new IllegalStateException("Base path not specified.");
+        }
+        if (modified == null) {
+            throw new IllegalStateException("Modified path not specified.");
+        }
+        if (output == null) {
+            throw new IllegalStateException("Output path not specified.");
+        }
+        File manifestFile = getManifest();
+        Set<String> dirty = null;
+        boolean supported = getOutputFormat() == null
+                && InputTree.isSupported(base)
+                && InputTree.isSupported(modified);
+        DiffManifest manifest = inputChanges.isIncremental() && supported ? DiffManifest.load(manifestFile) : null;
+        if (manifest != null) {
+            dirty = new TreeSet<>();
+            if (!collectChanges(inputChanges, getBaseFiles(), base, dirty)
+                    || !collectChanges(inputChanges, getModifiedFiles(), modified, dirty)) {
+                dirty = null;
+            }
+        }
+        if (dirty == null) {
+            getLogger().info("Running full diff.");
+            diffFull(manifestFile);
+            return;
+        }
+
+        DiffAction action = createAction();
+        DiffOptions options = action.toOptions();
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        long start = System.nanoTime();
+        int threads = Math.max(1, options.getThreads());
+        int maxPending = threads * 4;
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        Deque<Pending> pending = new ArrayDeque<>();
+        Counters counters = new Counters();
+        try (LogSink sink = action.createLogSink();
+             InputTree baseTree = getZipCache().open(base, null);
+             InputTree modifiedTree = getZipCache().open(modified, null)) {
+            DiffRunner runner = new DiffRunner(options, sink);
+            for (String path : dirty) {
+                long readStart = System.nanoTime();
+                byte[] baseBytes = baseTree.read(path);
+                byte[] modifiedBytes = modifiedTree.read(path);
+                metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+                Pending p = new Pending(path, baseBytes != null, modifiedBytes != null, (baseBytes != null ? baseBytes.length : 0) + (modifiedBytes != null ? modifiedBytes.length : 0));
+                counters.bytesRead += p.size;
+                while (pending.size() >= maxPending) {
+                    complete(pending.poll(), output, counters, metrics, sink);
+                }
+                if ((baseBytes != null || modifiedBytes != null) && !Arrays.equals(baseBytes, modifiedBytes)) {
+                    p.future = pool != null
+                            ? pool.submit(() -> p.diff(runner, baseBytes, modifiedBytes))
+                            : CompletableFuture.completedFuture(p.diff(runner, baseBytes, modifiedBytes));
+                }
+                pending.add(p);
+            }
+            while (!pending.isEmpty()) {
+                complete(pending.poll(), output, counters, metrics, sink);
+            }
+            metrics.addElapsed(System.nanoTime() - start);
+            recordMetrics(metrics);
+
+            manifest.update(dirty, counters.reports);
+            manifest.save(manifestFile);
+            File reportFile = getReportFile();
+            if (reportFile != null) {
+                List<DiffReport.FileReport> files = manifest.getFiles();
+                Set<String> paths = new TreeSet<>(baseTree.getPaths());
+                paths.addAll(modifiedTree.getPaths());
+                DiffReport report = new DiffReport(files, paths.size() - files.size(), counters.bytesRead, counters.bytesWritten, metrics.getElapsedNanos());
+                report.setMetrics(metrics);
+                report.write(reportFile);
+            }
+            if (options.isPrintSummary()) {
+                sink.accept("Diffed " + dirty.size() + " changed files with " + threads + " threads, " + counters.reports.size() + " patches written.");
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        long verifyFailed = counters.reports.stream().filter(e -> e.getVerifyError() != null).count();
+        if (verifyFailed != 0) {
+            throw new RuntimeException("Generated patches failed to re-apply for " + verifyFailed + " files.");
+        }
+    }
+
+    /**
+     * Diffs every file with a full {@link DiffAction}, and records the patches written in a new manifest.
+     */
+    private void diffFull(File manifestFile) throws IOException {
+        //Removed first, so a failed execution never leaves a stale manifest.
+        Utils.deleteFile(manifestFile.getParentFile(), manifestFile);
+        DiffReport report = createAction().execute();
+        recordMetrics(report.getMetrics());
+        if (report.isDetailed()) {
+            DiffManifest manifest = new DiffManifest();
+            report.getFiles().forEach(manifest::put);
+            manifest.save(manifestFile);
+        }
+    }
+
+    /**
+     * Waits for a file to be diffed, then writes or removes its patch.
+     * Files are completed in order, on the task's thread.
+     */
+    private void complete(Pending pending, File output, Counters counters, ExecutionMetrics metrics, Consumer<String> log) throws IOException {
+        String path = pending.path;
+        FileDiffResult result = null;
+        if (pending.future != null) {
+            try {
+                result = pending.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted whilst diffing.", e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to diff: " + path, e.getCause());
+            }
+            metrics.addTime(ExecutionMetrics.Phase.PROCESS, pending.elapsedNanos);
+        }
+
+        long writeStart = System.nanoTime();
+        File patchFile = new File(output, path + ".patch");
+        if (result == null || !result.isChanged()) {
+            metrics.addFile(pending.size, 0);
+            if (patchFile.exists()) {
+                Utils.deleteFile(output, patchFile);
+                if (isVerbose()) {
+                    log.accept("Removed: " + path);
+                }
+            }
+        } else {
+            byte[] patch = result.getPatch();
+            Utils.writeFile(patchFile, patch);
+            DiffReport.Status status = !pending.hasBase ? DiffReport.Status.ADDED : !pending.hasModified ? DiffReport.Status.REMOVED : DiffReport.Status.MODIFIED;
+            counters.reports.add(new DiffReport.FileReport(path, status, result.getPatchFile().patches.size(), pending.size, patch.length, pending.elapsedNanos, result.getVerifyError()));
+            counters.bytesWritten += patch.length;
+            metrics.addFile(pending.size, patch.length);
+            if (result.getVerifyError() != null) {
+                log.accept("Verify failed: " + path);
+                log.accept("  " + result.getVerifyError());
+            } else if (isVerbose()) {
+                log.accept("Diffed: " + path);
+            }
+        }
+        metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+    }
+
+    /**
+     * Collects the paths affected by changes to the given input.
+     *
+     * @return false if the input is not a directory, requiring a full diff.
+     */
+    private boolean collectChanges(InputChanges inputChanges, FileCollection files, File root, Set<String> dirty) {
+        for (FileChange change : inputChanges.getFileChanges(files)) {
+            if (change.getFileType() == FileType.DIRECTORY) {
+                continue;
+            }
+            if (!root.isDirectory() || change.getFile().equals(root)) {
+                return false;
+            }
+            dirty.add(change.getNormalizedPath().replace(File.separatorChar, '/'));
+        }
+        return true;
+    }
+
+    @Incremental
+    @Override
+    public FileCollection getBaseFiles() {
+        return super.getBaseFiles();
+    }
+
+    @Incremental
+    @Override
+    public FileCollection getModifiedFiles() {
+        return super.getModifiedFiles();
+    }
+
+    /**
+     * @return The file the diff manifest is stored in.
+     */
+    @OutputFile
+    public File getManifest() {
+        return new File(getTemporaryDir(), "diff-manifest.tsv");
+    }
+
+    private static class Counters {
+
+        private final List<DiffReport.FileReport> reports = new ArrayList<>();
+        private long bytesRead;
+        private long bytesWritten;
+    }
+
+    private static class Pending {
+
+        private final String path;
+        private final boolean hasBase;
+        private final boolean hasModified;
+        private final long size;
+        private Future<FileDiffResult> future;
+        private volatile long elapsedNanos;
+
+        private Pending(String path, boolean hasBase, boolean hasModified, long size) {
+            this.path = path;
+            this.hasBase = hasBase;
+            this.hasModified = hasModified;
+            this.size = size;
+        }
+
+        private FileDiffResult diff(DiffRunner runner, byte[] base, byte[] modified) {
+            long start = System.nanoTime();
+            FileDiffResult result = runner.diffFile(path, base, modified);
+            elapsedNanos = System.nanoTime() - start;
+            return result;
+        }
+    }
+}
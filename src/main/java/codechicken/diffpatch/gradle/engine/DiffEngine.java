@@ -0,0 +1,40 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.diff.Differ;
+import codechicken.diffpatch.diff.PatienceDiffer;
+
+/**
+ * The algorithms available to compute diffs with.
+ * <p>
+ * All engines produce patches through DiffPatch's {@link Differ}, so output is
+ * in the same unified diff format and honours the same context and header options,
+ * only the lines chosen to match differ.
+ */
+public enum DiffEngine {
+    /**
+     * DiffPatch's own patience diff.
+     */
+    PATIENCE,
+    /**
+     * A histogram diff built into this plugin, see {@link HistogramDiffer}.
+     * Faster on very large, heavily edited files.
+     */
+    HISTOGRAM;
+
+    /**
+     * Creates a {@link Differ} for this engine. Differs are not thread safe,
+     * a new one should be created for each file.
+     *
+     * @return The differ.
+     */
+    public Differ createDiffer() {
+        switch (this) {
+            case PATIENCE:
+                return new PatienceDiffer();
+            case HISTOGRAM:
+                return new HistogramDiffer();
+            default:
+                throw new IllegalStateException("Unhandled DiffEngine: " + this);
+        }
+    }
+}
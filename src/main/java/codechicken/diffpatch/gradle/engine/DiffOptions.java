@@ -0,0 +1,76 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+
+import java.io.File;
+
+/**
+ * Typed options for a {@link DiffRunner}.
+ * <p>
+ * Tree paths are only required when diffing a tree, single file
+ * operations only use the context and header options.
+ */
+public class DiffOptions {
+
+    /**
+     * DiffPatch's default number of context lines, used when left unset (-1).
+     */
+    public static final int DEFAULT_CONTEXT = 3;
+    /**
+     * The default maximum number of bytes read but not yet written at once, used when left unset.
+     */
+    public static final long DEFAULT_MAX_IN_FLIGHT = 64 * 1024 * 1024;
+
+    private File base;
+    private File modified;
+    private File output;
+    private ArchiveFormat outputFormat;
+    private boolean autoHeader;
+    private DiffEngine engine = DiffEngine.PATIENCE;
+    private int contextLines = -1;
+    private int threads = 1;
+    private int compressionLevel = -1;
+    private File hashIndexDir;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT;
+    private boolean verify;
+    private boolean verbose;
+    private boolean printSummary;
+
+    /**
+     * @return The number of context lines, with the DiffPatch default substituted if unset.
+     */
+    public int getEffectiveContextLines() {
+        return contextLines != -1 ? contextLines : DEFAULT_CONTEXT;
+    }
+
+    //@formatter:off
+    public File getBase() { return base; }
+    public File getModified() { return modified; }
+    public File getOutput() { return output; }
+    public ArchiveFormat getOutputFormat() { return outputFormat; }
+    public boolean isAutoHeader() { return autoHeader; }
+    public DiffEngine getEngine() { return engine; }
+    public int getContextLines() { return contextLines; }
+    public int getThreads() { return threads; }
+    public int getCompressionLevel() { return compressionLevel; }
+    public File getHashIndexDir() { return hashIndexDir; }
+    public long getMaxInFlightBytes() { return maxInFlightBytes; }
+    public boolean isVerify() { return verify; }
+    public boolean isVerbose() { return verbose; }
+    public boolean isPrintSummary() { return printSummary; }
+    public void setBase(File base) { this.base = base; }
+    public void setModified(File modified) { this.modified = modified; }
+    public void setOutput(File output) { this.output = output; }
+    public void setOutputFormat(ArchiveFormat outputFormat) { this.outputFormat = outputFormat; }
+    public void setAutoHeader(boolean autoHeader) { this.autoHeader = autoHeader; }
+    public void setEngine(DiffEngine engine) { this.engine = engine; }
+    public void setContextLines(int contextLines) { this.contextLines = contextLines; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+    public void setHashIndexDir(File hashIndexDir) { this.hashIndexDir = hashIndexDir; }
+    public void setMaxInFlightBytes(long maxInFlightBytes) { this.maxInFlightBytes = maxInFlightBytes; }
+    public void setVerify(boolean verify) { this.verify = verify; }
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+    public void setPrintSummary(boolean printSummary) { this.printSummary = printSummary; }
+    //@formatter:on
+}
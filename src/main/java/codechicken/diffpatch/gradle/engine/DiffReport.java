@@ -0,0 +1,181 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.JsonWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of diffing a tree, with a {@link FileReport} for every file which changed.
+ */
+public class DiffReport {
+
+    private final List<FileReport> files;
+    private final int unchanged;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+    private final boolean detailed;
+    private final int exitCode;
+    private ExecutionMetrics metrics = new ExecutionMetrics();
+
+    public DiffReport(List<FileReport> files, int unchanged, long bytesRead, long bytesWritten, long elapsedNanos) {
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.unchanged = unchanged;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+        detailed = true;
+        exitCode = files.isEmpty() ? 0 : 1;
+    }
+
+    private DiffReport(int exitCode, long elapsedNanos) {
+        files = Collections.emptyList();
+        unchanged = 0;
+        bytesRead = 0;
+        bytesWritten = 0;
+        this.elapsedNanos = elapsedNanos;
+        detailed = false;
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * Creates a report for an operation which only produced an exit code,
+     * such as one run through DiffPatch's command line entry point.
+     *
+     * @param exitCode     The exit code.
+     * @param elapsedNanos The time taken.
+     * @return The report.
+     */
+    public static DiffReport fromExitCode(int exitCode, long elapsedNanos) {
+        return new DiffReport(exitCode, elapsedNanos);
+    }
+
+    /**
+     * @return The number of files whose generated patch failed verification.
+     */
+    public int getVerifyFailed() {
+        return (int) files.stream().filter(e -> e.getVerifyError() != null).count();
+    }
+
+    /**
+     * Writes this report as JSON.
+     *
+     * @param file The file to write to.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("exitCode").value(exitCode);
+            json.name("detailed").value(detailed);
+            json.name("elapsedMs").value(elapsedNanos / 1000000D);
+            json.name("changed").value(files.size());
+            json.name("unchanged").value(unchanged);
+            json.name("verifyFailed").value(getVerifyFailed());
+            json.name("bytesRead").value(bytesRead);
+            json.name("bytesWritten").value(bytesWritten);
+            json.name("files").beginArray();
+            for (FileReport report : files) {
+                report.write(json);
+            }
+            json.endArray();
+            json.name("metrics");
+            metrics.write(json);
+            json.endObject();
+        }
+    }
+
+    //@formatter:off
+    /** @return The exit code in the same form as DiffPatch, 0 if there were no changes, 1 otherwise. */
+    public int getExitCode() { return exitCode; }
+    /** @return False if this report only has an exit code, and no per-file information. */
+    public boolean isDetailed() { return detailed; }
+    /** @return Reports for each file which changed, in path order. */
+    public List<FileReport> getFiles() { return files; }
+    /** @return The number of files which were identical. */
+    public int getUnchanged() { return unchanged; }
+    /** @return The total number of bytes read from both trees. */
+    public long getBytesRead() { return bytesRead; }
+    /** @return The total number of patch bytes written. */
+    public long getBytesWritten() { return bytesWritten; }
+    /** @return The wall time of the operation, in nanoseconds. */
+    public long getElapsedNanos() { return elapsedNanos; }
+    /** @return The phase timings and throughput of the operation. */
+    public ExecutionMetrics getMetrics() { return metrics; }
+    public void setMetrics(ExecutionMetrics metrics) { this.metrics = metrics; }
+    //@formatter:on
+
+    public enum Status {
+        /**
+         * The file only exists in the modified tree.
+         */
+        ADDED,
+        /**
+         * The file only exists in the base tree.
+         */
+        REMOVED,
+        /**
+         * The file exists in both trees, with differences.
+         */
+        MODIFIED
+    }
+
+    /**
+     * The outcome of diffing a single changed file.
+     */
+    public static class FileReport {
+
+        private final String path;
+        private final Status status;
+        private final int hunks;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+        private final String verifyError;
+
+        public FileReport(String path, Status status, int hunks, long bytesRead, long bytesWritten, long elapsedNanos, String verifyError) {
+            this.path = path;
+            this.status = status;
+            this.hunks = hunks;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+            this.verifyError = verifyError;
+        }
+
+        private void write(JsonWriter json) throws IOException {
+            json.beginObject();
+            json.name("path").value(path);
+            json.name("status").value(status.name());
+            json.name("hunks").value(hunks);
+            json.name("bytesRead").value(bytesRead);
+            json.name("bytesWritten").value(bytesWritten);
+            json.name("elapsedMs").value(elapsedNanos / 1000000D);
+            if (verifyError != null) {
+                json.name("verifyError").value(verifyError);
+            }
+            json.endObject();
+        }
+
+        //@formatter:off
+        public String getPath() { return path; }
+        public Status getStatus() { return status; }
+        public int getHunks() { return hunks; }
+        public long getBytesRead() { return bytesRead; }
+        public long getBytesWritten() { return bytesWritten; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        /** @return Why the generated patch failed verification, null if it passed or was not verified. */
+        public String getVerifyError() { return verifyError; }
+        //@formatter:on
+    }
+}
@@ -0,0 +1,257 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.OutputTree;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.Patch;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Generates patches by calling the configured {@link DiffEngine} directly,
+ * either for single files in memory or for a whole tree.
+ * <p>
+ * When diffing a tree, both trees are walked and paired by path, and the
+ * resulting patches are written and logged in sorted path order, so archives
+ * produced are identical regardless of the number of threads. The number of
+ * files and bytes held in memory between reading and writing is capped,
+ * blocking the reader until the oldest results have been written.
+ * <p>
+ * Files which exist in both trees are first checked by an {@link IdentityFilter},
+ * identical files are counted as unchanged without being read into memory or diffed.
+ */
+public class DiffRunner {
+
+    /**
+     * The path used in patch headers for a file that does not exist.
+     */
+    public static final String DEV_NULL = "/dev/null";
+
+    private final DiffOptions options;
+    private final ExecutionMetrics metrics = new ExecutionMetrics();
+    private final Consumer<String> log;
+    private final ZipIndexCache zipCache;
+
+    public DiffRunner(DiffOptions options, Consumer<String> log) {
+        this(options, log, null);
+    }
+
+    /**
+     * @param options  The options.
+     * @param log      The log output.
+     * @param zipCache The cache to open zip inputs from, may be null.
+     */
+    public DiffRunner(DiffOptions options, Consumer<String> log, ZipIndexCache zipCache) {
+        this.options = options;
+        this.log = metrics.timeLog(log);
+        this.zipCache = zipCache;
+    }
+
+    /**
+     * @return The metrics collected by {@link #diff()}.
+     */
+    public ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * If the given options can be used to diff a tree with {@link #diff()}.
+     *
+     * @param options The options.
+     * @return If the options are supported.
+     */
+    public static boolean isSupported(DiffOptions options) {
+        return InputTree.isSupported(options.getBase())
+                && InputTree.isSupported(options.getModified())
+                && OutputTree.isSupported(options.getOutputFormat());
+    }
+
+    /**
+     * Diffs a single pair of files.
+     *
+     * @param path     The path of the file, relative to the tree roots.
+     * @param base     The base file bytes, null if the file was added.
+     * @param modified The modified file bytes, null if the file was removed.
+     * @return The result.
+     */
+    public FileDiffResult diffFile(String path, byte[] base, byte[] modified) {
+        return diffFile(path, base != null ? Utils.splitLines(base) : null, modified != null ? Utils.splitLines(modified) : null);
+    }
+
+    /**
+     * Diffs a single pair of files.
+     *
+     * @param path          The path of the file, relative to the tree roots.
+     * @param baseLines     The base file lines, null if the file was added.
+     * @param modifiedLines The modified file lines, null if the file was removed.
+     * @return The result.
+     */
+    public FileDiffResult diffFile(String path, List<String> baseLines, List<String> modifiedLines) {
+        List<Patch> patches = options.getEngine().createDiffer().makePatches(
+                baseLines != null ? baseLines : new ArrayList<>(),
+                modifiedLines != null ? modifiedLines : new ArrayList<>(),
+                options.getEffectiveContextLines(),
+                true
+        );
+        if (patches.isEmpty()) {
+            return new FileDiffResult(path, null, options.isAutoHeader());
+        }
+        PatchFile patchFile = new PatchFile();
+        patchFile.basePath = baseLines != null ? "a/" + path : DEV_NULL;
+        patchFile.patchedPath = modifiedLines != null ? "b/" + path : DEV_NULL;
+        patchFile.patches = patches;
+        FileDiffResult result = new FileDiffResult(path, patchFile, options.isAutoHeader());
+        if (options.isVerify()) {
+            result.setVerifyError(verify(path, result.getPatch(), baseLines, modifiedLines));
+        }
+        return result;
+    }
+
+    /**
+     * Verifies a generated patch round trips, by parsing it as written and
+     * applying it exactly to the base lines.
+     *
+     * @return Why the patch failed, null if it applied and produced the modified lines.
+     */
+    private static String verify(String path, byte[] patch, List<String> baseLines, List<String> modifiedLines) {
+        PatchFile parsed = PatchFile.fromLines(path + ".patch", Utils.splitLines(patch), true);
+        Patcher patcher = new Patcher(parsed.patches, baseLines != null ? new ArrayList<>(baseLines) : new ArrayList<>(),
+                PatchOptions.DEFAULT_MIN_FUZZ,
+                PatchOptions.DEFAULT_MAX_OFFSET
+        );
+        patcher.patch(PatchMode.EXACT);
+        for (Patcher.Result result : patcher.getResults()) {
+            if (!result.success) {
+                return "Hunk failed to re-apply: " + result.summary();
+            }
+        }
+        List<String> actual = patcher.getResultLines();
+        List<String> expected = modifiedLines != null ? modifiedLines : new ArrayList<>();
+        if (actual.equals(expected)) {
+            return null;
+        }
+        int line = 0;
+        while (line < actual.size() && line < expected.size() && actual.get(line).equals(expected.get(line))) {
+            line++;
+        }
+        return "Re-applied patch differs from the modified file at line " + (line + 1) + ".";
+    }
+
+    /**
+     * Diffs the configured base and modified trees into the configured output.
+     *
+     * @return The report.
+     * @throws IOException If an IO error occurs.
+     */
+    public DiffReport diff() throws IOException {
+        long start = System.nanoTime();
+        int threads = Math.max(1, options.getThreads());
+        int maxPending = threads * 4;
+        //A single pair larger than this is still processed, on its own.
+        long maxInFlight = options.getMaxInFlightBytes();
+
+        Counters counters = new Counters();
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        OrderedWorkQueue<FileDiffResult> queue = new OrderedWorkQueue<>(pool, maxPending, maxInFlight, "diff");
+        int identical;
+        long readStart = System.nanoTime();
+        try (InputTree baseTree = openInput(options.getBase());
+             InputTree modifiedTree = openInput(options.getModified());
+             IdentityFilter filter = new IdentityFilter(baseTree, modifiedTree, options.getHashIndexDir());
+             OutputTree outputTree = OutputTree.open(options.getOutput(), options.getOutputFormat(), options.getCompressionLevel())) {
+
+            SortedSet<String> paths = new TreeSet<>(baseTree.getPaths());
+            paths.addAll(modifiedTree.getPaths());
+            metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+
+            for (String path : paths) {
+                readStart = System.nanoTime();
+                IdentityFilter.Comparison comparison = filter.compare(path);
+                if (comparison.isIdentical()) {
+                    metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+                    counters.unchanged++;
+                    metrics.addFile(0, 0);
+                    continue;
+                }
+                //Reuses whatever the filter already read of a changed file.
+                byte[] base = comparison.getBase() != null ? Utils.toBytes(comparison.getBase()) : baseTree.read(path);
+                byte[] modified = comparison.getModified() != null ? Utils.toBytes(comparison.getModified()) : modifiedTree.read(path);
+                metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+                long size = (base != null ? base.length : 0) + (modified != null ? modified.length : 0);
+                DiffReport.Status status = base == null ? DiffReport.Status.ADDED : modified == null ? DiffReport.Status.REMOVED : DiffReport.Status.MODIFIED;
+                queue.submit(path, size, () -> diffFileTimed(path, base, modified), result -> complete(path, size, status, result, counters, outputTree));
+                counters.bytesRead += size;
+                metrics.updateInFlight(queue.getInFlightBytes());
+            }
+            queue.drain();
+            outputTree.finish();
+            identical = filter.getIdentical();
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+
+        DiffReport report = new DiffReport(counters.reports, counters.unchanged, counters.bytesRead, counters.bytesWritten, System.nanoTime() - start);
+        metrics.addElapsed(report.getElapsedNanos());
+        report.setMetrics(metrics);
+        if (options.isPrintSummary()) {
+            log.accept("Diffed " + (report.getFiles().size() + report.getUnchanged()) + " files with " + threads + " threads, " + report.getFiles().size() + " changed, " + identical + " identical"
+                    + (options.isVerify() ? ", " + report.getVerifyFailed() + " failed verification." : "."));
+        }
+        return report;
+    }
+
+    private InputTree openInput(File file) throws IOException {
+        return zipCache != null ? zipCache.open(file, null) : InputTree.open(file, null);
+    }
+
+    private FileDiffResult diffFileTimed(String path, byte[] base, byte[] modified) {
+        long start = System.nanoTime();
+        FileDiffResult result = diffFile(path, base, modified);
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    private void complete(String path, long size, DiffReport.Status status, FileDiffResult result, Counters counters, OutputTree outputTree) throws IOException {
+        metrics.updateHeap();
+        metrics.addTime(ExecutionMetrics.Phase.PROCESS, result.getElapsedNanos());
+        if (!result.isChanged()) {
+            counters.unchanged++;
+            metrics.addFile(size, 0);
+            return;
+        }
+        byte[] patch = result.getPatch();
+        counters.reports.add(new DiffReport.FileReport(path, status, result.getPatchFile().patches.size(), size, patch.length, result.getElapsedNanos(), result.getVerifyError()));
+        counters.bytesWritten += patch.length;
+        metrics.addFile(size, patch.length);
+        long writeStart = System.nanoTime();
+        outputTree.write(path + ".patch", patch);
+        metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+        if (result.getVerifyError() != null) {
+            log.accept("Verify failed: " + path);
+            log.accept("  " + result.getVerifyError());
+        } else if (options.isVerbose()) {
+            log.accept("Diffed: " + path);
+        }
+    }
+
+    private static class Counters {
+
+        private final List<DiffReport.FileReport> reports = new ArrayList<>();
+        private long bytesRead;
+        private long bytesWritten;
+        private int unchanged;
+    }
+}
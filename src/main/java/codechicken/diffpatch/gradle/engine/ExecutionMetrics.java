@@ -0,0 +1,231 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.JsonWriter;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Phase timings and throughput counters for a diff or patch execution.
+ * <p>
+ * Instances are not thread safe, they are only updated from the thread driving
+ * an execution. Metrics from multiple executions are combined with {@link #merge}.
+ */
+public class ExecutionMetrics {
+
+    private final Map<Phase, Long> phaseNanos = new EnumMap<>(Phase.class);
+    private final Map<PatchMode, Long> hunksApplied = new EnumMap<>(PatchMode.class);
+    private long hunksFailed;
+    private long files;
+    private long bytesRead;
+    private long bytesWritten;
+    private long peakInFlightBytes;
+    private long peakHeapBytes;
+    private long elapsedNanos;
+
+    /**
+     * Adds time spent in a phase.
+     *
+     * @param phase The phase.
+     * @param nanos The time taken.
+     */
+    public void addTime(Phase phase, long nanos) {
+        phaseNanos.merge(phase, nanos, Long::sum);
+    }
+
+    /**
+     * Adds a processed file.
+     *
+     * @param bytesRead    The number of input bytes read for the file.
+     * @param bytesWritten The number of output bytes written for the file.
+     */
+    public void addFile(long bytesRead, long bytesWritten) {
+        files++;
+        this.bytesRead += bytesRead;
+        this.bytesWritten += bytesWritten;
+    }
+
+    /**
+     * Adds the hunks applied, or failed, for a file.
+     *
+     * @param hunks The hunks.
+     */
+    public void addHunks(List<HunkResult> hunks) {
+        for (HunkResult hunk : hunks) {
+            if (hunk.isSuccess() && hunk.getMode() != null) {
+                hunksApplied.merge(hunk.getMode(), 1L, Long::sum);
+            } else {
+                hunksFailed++;
+            }
+        }
+    }
+
+    /**
+     * Records the number of bytes currently held in memory, keeping the peak.
+     *
+     * @param inFlightBytes The number of bytes.
+     */
+    public void updateInFlight(long inFlightBytes) {
+        peakInFlightBytes = Math.max(peakInFlightBytes, inFlightBytes);
+    }
+
+    /**
+     * Samples the JVM's used heap, keeping the peak. The heap is shared with the
+     * rest of the build, so this is an upper bound on the memory used by an execution.
+     */
+    public void updateHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        peakHeapBytes = Math.max(peakHeapBytes, runtime.totalMemory() - runtime.freeMemory());
+    }
+
+    /**
+     * Adds wall clock time for the whole execution.
+     *
+     * @param nanos The time taken.
+     */
+    public void addElapsed(long nanos) {
+        elapsedNanos += nanos;
+    }
+
+    /**
+     * Adds the given metrics to these. Peak in-flight and heap bytes are the maximum of both.
+     *
+     * @param other The metrics to add.
+     */
+    public void merge(ExecutionMetrics other) {
+        other.phaseNanos.forEach(this::addTime);
+        other.hunksApplied.forEach((mode, count) -> hunksApplied.merge(mode, count, Long::sum));
+        hunksFailed += other.hunksFailed;
+        files += other.files;
+        bytesRead += other.bytesRead;
+        bytesWritten += other.bytesWritten;
+        peakInFlightBytes = Math.max(peakInFlightBytes, other.peakInFlightBytes);
+        peakHeapBytes = Math.max(peakHeapBytes, other.peakHeapBytes);
+        elapsedNanos += other.elapsedNanos;
+    }
+
+    /**
+     * Wraps a log consumer so time spent logging is attributed to {@link Phase#LOG}.
+     *
+     * @param log The consumer.
+     * @return The wrapped consumer.
+     */
+    public Consumer<String> timeLog(Consumer<String> log) {
+        return line -> {
+            long start = System.nanoTime();
+            log.accept(line);
+            addTime(Phase.LOG, System.nanoTime() - start);
+        };
+    }
+
+    /**
+     * @return A single line human readable summary.
+     */
+    public String summary() {
+        double seconds = elapsedNanos / 1.0E9D;
+        StringBuilder builder = new StringBuilder();
+        builder.append(String.format(Locale.ROOT, "%d files in %.2fs", files, seconds));
+        if (seconds > 0) {
+            builder.append(String.format(Locale.ROOT, " (%.1f files/s, %.1f MiB/s read)", files / seconds, bytesRead / seconds / (1024 * 1024)));
+        }
+        for (Phase phase : Phase.values()) {
+            builder.append(String.format(Locale.ROOT, ", %s %dms", phase.name().toLowerCase(Locale.ROOT), getTime(phase) / 1000000));
+        }
+        if (!hunksApplied.isEmpty() || hunksFailed != 0) {
+            builder.append("; hunks");
+            for (PatchMode mode : PatchMode.values()) {
+                builder.append(' ').append(getHunksApplied(mode)).append(' ').append(mode.name().toLowerCase(Locale.ROOT)).append(',');
+            }
+            builder.append(' ').append(hunksFailed).append(" failed");
+        }
+        builder.append(String.format(Locale.ROOT, "; peak in-flight %.1f MiB", peakInFlightBytes / (1024D * 1024D)));
+        if (peakHeapBytes != 0) {
+            builder.append(String.format(Locale.ROOT, ", heap %.1f MiB", peakHeapBytes / (1024D * 1024D)));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes these metrics as a JSON object.
+     *
+     * @param json The writer.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(JsonWriter json) throws IOException {
+        double seconds = elapsedNanos / 1.0E9D;
+        json.beginObject();
+        json.name("elapsedMs").value(elapsedNanos / 1000000D);
+        json.name("files").value(files);
+        json.name("bytesRead").value(bytesRead);
+        json.name("bytesWritten").value(bytesWritten);
+        json.name("filesPerSecond").value(seconds > 0 ? files / seconds : 0);
+        json.name("bytesPerSecond").value(seconds > 0 ? bytesRead / seconds : 0);
+        json.name("peakInFlightBytes").value(peakInFlightBytes);
+        json.name("peakHeapBytes").value(peakHeapBytes);
+        json.name("phasesMs").beginObject();
+        for (Phase phase : Phase.values()) {
+            json.name(phase.name().toLowerCase(Locale.ROOT)).value(getTime(phase) / 1000000D);
+        }
+        json.endObject();
+        json.name("hunks").beginObject();
+        for (PatchMode mode : PatchMode.values()) {
+            json.name(mode.name().toLowerCase(Locale.ROOT)).value(getHunksApplied(mode));
+        }
+        json.name("failed").value(hunksFailed);
+        json.endObject();
+        json.endObject();
+    }
+
+    //@formatter:off
+    /** @return The time spent in the given phase. */
+    public long getTime(Phase phase) { return phaseNanos.getOrDefault(phase, 0L); }
+    /** @return The number of hunks applied with the given mode. */
+    public long getHunksApplied(PatchMode mode) { return hunksApplied.getOrDefault(mode, 0L); }
+    /** @return The number of hunks which failed to apply. */
+    public long getHunksFailed() { return hunksFailed; }
+    /** @return The number of files processed. */
+    public long getFiles() { return files; }
+    /** @return The number of input bytes read. */
+    public long getBytesRead() { return bytesRead; }
+    /** @return The number of output bytes written. */
+    public long getBytesWritten() { return bytesWritten; }
+    /** @return The largest number of bytes read but not yet written at once. */
+    public long getPeakInFlightBytes() { return peakInFlightBytes; }
+    /** @return The largest used heap sampled during execution, 0 if not sampled. */
+    public long getPeakHeapBytes() { return peakHeapBytes; }
+    /** @return The wall clock time taken. */
+    public long getElapsedNanos() { return elapsedNanos; }
+    //@formatter:on
+
+    /**
+     * The phases of an execution that are timed.
+     */
+    public enum Phase {
+        /**
+         * Resolving the configured paths and options.
+         */
+        RESOLVE,
+        /**
+         * Opening and reading the input trees.
+         */
+        READ,
+        /**
+         * Matching hunks or computing diffs. When running with multiple threads,
+         * this is the sum of time across all threads and can exceed the elapsed time.
+         */
+        PROCESS,
+        /**
+         * Writing outputs and rejects.
+         */
+        WRITE,
+        /**
+         * Emitting log lines.
+         */
+        LOG
+    }
+}
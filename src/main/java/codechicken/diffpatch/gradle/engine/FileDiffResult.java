@@ -0,0 +1,53 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchFile;
+
+/**
+ * The outcome of diffing a single pair of files.
+ */
+public class FileDiffResult {
+
+    private final String path;
+    private final PatchFile patchFile;
+    private final boolean autoHeader;
+    private byte[] patch;
+    private String verifyError;
+    private long elapsedNanos;
+
+    public FileDiffResult(String path, PatchFile patchFile, boolean autoHeader) {
+        this.path = path;
+        this.patchFile = patchFile;
+        this.autoHeader = autoHeader;
+    }
+
+    /**
+     * @return If the files differ.
+     */
+    public boolean isChanged() {
+        return patchFile != null;
+    }
+
+    /**
+     * @return The patch file in unified diff format, null if the files are identical.
+     */
+    public byte[] getPatch() {
+        if (patch == null && patchFile != null) {
+            patch = Utils.joinLines(patchFile.toLines(autoHeader));
+        }
+        return patch;
+    }
+
+    //@formatter:off
+    /** @return The path of the diffed file, relative to the tree roots. */
+    public String getPath() { return path; }
+    /** @return The parsed patch file, null if the files are identical. */
+    public PatchFile getPatchFile() { return patchFile; }
+    /** @return The time taken to diff the files, in nanoseconds. */
+    public long getElapsedNanos() { return elapsedNanos; }
+    void setElapsedNanos(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+    /** @return Why the patch failed verification, null if it passed or was not verified. */
+    public String getVerifyError() { return verifyError; }
+    void setVerifyError(String verifyError) { this.verifyError = verifyError; }
+    //@formatter:on
+}
@@ -0,0 +1,115 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of applying a patch file to a single file.
+ */
+public class FilePatchResult {
+
+    private final String path;
+    private final boolean success;
+    private List<String> outputLines;
+    private final byte[] reject;
+    private final List<HunkResult> hunks;
+    private final String error;
+    private PatchMode tier;
+    private boolean overBudget;
+    private byte[] output;
+    private long elapsedNanos;
+
+    public FilePatchResult(String path, boolean success, List<String> outputLines, byte[] reject, List<HunkResult> hunks, String error) {
+        this.path = path;
+        this.success = success;
+        this.outputLines = outputLines;
+        this.reject = reject;
+        this.hunks = Collections.unmodifiableList(hunks);
+        this.error = error;
+    }
+
+    /**
+     * Creates a result with already joined output, such as one read from a {@link ResultStore}.
+     */
+    FilePatchResult(String path, boolean success, byte[] output, byte[] reject, List<HunkResult> hunks) {
+        this(path, success, null, reject, hunks, null);
+        this.output = output;
+    }
+
+    /**
+     * @return The patched lines, null if the patch removes the file or it could not be patched.
+     */
+    public List<String> getOutputLines() {
+        if (outputLines == null && output != null) {
+            outputLines = Utils.splitLines(output);
+        }
+        return outputLines;
+    }
+
+    /**
+     * @return If the patched file exists, false if the patch removes the file or it could not be patched.
+     */
+    public boolean hasOutput() {
+        return outputLines != null || output != null;
+    }
+
+    /**
+     * @return The patched file, null if the patch removes the file or it could not be patched.
+     */
+    public byte[] getOutput() {
+        if (output == null && outputLines != null) {
+            output = Utils.joinLines(outputLines);
+        }
+        return output;
+    }
+
+    /**
+     * @return The number of bytes this result writes to the output and rejects.
+     */
+    public long getBytesWritten() {
+        byte[] output = getOutput();
+        return (output != null ? output.length : 0) + (reject != null ? reject.length : 0);
+    }
+
+    /**
+     * Gets log lines describing this result.
+     *
+     * @return The lines.
+     */
+    public List<String> getLog() {
+        if (error != null) {
+            return Collections.singletonList(error);
+        }
+        String[] lines = new String[hunks.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = hunks.get(i).getSummary();
+        }
+        return Arrays.asList(lines);
+    }
+
+    //@formatter:off
+    /** @return The path of the patched file, relative to the tree root. */
+    public String getPath() { return path; }
+    /** @return If all hunks applied. */
+    public boolean isSuccess() { return success; }
+    /** @return The reject file contents, null if there were no rejects. */
+    public byte[] getReject() { return reject; }
+    /** @return The result of each hunk. */
+    public List<HunkResult> getHunks() { return hunks; }
+    /** @return An error preventing the file from being patched at all, such as a missing base file. */
+    public String getError() { return error; }
+    /** @return The time taken to parse and apply the patch, in nanoseconds. */
+    public long getElapsedNanos() { return elapsedNanos; }
+    void setElapsedNanos(long elapsedNanos) { this.elapsedNanos = elapsedNanos; }
+    /** @return The mode the patch was applied with, the last mode tried if escalating. Null if it was not applied. */
+    public PatchMode getTier() { return tier; }
+    void setTier(PatchMode tier) { this.tier = tier; }
+    /** @return If patching was abandoned when the time budget ran out. The output is the unchanged base, and the whole patch is rejected. */
+    public boolean isOverBudget() { return overBudget; }
+    void setOverBudget(boolean overBudget) { this.overBudget = overBudget; }
+    //@formatter:on
+}
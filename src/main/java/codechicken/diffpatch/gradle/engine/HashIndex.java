@@ -0,0 +1,147 @@
+package codechicken.diffpatch.gradle.engine;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A persisted index of the content hashes of files in a directory tree,
+ * keyed by path and validated by each file's size and modification time.
+ * <p>
+ * Stored as lines of tab separated <code>path size lastModified hash</code>.
+ * Only entries looked up or added since loading are saved, so files which
+ * have been removed from the tree drop out of the index.
+ * <p>
+ * Not thread safe.
+ */
+public class HashIndex {
+
+    /**
+     * Files modified less than this long before the index was loaded are not indexed,
+     * as they may still be modified again without their modification time changing.
+     */
+    private static final long RACY_MILLIS = 2000;
+
+    private final File file;
+    private final long loadTime;
+    private final Map<String, Entry> loaded;
+    private final Map<String, Entry> current = new TreeMap<>();
+    private boolean dirty;
+
+    private HashIndex(File file, long loadTime, Map<String, Entry> loaded) {
+        this.file = file;
+        this.loadTime = loadTime;
+        this.loaded = loaded;
+    }
+
+    /**
+     * Loads the index from the given file, an empty index is returned if the
+     * file does not exist. Malformed lines are ignored.
+     *
+     * @param file The file.
+     * @return The index.
+     * @throws IOException If an IO error occurs.
+     */
+    public static HashIndex load(File file) throws IOException {
+        long loadTime = System.currentTimeMillis();
+        Map<String, Entry> entries = new HashMap<>();
+        if (file.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String[] split = line.split("\t");
+                    if (split.length != 4) {
+                        continue;
+                    }
+                    try {
+                        entries.put(split[0], new Entry(Long.parseLong(split[1]), Long.parseLong(split[2]), split[3]));
+                    } catch (NumberFormatException ignored) {
+                    }
+                }
+            }
+        }
+        return new HashIndex(file, loadTime, entries);
+    }
+
+    /**
+     * Gets the indexed hash of a file.
+     *
+     * @param path         The path of the file.
+     * @param size         The current size of the file.
+     * @param lastModified The current modification time of the file.
+     * @return The hash, or null if the file is not indexed or has changed since it was.
+     */
+    public String get(String path, long size, long lastModified) {
+        Entry entry = current.get(path);
+        if (entry == null) {
+            entry = loaded.get(path);
+            if (entry != null) {
+                current.put(path, entry);
+            }
+        }
+        if (entry == null || entry.size != size || entry.lastModified != lastModified) {
+            return null;
+        }
+        return entry.hash;
+    }
+
+    /**
+     * Indexes the hash of a file.
+     *
+     * @param path         The path of the file.
+     * @param size         The size of the file.
+     * @param lastModified The modification time of the file.
+     * @param hash         The hash.
+     */
+    public void put(String path, long size, long lastModified, String hash) {
+        if (lastModified > loadTime - RACY_MILLIS) {
+            return;
+        }
+        current.put(path, new Entry(size, lastModified, hash));
+        dirty = true;
+    }
+
+    /**
+     * Saves the index, if it has changed since it was loaded.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void save() throws IOException {
+        if (!dirty && current.size() == loaded.size()) {
+            return;
+        }
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        File tmp = new File(file.getPath() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            for (Map.Entry<String, Entry> e : current.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + "\t" + entry.size + "\t" + entry.lastModified + "\t" + entry.hash + "\n");
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        dirty = false;
+    }
+
+    private static class Entry {
+
+        private final long size;
+        private final long lastModified;
+        private final String hash;
+
+        private Entry(long size, long lastModified, String hash) {
+            this.size = size;
+            this.lastModified = lastModified;
+            this.hash = hash;
+        }
+    }
+}
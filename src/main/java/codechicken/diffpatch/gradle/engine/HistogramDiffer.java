@@ -0,0 +1,165 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.diff.Differ;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A histogram {@link Differ}, in the style of git's histogram diff.
+ * <p>
+ * Common leading and trailing lines are matched first. Then, within each remaining
+ * region, the longest run of matching lines anchored on the line occurring least
+ * often in the base is matched, and the regions either side are matched the same way.
+ * <p>
+ * Lines are interned to int ids up front, and all matching is done over primitive
+ * arrays allocated once per file, so no objects are created per line beyond the
+ * intern table. Files which differ in a few places diff in near linear time.
+ */
+public class HistogramDiffer extends Differ {
+
+    /**
+     * The maximum number of occurrences of a line tried as an anchor, bounding
+     * the time spent on lines which repeat many times, such as braces.
+     */
+    private static final int MAX_CHAIN = 64;
+
+    @Override
+    public int[] match(List<String> lines1, List<String> lines2) {
+        int[] a = new int[lines1.size()];
+        int[] b = new int[lines2.size()];
+        Map<String, Integer> ids = new HashMap<>();
+        intern(lines1, a, ids);
+        intern(lines2, b, ids);
+        int[] matches = new int[a.length];
+        Arrays.fill(matches, -1);
+        new Matcher(a, b, ids.size(), matches).run();
+        return matches;
+    }
+
+    private static void intern(List<String> lines, int[] out, Map<String, Integer> ids) {
+        int i = 0;
+        for (String line : lines) {
+            Integer id = ids.get(line);
+            if (id == null) {
+                id = ids.size();
+                ids.put(line, id);
+            }
+            out[i++] = id;
+        }
+    }
+
+    private static class Matcher {
+
+        private final int[] a;
+        private final int[] b;
+        private final int[] matches;
+        //Occurrences of each id in the current base region, the first index of each, and the next index of the same id.
+        private final int[] count;
+        private final int[] head;
+        private final int[] next;
+        private int[] stack = new int[64];
+        private int stackSize;
+
+        private Matcher(int[] a, int[] b, int ids, int[] matches) {
+            this.a = a;
+            this.b = b;
+            this.matches = matches;
+            count = new int[ids];
+            head = new int[ids];
+            next = new int[a.length];
+            Arrays.fill(head, -1);
+        }
+
+        private void run() {
+            push(0, a.length, 0, b.length);
+            while (stackSize > 0) {
+                stackSize -= 4;
+                region(stack[stackSize], stack[stackSize + 1], stack[stackSize + 2], stack[stackSize + 3]);
+            }
+        }
+
+        private void push(int aStart, int aEnd, int bStart, int bEnd) {
+            if (aStart >= aEnd || bStart >= bEnd) {
+                return;
+            }
+            if (stackSize + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+            }
+            stack[stackSize++] = aStart;
+            stack[stackSize++] = aEnd;
+            stack[stackSize++] = bStart;
+            stack[stackSize++] = bEnd;
+        }
+
+        private void region(int aStart, int aEnd, int bStart, int bEnd) {
+            while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+                matches[aStart++] = bStart++;
+            }
+            while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+                matches[--aEnd] = --bEnd;
+            }
+            if (aStart >= aEnd || bStart >= bEnd) {
+                return;
+            }
+
+            for (int i = aEnd - 1; i >= aStart; i--) {
+                int id = a[i];
+                next[i] = head[id];
+                head[id] = i;
+                count[id]++;
+            }
+
+            int bestA = -1;
+            int bestB = -1;
+            int bestLen = 0;
+            int bestCount = Integer.MAX_VALUE;
+            int j = bStart;
+            while (j < bEnd) {
+                int id = b[j];
+                int c = count[id];
+                if (c == 0 || c > bestCount) {
+                    j++;
+                    continue;
+                }
+                int nextJ = j + 1;
+                int chain = 0;
+                for (int i = head[id]; i != -1 && chain < MAX_CHAIN; i = next[i], chain++) {
+                    int before = 0;
+                    while (i - before > aStart && j - before > bStart && a[i - before - 1] == b[j - before - 1]) {
+                        before++;
+                    }
+                    int after = 1;
+                    while (i + after < aEnd && j + after < bEnd && a[i + after] == b[j + after]) {
+                        after++;
+                    }
+                    int len = before + after;
+                    if (c < bestCount || len > bestLen) {
+                        bestA = i - before;
+                        bestB = j - before;
+                        bestLen = len;
+                        bestCount = c;
+                    }
+                    //Lines within this run can only anchor the same run again.
+                    nextJ = Math.max(nextJ, j + after);
+                }
+                j = nextJ;
+            }
+
+            for (int i = aStart; i < aEnd; i++) {
+                count[a[i]] = 0;
+                head[a[i]] = -1;
+            }
+            if (bestLen == 0) {
+                return;
+            }
+            for (int k = 0; k < bestLen; k++) {
+                matches[bestA + k] = bestB + k;
+            }
+            push(aStart, bestA, bStart, bestB);
+            push(bestA + bestLen, aEnd, bestB + bestLen, bEnd);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.util.PatchMode;
+
+/**
+ * The outcome of applying a single hunk.
+ */
+public class HunkResult {
+
+    private final boolean success;
+    private final PatchMode mode;
+    private final int offset;
+    private final float fuzzyQuality;
+    private final String summary;
+
+    public HunkResult(boolean success, PatchMode mode, int offset, float fuzzyQuality, String summary) {
+        this.success = success;
+        this.mode = mode;
+        this.offset = offset;
+        this.fuzzyQuality = fuzzyQuality;
+        this.summary = summary;
+    }
+
+    //@formatter:off
+    /** @return If the hunk applied. */
+    public boolean isSuccess() { return success; }
+    /** @return The mode the hunk applied with, null if it failed. */
+    public PatchMode getMode() { return mode; }
+    /** @return The number of lines the hunk was moved from its target. */
+    public int getOffset() { return offset; }
+    /** @return The quality of the fuzzy match, if applied fuzzily. */
+    public float getFuzzyQuality() { return fuzzyQuality; }
+    /** @return DiffPatch's human readable summary of the hunk. */
+    public String getSummary() { return summary; }
+    //@formatter:on
+}
@@ -0,0 +1,189 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.DirectoryInputTree;
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndex;
+import codechicken.diffpatch.gradle.util.ZipIndexInputTree;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Detects files which are byte-identical between two trees, so they
+ * can be skipped without being split into lines or diffed.
+ * <p>
+ * Sizes are compared first, then zip entry CRCs where both trees are
+ * indexed zips. Directory trees may have a {@link HashIndex}, which
+ * lets files unchanged since the last run be compared by hash without
+ * being read. Otherwise, contents are compared directly, memory mapped
+ * where possible.
+ * <p>
+ * Not thread safe.
+ */
+public class IdentityFilter implements Closeable {
+
+    private final InputTree base;
+    private final InputTree modified;
+    private final HashIndex baseIndex;
+    private final HashIndex modifiedIndex;
+    private int identical;
+    private long identicalBytes;
+
+    /**
+     * @param base     The base tree.
+     * @param modified The modified tree.
+     * @param indexDir The directory to persist hash indexes for directory trees in, null to not persist hashes.
+     * @throws IOException If an existing index could not be read.
+     */
+    public IdentityFilter(InputTree base, InputTree modified, File indexDir) throws IOException {
+        this.base = base;
+        this.modified = modified;
+        baseIndex = loadIndex(base, indexDir);
+        modifiedIndex = loadIndex(modified, indexDir);
+    }
+
+    private static HashIndex loadIndex(InputTree tree, File indexDir) throws IOException {
+        if (indexDir == null || !(tree instanceof DirectoryInputTree)) {
+            return null;
+        }
+        Path root = ((DirectoryInputTree) tree).resolve("").toAbsolutePath().normalize();
+        String name = Utils.hash(root.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        return HashIndex.load(new File(indexDir, "hashes-" + name + ".tsv"));
+    }
+
+    /**
+     * Checks if a file exists in both trees with identical contents.
+     *
+     * @param path The path.
+     * @return If the file is identical.
+     * @throws IOException If an IO error occurs.
+     */
+    public boolean isIdentical(String path) throws IOException {
+        return compare(path).isIdentical();
+    }
+
+    /**
+     * Compares a file between both trees, returning any contents read
+     * in doing so, so a changed file need not be read again to diff it.
+     *
+     * @param path The path.
+     * @return The comparison.
+     * @throws IOException If an IO error occurs.
+     */
+    public Comparison compare(String path) throws IOException {
+        long size = base.size(path);
+        if (size == -1 || size != modified.size(path)) {
+            return new Comparison(false, null, null);
+        }
+        if (base instanceof ZipIndexInputTree && modified instanceof ZipIndexInputTree) {
+            ZipIndex.Entry baseEntry = ((ZipIndexInputTree) base).getEntry(path);
+            ZipIndex.Entry modifiedEntry = ((ZipIndexInputTree) modified).getEntry(path);
+            if (baseEntry.getCrc() != modifiedEntry.getCrc()) {
+                return new Comparison(false, null, null);
+            }
+        }
+
+        long baseModified = lastModified(base, baseIndex, path);
+        long modifiedModified = lastModified(modified, modifiedIndex, path);
+        String baseHash = baseIndex != null ? baseIndex.get(path, size, baseModified) : null;
+        String modifiedHash = modifiedIndex != null ? modifiedIndex.get(path, size, modifiedModified) : null;
+        ByteBuffer baseBuffer = null;
+        ByteBuffer modifiedBuffer = null;
+        boolean same;
+        if (baseHash != null && modifiedHash != null) {
+            same = baseHash.equals(modifiedHash);
+        } else if (baseHash != null || modifiedHash != null) {
+            //Only one side needs reading, hash it and index it for next time.
+            String hash;
+            if (baseHash == null) {
+                baseBuffer = base.readBuffer(path);
+                hash = baseHash = Utils.hash(baseBuffer);
+                baseIndex.put(path, size, baseModified, hash);
+            } else {
+                modifiedBuffer = modified.readBuffer(path);
+                hash = modifiedHash = Utils.hash(modifiedBuffer);
+                modifiedIndex.put(path, size, modifiedModified, hash);
+            }
+            same = baseHash.equals(modifiedHash);
+        } else {
+            baseBuffer = base.readBuffer(path);
+            modifiedBuffer = modified.readBuffer(path);
+            same = baseBuffer.equals(modifiedBuffer);
+            if (same && (baseIndex != null || modifiedIndex != null)) {
+                String hash = Utils.hash(baseBuffer);
+                if (baseIndex != null) {
+                    baseIndex.put(path, size, baseModified, hash);
+                }
+                if (modifiedIndex != null) {
+                    modifiedIndex.put(path, size, modifiedModified, hash);
+                }
+            }
+        }
+        if (same) {
+            identical++;
+            identicalBytes += size * 2;
+            return new Comparison(true, null, null);
+        }
+        return new Comparison(false, baseBuffer, modifiedBuffer);
+    }
+
+    private static long lastModified(InputTree tree, HashIndex index, String path) throws IOException {
+        if (index == null) {
+            return -1;
+        }
+        return Files.getLastModifiedTime(((DirectoryInputTree) tree).resolve(path)).toMillis();
+    }
+
+    /**
+     * Saves the hash indexes.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    @Override
+    public void close() throws IOException {
+        if (baseIndex != null) {
+            baseIndex.save();
+        }
+        if (modifiedIndex != null) {
+            modifiedIndex.save();
+        }
+    }
+
+    //@formatter:off
+    /** @return The number of identical files found. */
+    public int getIdentical() { return identical; }
+    /** @return The combined size of identical files in both trees. */
+    public long getIdenticalBytes() { return identicalBytes; }
+    //@formatter:on
+
+    /**
+     * The result of {@link #compare(String)}.
+     */
+    public static class Comparison {
+
+        private final boolean identical;
+        private final ByteBuffer base;
+        private final ByteBuffer modified;
+
+        private Comparison(boolean identical, ByteBuffer base, ByteBuffer modified) {
+            this.identical = identical;
+            this.base = base;
+            this.modified = modified;
+        }
+
+        //@formatter:off
+        /** @return If the file is identical. */
+        public boolean isIdentical() { return identical; }
+        /** @return The base contents, if they were read comparing a changed file, otherwise null. */
+        public ByteBuffer getBase() { return base; }
+        /** @return The modified contents, if they were read comparing a changed file, otherwise null. */
+        public ByteBuffer getModified() { return modified; }
+        //@formatter:on
+    }
+}
@@ -0,0 +1,134 @@
+package codechicken.diffpatch.gradle.engine;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Runs work for files on a pool, and completes the results on the submitting
+ * thread in the order the files were submitted.
+ * <p>
+ * The number of files and bytes in flight, from submission until completion, is capped.
+ * Submitting a file first completes the oldest files until the new file fits.
+ * A single file larger than the byte cap is still processed, on its own.
+ *
+ * @param <R> The type of result.
+ */
+public class OrderedWorkQueue<R> {
+
+    private final ForkJoinPool pool;
+    private final int maxPending;
+    private final long maxInFlight;
+    private final String action;
+    private final Deque<Entry<R>> pending = new ArrayDeque<>();
+    private long inFlightBytes;
+    private boolean stopped;
+
+    /**
+     * @param pool        The pool to run work on, null to run it on the submitting thread.
+     * @param maxPending  The maximum number of files in flight.
+     * @param maxInFlight The maximum number of bytes in flight.
+     * @param action      The action performed, used in error messages. E.g. 'patch'.
+     */
+    public OrderedWorkQueue(ForkJoinPool pool, int maxPending, long maxInFlight, String action) {
+        this.pool = pool;
+        this.maxPending = Math.max(1, maxPending);
+        this.maxInFlight = maxInFlight;
+        this.action = action;
+    }
+
+    /**
+     * Submits a file, first completing the oldest files until it fits.
+     * Does nothing once stopped.
+     *
+     * @param path       The path of the file, used in error messages.
+     * @param size       The number of bytes held for the file until it is completed.
+     * @param work       The work to run on the pool, null to complete the file with a null result.
+     * @param completion Called with the result when the file is completed.
+     * @throws IOException If an IO error occurs completing files.
+     */
+    public void submit(String path, long size, Supplier<R> work, Completion<R> completion) throws IOException {
+        while (!pending.isEmpty() && !stopped && (pending.size() >= maxPending || inFlightBytes + size > maxInFlight)) {
+            complete(pending.poll());
+        }
+        if (stopped) {
+            return;
+        }
+        Future<R> future = null;
+        if (work != null) {
+            future = pool != null ? pool.submit(work::get) : CompletableFuture.completedFuture(work.get());
+        }
+        pending.add(new Entry<>(path, size, future, completion));
+        inFlightBytes += size;
+    }
+
+    /**
+     * Completes all remaining files, in order, until stopped.
+     *
+     * @throws IOException If an IO error occurs completing files.
+     */
+    public void drain() throws IOException {
+        while (!pending.isEmpty() && !stopped) {
+            complete(pending.poll());
+        }
+    }
+
+    /**
+     * Stops the queue, files not yet completed are dropped. Usually called from a {@link Completion}.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    //@formatter:off
+    public boolean isStopped() { return stopped; }
+    public int getPending() { return pending.size(); }
+    public long getInFlightBytes() { return inFlightBytes; }
+    //@formatter:on
+
+    private void complete(Entry<R> entry) throws IOException {
+        inFlightBytes -= entry.size;
+        R result = null;
+        if (entry.future != null) {
+            try {
+                result = entry.future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("Interrupted whilst waiting to " + action + ": " + entry.path, e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("Failed to " + action + ": " + entry.path, e.getCause());
+            }
+        }
+        entry.completion.complete(result);
+    }
+
+    /**
+     * Called on the submitting thread with the result for a file, in submission order.
+     *
+     * @param <R> The type of result.
+     */
+    public interface Completion<R> {
+
+        void complete(R result) throws IOException;
+    }
+
+    private static class Entry<R> {
+
+        private final String path;
+        private final long size;
+        private final Future<R> future;
+        private final Completion<R> completion;
+
+        private Entry(String path, long size, Future<R> future, Completion<R> completion) {
+            this.path = path;
+            this.size = size;
+            this.future = future;
+            this.completion = completion;
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchFile;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A least recently used cache of parsed {@link PatchFile}s, keyed by path and content hash.
+ * <p>
+ * The size of each entry is estimated from the size of its patch file, and entries are
+ * evicted once the total exceeds the configured maximum. Cached PatchFiles are shared,
+ * and must not be modified.
+ */
+public class PatchFileCache {
+
+    private final Map<Key, Entry> entries = new LinkedHashMap<>(16, 0.75F, true);
+    private long maxBytes;
+    private long size;
+    private long hits;
+    private long misses;
+
+    public PatchFileCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Gets the parsed form of a patch file, parsing it if it is not cached.
+     *
+     * @param path  The path of the file being patched, relative to the tree root.
+     * @param patch The patch file bytes.
+     * @return The parsed patch file.
+     */
+    public PatchFile get(String path, byte[] patch) {
+        if (maxBytes <= 0) {
+            return parse(path, patch);
+        }
+        Key key = new Key(path, Utils.hash(patch));
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.patchFile;
+            }
+            misses++;
+        }
+        //Parse outside the lock, concurrent misses for the same key parse twice and keep the last.
+        PatchFile patchFile = parse(path, patch);
+        long weight = estimateSize(patch);
+        if (weight > maxBytes) {
+            return patchFile;
+        }
+        synchronized (this) {
+            Entry prev = entries.put(key, new Entry(patchFile, weight));
+            if (prev != null) {
+                size -= prev.weight;
+            }
+            size += weight;
+            evict();
+        }
+        return patchFile;
+    }
+
+    /**
+     * Sets the maximum estimated size of all entries, evicting entries if required.
+     *
+     * @param maxBytes The maximum, 0 to disable caching.
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        evict();
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    private void evict() {
+        Iterator<Entry> itr = entries.values().iterator();
+        while (size > maxBytes && itr.hasNext()) {
+            size -= itr.next().weight;
+            itr.remove();
+        }
+    }
+
+    private static PatchFile parse(String path, byte[] patch) {
+        return PatchFile.fromLines(path + ".patch", Utils.splitLines(patch), true);
+    }
+
+    /**
+     * Parsed lines are held as UTF-16 Strings, plus per-line and per-hunk overhead.
+     */
+    private static long estimateSize(byte[] patch) {
+        return 256 + patch.length * 3L;
+    }
+
+    //@formatter:off
+    public synchronized long getMaxBytes() { return maxBytes; }
+    /** @return The estimated size of all entries. */
+    public synchronized long getSize() { return size; }
+    public synchronized int getCount() { return entries.size(); }
+    public synchronized long getHits() { return hits; }
+    public synchronized long getMisses() { return misses; }
+    //@formatter:on
+
+    private static class Key {
+
+        private final String path;
+        private final String hash;
+
+        private Key(String path, String hash) {
+            this.path = path;
+            this.hash = hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return path.equals(other.path) && hash.equals(other.hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return path.hashCode() * 31 + hash.hashCode();
+        }
+    }
+
+    private static class Entry {
+
+        private final PatchFile patchFile;
+        private final long weight;
+
+        private Entry(PatchFile patchFile, long weight) {
+            this.patchFile = patchFile;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+
+import java.io.File;
+
+/**
+ * Typed options for a {@link PatchRunner}.
+ * <p>
+ * Tree paths are only required when patching a tree, single file
+ * operations only use the mode and fuzz options.
+ */
+public class PatchOptions {
+
+    /**
+     * DiffPatch's defaults for fuzzy matching, used when left unset (-1).
+     */
+    public static final float DEFAULT_MIN_FUZZ = 0.5F;
+    public static final int DEFAULT_MAX_OFFSET = 5000;
+    /**
+     * The default maximum number of bytes read but not yet written at once, used when left unset.
+     */
+    public static final long DEFAULT_MAX_IN_FLIGHT = 64 * 1024 * 1024;
+
+    private File base;
+    private File patches;
+    private String patchesPrefix;
+    private File output;
+    private ArchiveFormat outputFormat;
+    private File rejects;
+    private ArchiveFormat rejectsFormat;
+    private PatchMode mode = PatchMode.EXACT;
+    private float minFuzzQuality = -1;
+    private int maxFuzzOffset = -1;
+    private int threads = 1;
+    private int compressionLevel = -1;
+    private boolean checkOnly;
+    private boolean failOnError;
+    private boolean escalate;
+    private int fileTimeBudget;
+    private int slowestFiles;
+    private File resultStore;
+    private long resultStoreMaxBytes;
+    private long maxInFlightBytes = DEFAULT_MAX_IN_FLIGHT;
+    private boolean verbose;
+    private boolean printSummary;
+
+    /**
+     * @return The minimum fuzz quality, with the DiffPatch default substituted if unset.
+     */
+    public float getEffectiveMinFuzzQuality() {
+        return minFuzzQuality != -1 ? minFuzzQuality : DEFAULT_MIN_FUZZ;
+    }
+
+    /**
+     * @return The maximum fuzz offset, with the DiffPatch default substituted if unset.
+     */
+    public int getEffectiveMaxFuzzOffset() {
+        return maxFuzzOffset != -1 ? maxFuzzOffset : DEFAULT_MAX_OFFSET;
+    }
+
+    //@formatter:off
+    public File getBase() { return base; }
+    public File getPatches() { return patches; }
+    public String getPatchesPrefix() { return patchesPrefix; }
+    public boolean isCheckOnly() { return checkOnly; }
+    public boolean isFailOnError() { return failOnError; }
+    public boolean isEscalate() { return escalate; }
+    public int getFileTimeBudget() { return fileTimeBudget; }
+    public int getSlowestFiles() { return slowestFiles; }
+    public File getResultStore() { return resultStore; }
+    public long getResultStoreMaxBytes() { return resultStoreMaxBytes; }
+    public long getMaxInFlightBytes() { return maxInFlightBytes; }
+    public File getOutput() { return output; }
+    public ArchiveFormat getOutputFormat() { return outputFormat; }
+    public File getRejects() { return rejects; }
+    public ArchiveFormat getRejectsFormat() { return rejectsFormat; }
+    public PatchMode getMode() { return mode; }
+    public float getMinFuzzQuality() { return minFuzzQuality; }
+    public int getMaxFuzzOffset() { return maxFuzzOffset; }
+    public int getThreads() { return threads; }
+    public int getCompressionLevel() { return compressionLevel; }
+    public boolean isVerbose() { return verbose; }
+    public boolean isPrintSummary() { return printSummary; }
+    public void setBase(File base) { this.base = base; }
+    public void setPatches(File patches) { this.patches = patches; }
+    public void setPatchesPrefix(String patchesPrefix) { this.patchesPrefix = patchesPrefix; }
+    public void setCheckOnly(boolean checkOnly) { this.checkOnly = checkOnly; }
+    public void setFailOnError(boolean failOnError) { this.failOnError = failOnError; }
+    public void setEscalate(boolean escalate) { this.escalate = escalate; }
+    public void setFileTimeBudget(int fileTimeBudget) { this.fileTimeBudget = fileTimeBudget; }
+    public void setSlowestFiles(int slowestFiles) { this.slowestFiles = slowestFiles; }
+    public void setResultStore(File resultStore) { this.resultStore = resultStore; }
+    public void setResultStoreMaxBytes(long resultStoreMaxBytes) { this.resultStoreMaxBytes = resultStoreMaxBytes; }
+    public void setMaxInFlightBytes(long maxInFlightBytes) { this.maxInFlightBytes = maxInFlightBytes; }
+    public void setOutput(File output) { this.output = output; }
+    public void setOutputFormat(ArchiveFormat outputFormat) { this.outputFormat = outputFormat; }
+    public void setRejects(File rejects) { this.rejects = rejects; }
+    public void setRejectsFormat(ArchiveFormat rejectsFormat) { this.rejectsFormat = rejectsFormat; }
+    public void setMode(PatchMode mode) { this.mode = mode; }
+    public void setMinFuzzQuality(float minFuzzQuality) { this.minFuzzQuality = minFuzzQuality; }
+    public void setMaxFuzzOffset(int maxFuzzOffset) { this.maxFuzzOffset = maxFuzzOffset; }
+    public void setThreads(int threads) { this.threads = threads; }
+    public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+    public void setVerbose(boolean verbose) { this.verbose = verbose; }
+    public void setPrintSummary(boolean printSummary) { this.printSummary = printSummary; }
+    //@formatter:on
+}
@@ -0,0 +1,278 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.JsonWriter;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The outcome of patching a tree, with a {@link FileReport} for every file a patch was applied to.
+ */
+public class PatchReport {
+
+    private final List<FileReport> files;
+    private final int copied;
+    private final long bytesRead;
+    private final long bytesWritten;
+    private final long elapsedNanos;
+    private final boolean detailed;
+    private final int exitCode;
+    private ExecutionMetrics metrics = new ExecutionMetrics();
+
+    public PatchReport(List<FileReport> files, int copied, long bytesRead, long bytesWritten, long elapsedNanos) {
+        this.files = Collections.unmodifiableList(new ArrayList<>(files));
+        this.copied = copied;
+        this.bytesRead = bytesRead;
+        this.bytesWritten = bytesWritten;
+        this.elapsedNanos = elapsedNanos;
+        detailed = true;
+        exitCode = getFailed() == 0 ? 0 : 1;
+    }
+
+    private PatchReport(int exitCode, long elapsedNanos) {
+        files = Collections.emptyList();
+        copied = 0;
+        bytesRead = 0;
+        bytesWritten = 0;
+        this.elapsedNanos = elapsedNanos;
+        detailed = false;
+        this.exitCode = exitCode;
+    }
+
+    /**
+     * Creates a report for an operation which only produced an exit code,
+     * such as one run through DiffPatch's command line entry point.
+     *
+     * @param exitCode     The exit code.
+     * @param elapsedNanos The time taken.
+     * @return The report.
+     */
+    public static PatchReport fromExitCode(int exitCode, long elapsedNanos) {
+        return new PatchReport(exitCode, elapsedNanos);
+    }
+
+    /**
+     * @return The number of files which had rejected hunks or were missing.
+     */
+    public int getFailed() {
+        return (int) files.stream().filter(e -> !e.isSuccess()).count();
+    }
+
+    /**
+     * Writes this report as JSON.
+     *
+     * @param file The file to write to.
+     * @throws IOException If an IO error occurs.
+     */
+    public void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("exitCode").value(exitCode);
+            json.name("detailed").value(detailed);
+            json.name("elapsedMs").value(elapsedNanos / 1000000D);
+            json.name("patched").value(files.size());
+            json.name("failed").value(getFailed());
+            json.name("copied").value(copied);
+            json.name("bytesRead").value(bytesRead);
+            json.name("bytesWritten").value(bytesWritten);
+            json.name("files").beginArray();
+            for (FileReport report : files) {
+                report.write(json);
+            }
+            json.endArray();
+            json.name("metrics");
+            metrics.write(json);
+            json.endObject();
+        }
+    }
+
+    //@formatter:off
+    /** @return The exit code in the same form as DiffPatch, 0 if all patches applied, 1 otherwise. */
+    public int getExitCode() { return exitCode; }
+    /** @return False if this report only has an exit code, and no per-file information. */
+    public boolean isDetailed() { return detailed; }
+    /** @return Reports for each file a patch was applied to, in path order. */
+    public List<FileReport> getFiles() { return files; }
+    /** @return The number of base files copied to the output without a patch. */
+    public int getCopied() { return copied; }
+    /** @return The total number of bytes read from the base and patches. */
+    public long getBytesRead() { return bytesRead; }
+    /** @return The total number of bytes written to the output and rejects. */
+    public long getBytesWritten() { return bytesWritten; }
+    /** @return The wall time of the operation, in nanoseconds. */
+    public long getElapsedNanos() { return elapsedNanos; }
+    /** @return The phase timings and throughput of the operation. */
+    public ExecutionMetrics getMetrics() { return metrics; }
+    public void setMetrics(ExecutionMetrics metrics) { this.metrics = metrics; }
+    //@formatter:on
+
+    public enum Status {
+        /**
+         * All hunks applied.
+         */
+        PATCHED,
+        /**
+         * All hunks applied, and the patch removed the file.
+         */
+        REMOVED,
+        /**
+         * One or more hunks were rejected.
+         */
+        FAILED,
+        /**
+         * The base file did not exist.
+         */
+        MISSING
+    }
+
+    /**
+     * The outcome of applying a patch file to a single file.
+     */
+    public static class FileReport {
+
+        private final String path;
+        private final Status status;
+        private final List<HunkResult> hunks;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+        private final PatchMode tier;
+        private final boolean overBudget;
+
+        public FileReport(String path, Status status, List<HunkResult> hunks, PatchMode tier, long bytesRead, long bytesWritten, long elapsedNanos, boolean overBudget) {
+            this.path = path;
+            this.status = status;
+            this.hunks = hunks;
+            this.tier = tier;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+            this.overBudget = overBudget;
+        }
+
+        /**
+         * Creates a FileReport from a {@link FilePatchResult}.
+         *
+         * @param result    The result.
+         * @param bytesRead The number of bytes read for the base and patch.
+         * @return The report.
+         */
+        public static FileReport of(FilePatchResult result, long bytesRead) {
+            return of(result, bytesRead, result.getBytesWritten());
+        }
+
+        /**
+         * Creates a FileReport from a {@link FilePatchResult}, whose output may not have been written.
+         *
+         * @param result       The result.
+         * @param bytesRead    The number of bytes read for the base and patch.
+         * @param bytesWritten The number of bytes written for the output and reject.
+         * @return The report.
+         */
+        public static FileReport of(FilePatchResult result, long bytesRead, long bytesWritten) {
+            Status status;
+            if (result.getError() != null) {
+                status = Status.MISSING;
+            } else if (!result.isSuccess()) {
+                status = Status.FAILED;
+            } else if (!result.hasOutput()) {
+                status = Status.REMOVED;
+            } else {
+                status = Status.PATCHED;
+            }
+            return new FileReport(result.getPath(), status, result.getHunks(), result.getTier(), bytesRead, bytesWritten, result.getElapsedNanos(), result.isOverBudget());
+        }
+
+        /**
+         * @return If all hunks applied.
+         */
+        public boolean isSuccess() {
+            return status == Status.PATCHED || status == Status.REMOVED;
+        }
+
+        /**
+         * Counts the number of hunks which applied with the given mode.
+         *
+         * @param mode The mode.
+         * @return The number of hunks.
+         */
+        public int getHunksApplied(PatchMode mode) {
+            return (int) hunks.stream().filter(e -> e.isSuccess() && e.getMode() == mode).count();
+        }
+
+        /**
+         * @return The number of hunks which applied.
+         */
+        public int getHunksApplied() {
+            return (int) hunks.stream().filter(HunkResult::isSuccess).count();
+        }
+
+        /**
+         * @return The lowest quality of any fuzzy match, or NaN if no hunks matched fuzzily.
+         */
+        public float getMinFuzzyQuality() {
+            return (float) hunks.stream()
+                    .filter(e -> e.isSuccess() && e.getMode() == PatchMode.FUZZY)
+                    .mapToDouble(HunkResult::getFuzzyQuality)
+                    .min()
+                    .orElse(Double.NaN);
+        }
+
+        /**
+         * @return The largest absolute offset any hunk applied at.
+         */
+        public int getMaxOffset() {
+            return hunks.stream().filter(HunkResult::isSuccess).mapToInt(e -> Math.abs(e.getOffset())).max().orElse(0);
+        }
+
+        private void write(JsonWriter json) throws IOException {
+            json.beginObject();
+            json.name("path").value(path);
+            json.name("status").value(status.name());
+            json.name("tier").value(tier != null ? tier.name() : null);
+            json.name("hunks").value(hunks.size());
+            json.name("applied").value(getHunksApplied());
+            json.name("exact").value(getHunksApplied(PatchMode.EXACT));
+            json.name("access").value(getHunksApplied(PatchMode.ACCESS));
+            json.name("offset").value(getHunksApplied(PatchMode.OFFSET));
+            json.name("fuzzy").value(getHunksApplied(PatchMode.FUZZY));
+            json.name("minFuzzyQuality").value(getMinFuzzyQuality());
+            json.name("maxOffset").value(getMaxOffset());
+            json.name("offsets").beginArray();
+            for (HunkResult hunk : hunks) {
+                if (hunk.isSuccess()) {
+                    json.value(hunk.getOffset());
+                }
+            }
+            json.endArray();
+            json.name("bytesRead").value(bytesRead);
+            json.name("bytesWritten").value(bytesWritten);
+            json.name("elapsedMs").value(elapsedNanos / 1000000D);
+            json.name("overBudget").value(overBudget);
+            json.endObject();
+        }
+
+        //@formatter:off
+        public String getPath() { return path; }
+        public Status getStatus() { return status; }
+        public List<HunkResult> getHunks() { return hunks; }
+        /** @return The mode the patch was applied with, null if it was not applied. */
+        public PatchMode getTier() { return tier; }
+        public long getBytesRead() { return bytesRead; }
+        public long getBytesWritten() { return bytesWritten; }
+        public long getElapsedNanos() { return elapsedNanos; }
+        /** @return If patching took longer than the time budget. */
+        public boolean isOverBudget() { return overBudget; }
+        //@formatter:on
+    }
+}
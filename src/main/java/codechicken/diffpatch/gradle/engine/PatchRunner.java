@@ -0,0 +1,434 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.OutputTree;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import codechicken.diffpatch.patch.Patcher;
+import codechicken.diffpatch.util.Patch;
+import codechicken.diffpatch.util.PatchFile;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Applies patches by calling DiffPatch's {@link Patcher} directly,
+ * either to single files in memory or to a whole tree.
+ * <p>
+ * When patching a tree, files are read and submitted in sorted order, and
+ * results are written and logged in that same order, so output is identical
+ * regardless of the number of threads. The number of files and bytes held in
+ * memory between reading and writing is capped, blocking the reader until the
+ * oldest results have been written.
+ * <p>
+ * Files without a patch are never read into memory, they are passed to
+ * {@link OutputTree#copy}, which copies them as directly as the trees allow.
+ */
+public class PatchRunner {
+
+    /**
+     * The path used in patch headers for a file that does not exist.
+     */
+    public static final String DEV_NULL = "/dev/null";
+
+    private final PatchOptions options;
+    private final ExecutionMetrics metrics = new ExecutionMetrics();
+    private final Consumer<String> log;
+    private final PatchFileCache patchCache;
+    private final ZipIndexCache zipCache;
+    private final ResultStore store;
+    /**
+     * Runs patch attempts for files with a time budget, so they can be abandoned once it runs out.
+     */
+    private static final ExecutorService BUDGET_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "DiffPatch Budget");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final List<PatchMode> tiers = new ArrayList<>();
+    private ForkJoinPool pool;
+
+    public PatchRunner(PatchOptions options, Consumer<String> log) {
+        this(options, log, null, null);
+    }
+
+    /**
+     * @param options    The options.
+     * @param log        The consumer for log output.
+     * @param patchCache The cache to get parsed patch files from, may be null.
+     * @param zipCache   The cache to open zip inputs from, may be null.
+     */
+    public PatchRunner(PatchOptions options, Consumer<String> log, PatchFileCache patchCache, ZipIndexCache zipCache) {
+        this.options = options;
+        this.log = metrics.timeLog(log);
+        this.patchCache = patchCache;
+        this.zipCache = zipCache;
+        store = options.getResultStore() != null ? new ResultStore(options.getResultStore(), options.getResultStoreMaxBytes()) : null;
+        //Escalation tries every mode in ordinal order, up to the configured mode.
+        for (PatchMode tier : PatchMode.values()) {
+            if (tier.ordinal() <= options.getMode().ordinal()) {
+                tiers.add(tier);
+            }
+        }
+    }
+
+    /**
+     * Sets a pool to patch files on, shared with other work, instead of creating
+     * one for each {@link #patch()}. The pool is not shut down by this runner.
+     * Only used when the options ask for more than one thread.
+     *
+     * @param pool The pool, null to create one.
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @return The metrics collected by {@link #patch()}.
+     */
+    public ExecutionMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * If the given options can be used to patch a tree with {@link #patch()}.
+     *
+     * @param options The options.
+     * @return If the options are supported.
+     */
+    public static boolean isSupported(PatchOptions options) {
+        if (options.isCheckOnly()) {
+            return InputTree.isSupported(options.getBase()) && InputTree.isSupported(options.getPatches());
+        }
+        return InputTree.isSupported(options.getBase())
+                && InputTree.isSupported(options.getPatches())
+                && OutputTree.isSupported(options.getOutputFormat())
+                && (options.getRejects() == null || OutputTree.isSupported(options.getRejectsFormat()));
+    }
+
+    /**
+     * Applies a patch file to a single file, recording the time taken on the result.
+     * The result is looked up in and added to the persistent result store, if one is configured.
+     *
+     * @param path  The path of the file being patched, relative to the tree root.
+     * @param base  The base file bytes, null if the base file does not exist.
+     * @param patch The patch file bytes.
+     * @return The result.
+     */
+    public FilePatchResult patchFile(String path, byte[] base, byte[] patch) {
+        long start = System.nanoTime();
+        String key = null;
+        if (store != null) {
+            key = store.key(options, base, patch);
+            FilePatchResult stored = store.get(path, key);
+            if (stored != null) {
+                stored.setElapsedNanos(System.nanoTime() - start);
+                return stored;
+            }
+        }
+        PatchFile patchFile = patchCache != null
+                ? patchCache.get(path, patch)
+                : PatchFile.fromLines(path + ".patch", Utils.splitLines(patch), true);
+        FilePatchResult result = patchFile(path, base != null ? Utils.splitLines(base) : null, patchFile);
+        if (store != null) {
+            store.put(key, result);
+        }
+        result.setElapsedNanos(System.nanoTime() - start);
+        return result;
+    }
+
+    /**
+     * Evicts old results from the persistent result store, if one is configured.
+     * Called at the end of {@link #patch()}, callers using {@link #patchFile} directly should call this once done.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void trimStore() throws IOException {
+        if (store != null) {
+            store.trim();
+        }
+    }
+
+    /**
+     * Applies a parsed patch file to a single file.
+     *
+     * @param path      The path of the file being patched, relative to the tree root.
+     * @param baseLines The base file lines, null if the base file does not exist.
+     * @param patchFile The patch file.
+     * @return The result.
+     */
+    public FilePatchResult patchFile(String path, List<String> baseLines, PatchFile patchFile) {
+        if (baseLines == null && !DEV_NULL.equals(patchFile.basePath)) {
+            return new FilePatchResult(path, false, null, Utils.joinLines(patchFile.toLines(false)), new ArrayList<>(), "Missing base file: " + path);
+        }
+        long start = System.nanoTime();
+        boolean budgeted = options.getFileTimeBudget() > 0;
+        List<PatchMode> modes = options.isEscalate() ? tiers : Collections.singletonList(options.getMode());
+        FilePatchResult result = null;
+        for (PatchMode mode : modes) {
+            //Each attempt gets its own copy when the base lines may be needed again, they are shared with the caller.
+            List<String> lines = baseLines == null ? new ArrayList<>() : budgeted || modes.size() > 1 ? new ArrayList<>(baseLines) : baseLines;
+            result = budgeted ? applyPatchBudgeted(path, lines, patchFile, mode, start) : applyPatch(path, lines, patchFile, mode);
+            if (result == null) {
+                return overBudget(path, baseLines, patchFile, mode);
+            }
+            if (result.isSuccess()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Applies a patch on the budget executor, waiting at most for the rest of the file's budget.
+     *
+     * @return The result, null if the budget ran out first.
+     */
+    private FilePatchResult applyPatchBudgeted(String path, List<String> baseLines, PatchFile patchFile, PatchMode mode, long start) {
+        long remaining = options.getFileTimeBudget() * 1000000L - (System.nanoTime() - start);
+        if (remaining <= 0) {
+            return null;
+        }
+        Future<FilePatchResult> future = BUDGET_EXECUTOR.submit(() -> applyPatch(path, baseLines, patchFile, mode));
+        try {
+            return future.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            //Patcher does not check for interrupts, the attempt runs on in the background and its result is dropped.
+            future.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted whilst patching: " + path, e);
+        } catch (ExecutionException e) {
+            codechicken.diffpatch.util.Utils.throwUnchecked(e.getCause());
+            return null;
+        }
+    }
+
+    /**
+     * The result for a file which ran out of time. The base file is output unchanged,
+     * and the whole patch is rejected, headed by the reason.
+     */
+    private FilePatchResult overBudget(String path, List<String> baseLines, PatchFile patchFile, PatchMode mode) {
+        String reason = "Exceeded " + options.getFileTimeBudget() + " ms budget";
+        List<HunkResult> hunks = new ArrayList<>();
+        for (int i = 0; i < patchFile.patches.size(); i++) {
+            hunks.add(new HunkResult(false, null, 0, 0, "Hunk " + (i + 1) + " not applied: " + reason + " in " + mode + " mode."));
+        }
+        List<String> reject = new ArrayList<>();
+        reject.add("# " + reason + ", no hunks applied.");
+        reject.addAll(patchFile.toLines(false));
+        FilePatchResult result = new FilePatchResult(path, false, baseLines, Utils.joinLines(reject), hunks, null);
+        result.setTier(mode);
+        result.setOverBudget(true);
+        return result;
+    }
+
+    private FilePatchResult applyPatch(String path, List<String> baseLines, PatchFile patchFile, PatchMode mode) {
+        Patcher patcher = new Patcher(patchFile.patches, baseLines,
+                options.getEffectiveMinFuzzQuality(),
+                options.getEffectiveMaxFuzzOffset()
+        );
+        patcher.patch(mode);
+
+        List<HunkResult> hunks = new ArrayList<>();
+        List<Patch> failed = new ArrayList<>();
+        for (Patcher.Result result : patcher.getResults()) {
+            if (!result.success) {
+                failed.add(result.patch);
+            }
+            hunks.add(new HunkResult(result.success, result.mode, result.offset, result.fuzzyQuality, result.summary()));
+        }
+        byte[] reject = null;
+        if (!failed.isEmpty()) {
+            PatchFile rejectFile = new PatchFile();
+            rejectFile.basePath = patchFile.basePath;
+            rejectFile.patchedPath = patchFile.patchedPath;
+            rejectFile.patches = failed;
+            reject = Utils.joinLines(rejectFile.toLines(false));
+        }
+        List<String> output = DEV_NULL.equals(patchFile.patchedPath) ? null : patcher.getResultLines();
+        FilePatchResult result = new FilePatchResult(path, failed.isEmpty(), output, reject, hunks, null);
+        result.setTier(mode);
+        return result;
+    }
+
+    /**
+     * Patches the configured base tree into the configured output.
+     *
+     * @return The report.
+     * @throws IOException If an IO error occurs.
+     */
+    public PatchReport patch() throws IOException {
+        long start = System.nanoTime();
+        boolean checkOnly = options.isCheckOnly();
+        File rejects = checkOnly ? null : options.getRejects();
+        int threads = Math.max(1, options.getThreads());
+        int maxPending = threads * 4;
+        //A single file larger than this is still processed, on its own.
+        long maxInFlight = options.getMaxInFlightBytes();
+
+        Counters counters = new Counters();
+        ForkJoinPool pool = threads > 1 ? this.pool != null ? this.pool : new ForkJoinPool(threads) : null;
+        OrderedWorkQueue<FilePatchResult> queue = new OrderedWorkQueue<>(pool, maxPending, maxInFlight, "patch");
+        long readStart = System.nanoTime();
+        try (InputTree baseTree = openInput(options.getBase(), null);
+             InputTree patchTree = openInput(options.getPatches(), options.getPatchesPrefix());
+             OutputTree outputTree = !checkOnly ? OutputTree.open(options.getOutput(), options.getOutputFormat(), options.getCompressionLevel()) : null;
+             OutputTree rejectsTree = rejects != null ? OutputTree.open(rejects, options.getRejectsFormat(), options.getCompressionLevel()) : null) {
+
+            //When checking, files without a patch are not needed at all.
+            SortedSet<String> targets = !checkOnly ? new TreeSet<>(baseTree.getPaths()) : new TreeSet<>();
+            for (String path : patchTree.getPaths()) {
+                if (path.endsWith(".patch")) {
+                    targets.add(path.substring(0, path.length() - 6));
+                }
+            }
+            metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+
+            for (String path : targets) {
+                if (queue.isStopped()) {
+                    break;
+                }
+                readStart = System.nanoTime();
+                byte[] patch = patchTree.read(path + ".patch");
+                //Files without a patch are copied straight from the base tree when completed.
+                byte[] base = patch != null ? baseTree.read(path) : null;
+                metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+                long size = (base != null ? base.length : 0) + (patch != null ? patch.length : 0);
+                queue.submit(path, size, patch != null ? () -> patchFile(path, base, patch) : null,
+                        result -> complete(path, size, result, queue, counters, baseTree, outputTree, rejectsTree));
+                counters.bytesRead += size;
+                metrics.updateInFlight(queue.getInFlightBytes());
+            }
+            queue.drain();
+            //A failing run leaves the output from the last good run in place.
+            if (outputTree != null && (counters.failed == 0 || !options.isFailOnError())) {
+                outputTree.finish();
+            }
+            //Rejects always describe this run, so they are never left stale.
+            if (rejectsTree != null) {
+                rejectsTree.finish();
+            }
+        } finally {
+            if (pool != null && pool != this.pool) {
+                pool.shutdownNow();
+            }
+        }
+
+        trimStore();
+
+        PatchReport report = new PatchReport(counters.reports, counters.copied, counters.bytesRead, counters.bytesWritten, System.nanoTime() - start);
+        metrics.addElapsed(report.getElapsedNanos());
+        report.setMetrics(metrics);
+        if (options.isPrintSummary() && checkOnly) {
+            log.accept("Checked " + report.getFiles().size() + " files with " + threads + " threads, " + report.getFailed() + " failed" + (queue.isStopped() ? ", stopped at first failure." : "."));
+        } else if (options.isPrintSummary()) {
+            log.accept("Patched " + report.getFiles().size() + " files with " + threads + " threads, " + report.getFailed() + " failed.");
+        }
+        if (options.isPrintSummary() && store != null) {
+            log.accept("Result store: " + store.getHits() + " hits, " + store.getMisses() + " misses.");
+        }
+        if (options.isPrintSummary() && options.getSlowestFiles() > 0 && !report.getFiles().isEmpty()) {
+            logSlowest(report);
+        }
+        return report;
+    }
+
+    private void logSlowest(PatchReport report) {
+        List<PatchReport.FileReport> files = new ArrayList<>(report.getFiles());
+        files.sort(Comparator.comparingLong(PatchReport.FileReport::getElapsedNanos).reversed());
+        log.accept("Slowest files:");
+        for (PatchReport.FileReport file : files.subList(0, Math.min(files.size(), options.getSlowestFiles()))) {
+            StringBuilder line = new StringBuilder("  ").append(file.getElapsedNanos() / 1000000).append("ms ").append(file.getPath());
+            if (file.getTier() != null) {
+                line.append(" (").append(file.getTier()).append(")");
+            }
+            if (file.isOverBudget()) {
+                line.append(", over budget");
+            }
+            log.accept(line.toString());
+        }
+    }
+
+    private InputTree openInput(File file, String prefix) throws IOException {
+        return zipCache != null ? zipCache.open(file, prefix) : InputTree.open(file, prefix);
+    }
+
+    private void complete(String path, long size, FilePatchResult result, OrderedWorkQueue<?> queue, Counters counters, InputTree baseTree, OutputTree outputTree, OutputTree rejectsTree) throws IOException {
+        metrics.updateHeap();
+        if (result == null) {
+            long writeStart = System.nanoTime();
+            long copied = outputTree.copy(baseTree, path);
+            metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+            metrics.addFile(0, copied);
+            counters.copied++;
+            counters.bytesWritten += copied;
+            return;
+        }
+        metrics.addTime(ExecutionMetrics.Phase.PROCESS, result.getElapsedNanos());
+        metrics.addHunks(result.getHunks());
+        if (outputTree == null) {
+            counters.reports.add(PatchReport.FileReport.of(result, size, 0));
+            metrics.addFile(size, 0);
+            if (options.isVerbose() || !result.isSuccess()) {
+                log.accept((result.isSuccess() ? "Checked: " : "Failed: ") + path);
+                for (String line : result.getLog()) {
+                    log.accept("  " + line);
+                }
+            }
+            if (!result.isSuccess() && options.isFailOnError()) {
+                queue.stop();
+            }
+            return;
+        }
+        counters.reports.add(PatchReport.FileReport.of(result, size));
+        if (!result.isSuccess()) {
+            counters.failed++;
+        }
+        counters.bytesWritten += result.getBytesWritten();
+        metrics.addFile(size, result.getBytesWritten());
+
+        long writeStart = System.nanoTime();
+        byte[] output = result.getOutput();
+        if (output != null) {
+            outputTree.write(path, output);
+        }
+        if (rejectsTree != null && result.getReject() != null) {
+            rejectsTree.write(path + ".patch.rej", result.getReject());
+        }
+        metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+        if (options.isVerbose() || !result.isSuccess()) {
+            log.accept((result.isSuccess() ? "Patched: " : "Failed: ") + path);
+            for (String line : result.getLog()) {
+                log.accept("  " + line);
+            }
+        }
+    }
+
+    private static class Counters {
+
+        private final List<PatchReport.FileReport> reports = new ArrayList<>();
+        private long bytesRead;
+        private long bytesWritten;
+        private int copied;
+        private int failed;
+    }
+}
@@ -0,0 +1,321 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchMode;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * A persistent, content addressed store of patch results, which may be shared
+ * between builds, worktrees and Gradle daemons.
+ * <p>
+ * Results are keyed by the hash of the base file, the patch file, and each option
+ * affecting the result, and stored one file per key. Entries are written to a
+ * temporary file and atomically moved into place, so readers only ever see complete
+ * entries, and writers racing on the same key write the same content. Entries which
+ * can't be read are treated as misses.
+ * <p>
+ * Reading an entry updates its modification time, {@link #trim()} evicts the least
+ * recently used entries once the store exceeds its maximum size. Trimming holds a
+ * lock on the store, so only one process trims at a time.
+ * <p>
+ * Thread safe.
+ */
+public class ResultStore {
+
+    private static final int VERSION = 1;
+    private static final String LOCK_FILE = "trim.lock";
+    /**
+     * Temporary files older than this were left by a writer which died, and are deleted when trimming.
+     */
+    private static final long STALE_TMP_MILLIS = 60 * 60 * 1000;
+
+    private final Path root;
+    private final long maxBytes;
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger misses = new AtomicInteger();
+
+    /**
+     * @param root     The directory of the store.
+     * @param maxBytes The maximum size of the store, enforced by {@link #trim()}.
+     */
+    public ResultStore(File root, long maxBytes) {
+        this.root = root.toPath();
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Computes the key for patching the given base with the given patch.
+     *
+     * @param options The options, for the settings which affect the result.
+     * @param base    The base file bytes, null if the base file does not exist.
+     * @param patch   The patch file bytes.
+     * @return The key.
+     */
+    public String key(PatchOptions options, byte[] base, byte[] patch) {
+        String settings = VERSION
+                + ":" + options.getMode()
+                + ":" + options.isEscalate()
+                + ":" + options.getEffectiveMinFuzzQuality()
+                + ":" + options.getEffectiveMaxFuzzOffset();
+        return Utils.hash(settings.getBytes(StandardCharsets.UTF_8), base, patch);
+    }
+
+    /**
+     * Gets a stored result.
+     *
+     * @param path The path of the file being patched, relative to the tree root.
+     * @param key  The key, from {@link #key}.
+     * @return The result, or null if it is not stored.
+     */
+    public FilePatchResult get(String path, String key) {
+        Path file = resolve(key);
+        byte[] bytes;
+        try {
+            bytes = Files.readAllBytes(file);
+        } catch (IOException e) {
+            misses.incrementAndGet();
+            return null;
+        }
+        FilePatchResult result;
+        try {
+            result = read(path, new DataInputStream(new ByteArrayInputStream(bytes)));
+        } catch (IOException | IllegalArgumentException e) {
+            result = null;
+        }
+        if (result == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException ignored) {
+            //Evicted by another process since it was read.
+        }
+        return result;
+    }
+
+    /**
+     * Stores a result. Results with an error, such as a missing base file, are not stored.
+     * Nor are results abandoned over the time budget, which depend on machine load.
+     *
+     * @param key    The key, from {@link #key}.
+     * @param result The result.
+     */
+    public void put(String key, FilePatchResult result) {
+        if (result.getError() != null || result.isOverBudget()) {
+            return;
+        }
+        Path file = resolve(key);
+        Path tmp = file.resolveSibling(key + "." + UUID.randomUUID() + ".tmp");
+        try {
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            write(result, new DataOutputStream(bos));
+            Files.createDirectories(file.getParent());
+            Files.write(tmp, bos.toByteArray());
+            try {
+                Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (IOException e) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+            }
+            codechicken.diffpatch.util.Utils.throwUnchecked(e);
+        }
+    }
+
+    /**
+     * Evicts the least recently used entries until the store is below its maximum size.
+     * Does nothing if another process or thread is already trimming.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    public void trim() throws IOException {
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(root.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            FileLock lock;
+            try {
+                lock = channel.tryLock();
+            } catch (OverlappingFileLockException e) {
+                return;
+            }
+            if (lock == null) {
+                return;
+            }
+            try {
+                trimLocked();
+            } finally {
+                lock.release();
+            }
+        }
+    }
+
+    private void trimLocked() throws IOException {
+        long now = System.currentTimeMillis();
+        List<Entry> entries = new ArrayList<>();
+        long total = 0;
+        try (Stream<Path> stream = Files.walk(root, 2)) {
+            for (Path path : (Iterable<Path>) stream::iterator) {
+                //Entries are only stored in the shard directories, skips the lock file.
+                if (path.equals(root) || path.getParent().equals(root)) {
+                    continue;
+                }
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    continue;
+                }
+                if (!attrs.isRegularFile()) {
+                    continue;
+                }
+                long lastModified = attrs.lastModifiedTime().toMillis();
+                if (path.getFileName().toString().endsWith(".tmp")) {
+                    if (now - lastModified > STALE_TMP_MILLIS) {
+                        Files.deleteIfExists(path);
+                    }
+                    continue;
+                }
+                entries.add(new Entry(path, attrs.size(), lastModified));
+                total += attrs.size();
+            }
+        }
+        if (total <= maxBytes) {
+            return;
+        }
+        //Trim below the maximum, so the next few runs don't each need to trim again.
+        long target = maxBytes - maxBytes / 10;
+        entries.sort(Comparator.comparingLong(e -> e.lastModified));
+        for (Entry entry : entries) {
+            if (total <= target) {
+                break;
+            }
+            Files.deleteIfExists(entry.path);
+            total -= entry.size;
+        }
+    }
+
+    private Path resolve(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static void write(FilePatchResult result, DataOutputStream out) throws IOException {
+        out.writeInt(VERSION);
+        out.writeBoolean(result.isSuccess());
+        writeMode(out, result.getTier());
+        out.writeInt(result.getHunks().size());
+        for (HunkResult hunk : result.getHunks()) {
+            out.writeBoolean(hunk.isSuccess());
+            writeMode(out, hunk.getMode());
+            out.writeInt(hunk.getOffset());
+            out.writeFloat(hunk.getFuzzyQuality());
+            writeBytes(out, hunk.getSummary() != null ? hunk.getSummary().getBytes(StandardCharsets.UTF_8) : null);
+        }
+        writeBytes(out, result.getOutput());
+        writeBytes(out, result.getReject());
+        out.flush();
+    }
+
+    private static FilePatchResult read(String path, DataInputStream in) throws IOException {
+        if (in.readInt() != VERSION) {
+            return null;
+        }
+        boolean success = in.readBoolean();
+        PatchMode tier = readMode(in);
+        int count = in.readInt();
+        List<HunkResult> hunks = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            boolean hunkSuccess = in.readBoolean();
+            PatchMode mode = readMode(in);
+            int offset = in.readInt();
+            float fuzzyQuality = in.readFloat();
+            byte[] summary = readBytes(in);
+            hunks.add(new HunkResult(hunkSuccess, mode, offset, fuzzyQuality, summary != null ? new String(summary, StandardCharsets.UTF_8) : null));
+        }
+        byte[] output = readBytes(in);
+        byte[] reject = readBytes(in);
+        FilePatchResult result = new FilePatchResult(path, success, output, reject, hunks);
+        result.setTier(tier);
+        return result;
+    }
+
+    private static void writeMode(DataOutputStream out, PatchMode mode) throws IOException {
+        out.writeUTF(mode != null ? mode.name() : "");
+    }
+
+    private static PatchMode readMode(DataInputStream in) throws IOException {
+        String name = in.readUTF();
+        return name.isEmpty() ? null : PatchMode.valueOf(name);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        if (bytes == null) {
+            out.writeInt(-1);
+        } else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int len = in.readInt();
+        if (len == -1) {
+            return null;
+        }
+        if (len < 0 || len > in.available()) {
+            throw new IOException("Truncated entry.");
+        }
+        byte[] bytes = new byte[len];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    //@formatter:off
+    /** @return The number of results found in the store. */
+    public int getHits() { return hits.get(); }
+    /** @return The number of results not found in the store. */
+    public int getMisses() { return misses.get(); }
+    //@formatter:on
+
+    private static class Entry {
+
+        private final Path path;
+        private final long size;
+        private final long lastModified;
+
+        private Entry(Path path, long size, long lastModified) {
+            this.path = path;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+    }
+}
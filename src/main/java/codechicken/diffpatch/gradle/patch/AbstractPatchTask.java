@@ -0,0 +1,230 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.engine.PatchFileCache;
+import codechicken.diffpatch.gradle.service.MetricsService;
+import codechicken.diffpatch.gradle.service.PatchCacheService;
+import codechicken.diffpatch.gradle.service.ZipCacheService;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.WorkerIsolation;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Console;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+import org.gradle.workers.WorkerExecutor;
+
+import javax.inject.Inject;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * Base for Task implementations of {@link PatchAction} which declare
+ * their inputs and outputs to Gradle.
+ * <p>
+ * The output and rejects paths are exposed as either an output directory
+ * or an output file, depending on if an {@link ArchiveFormat} is set for them.
+ * In {@link #isCheckOnly() check only} mode, neither are declared as outputs.
+ */
+public abstract class AbstractPatchTask extends DefaultTask implements PatchSpec {
+
+    protected final PatchProperties spec;
+    private Object isolation;
+    private final ConfigurableFileCollection baseFiles;
+    private final ConfigurableFileCollection patchFiles;
+    private final Provider<MetricsService> metricsService;
+    private final Provider<PatchCacheService> patchCacheService;
+    private final Provider<ZipCacheService> zipCacheService;
+
+    public AbstractPatchTask() {
+        spec = new PatchProperties(getProject());
+        metricsService = MetricsService.register(getProject());
+        patchCacheService = PatchCacheService.register(getProject());
+        zipCacheService = ZipCacheService.register(getProject());
+        baseFiles = getProject().files((Callable<Object>) () -> spec.getBaseProvider().isPresent() ? spec.getBaseProvider() : null);
+        patchFiles = getProject().files((Callable<Object>) () -> spec.getPatchesProvider().isPresent() ? spec.getPatchesProvider() : null);
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getBaseFiles() {
+        return baseFiles;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getPatchFiles() {
+        return patchFiles;
+    }
+
+    @Optional
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return !isCheckOnly() && getOutputFormat() == null ? getOutput() : null;
+    }
+
+    @Optional
+    @OutputFile
+    public File getOutputArchive() {
+        return !isCheckOnly() && getOutputFormat() != null ? getOutput() : null;
+    }
+
+    @Optional
+    @OutputDirectory
+    public File getRejectsDirectory() {
+        return !isCheckOnly() && getRejects() != null && getRejectsFormat() == null ? getRejects() : null;
+    }
+
+    @Optional
+    @OutputFile
+    public File getRejectsArchive() {
+        return !isCheckOnly() && getRejects() != null && getRejectsFormat() != null ? getRejects() : null;
+    }
+
+    /**
+     * Sets the isolation mode to execute this task with Gradle's worker API.
+     * When unset (default), the PatchAction runs directly on the task thread.
+     * May be a {@link WorkerIsolation} or a string
+     * representing one of its values. Metrics and the shared caches are
+     * only available without isolation, see {@link PatchWorkAction}.
+     *
+     * @param isolation The isolation.
+     */
+    public void setIsolation(Object isolation) {
+        this.isolation = isolation;
+    }
+
+    public void isolation(Object isolation) {
+        setIsolation(isolation);
+    }
+
+    /**
+     * @return The worker isolation mode, or null if the worker API is not used.
+     */
+    @Internal
+    public WorkerIsolation getIsolation() {
+        return isolation != null ? Utils.resolveWorkerIsolation(isolation) : null;
+    }
+
+    @Inject
+    protected WorkerExecutor getWorkerExecutor() {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Executes the action, either directly or through the worker API.
+     */
+    protected void execute() {
+        WorkerIsolation isolation = getIsolation();
+        if (isolation != null) {
+            PatchWorkAction.submit(getWorkerExecutor(), isolation, this, getPath(), metricsService, patchCacheService, zipCacheService);
+        } else {
+            recordMetrics(createAction().execute().getMetrics());
+        }
+    }
+
+    /**
+     * Creates the {@link PatchAction} to execute from this task's current values,
+     * using the build's shared caches.
+     *
+     * @return The action.
+     */
+    protected PatchAction createAction() {
+        PatchAction action = spec.toAction(getLogger());
+        action.setPatchCache(getPatchCache());
+        action.setZipCache(getZipCache());
+        return action;
+    }
+
+    /**
+     * @return The build's shared cache of parsed patch files.
+     */
+    @Internal
+    protected PatchFileCache getPatchCache() {
+        return patchCacheService.get().getCache();
+    }
+
+    /**
+     * @return The build's shared cache of zip input indexes.
+     */
+    @Internal
+    protected ZipIndexCache getZipCache() {
+        return zipCacheService.get().getCache();
+    }
+
+    /**
+     * Records metrics for this task with the build's {@link MetricsService}.
+     *
+     * @param metrics The metrics.
+     */
+    protected void recordMetrics(ExecutionMetrics metrics) {
+        metricsService.get().record(getPath(), "patch", metrics);
+    }
+
+    //@formatter:off
+    @Internal @Override public File getBase() { return spec.getBase(); }
+    @Internal @Override public File getPatches() { return spec.getPatches(); }
+    @Internal @Override public File getOutput() { return spec.getOutput(); }
+    @Internal @Override public File getRejects() { return spec.getRejects(); }
+    @Optional @Input @Override public ArchiveFormat getOutputFormat() { return spec.getOutputFormat(); }
+    @Optional @Input @Override public ArchiveFormat getRejectsFormat() { return spec.getRejectsFormat(); }
+    @Input @Override public float getMinFuzzQuality() { return spec.getMinFuzzQuality(); }
+    @Input @Override public int getMaxFuzzOffset() { return spec.getMaxFuzzOffset(); }
+    @Input @Override public PatchMode getPatchMode() { return spec.getPatchMode(); }
+    @Optional @Input @Override public String getPatchesPrefix() { return spec.getPatchesPrefix(); }
+    @Console @Override public boolean isVerbose() { return spec.isVerbose(); }
+    @Console @Override public boolean isPrintSummary() { return spec.isPrintSummary(); }
+    @Input @Override public boolean isFailOnError() { return spec.isFailOnError(); }
+    @Internal @Override public int getThreads() { return spec.getThreads(); }
+    @Internal @Override public File getLogFile() { return spec.getLogFile(); }
+    @Console @Override public boolean isLifecycleLogging() { return spec.isLifecycleLogging(); }
+    @Console @Override public boolean isAsyncLogging() { return spec.isAsyncLogging(); }
+    @Optional @OutputFile @Override public File getReportFile() { return spec.getReportFile(); }
+    @Input @Override public int getCompressionLevel() { return spec.getCompressionLevel(); }
+    @Input @Override public boolean isCheckOnly() { return spec.isCheckOnly(); }
+    @Input @Override public boolean isEscalate() { return spec.isEscalate(); }
+    @Input @Override public int getFileTimeBudget() { return spec.getFileTimeBudget(); }
+    @Console @Override public int getSlowestFiles() { return spec.getSlowestFiles(); }
+    @Internal @Override public File getResultStore() { return spec.getResultStore(); }
+    @Internal @Override public int getResultStoreSize() { return spec.getResultStoreSize(); }
+    @Internal @Override public int getMaxInFlight() { return spec.getMaxInFlight(); }
+    @Override public void setBase(Object base) { spec.setBase(base); }
+    @Override public void setPatches(Object patches) { spec.setPatches(patches); }
+    @Override public void setOutput(Object output) { spec.setOutput(output); }
+    @Override public void setRejects(Object rejects) { spec.setRejects(rejects); }
+    @Override public void setOutputFormat(Object outputFormat) { spec.setOutputFormat(outputFormat); }
+    @Override public void setRejectsFormat(Object rejectsFormat) { spec.setRejectsFormat(rejectsFormat); }
+    @Override public void setMinFuzzQuality(float fuzz) { spec.setMinFuzzQuality(fuzz); }
+    @Override public void setMaxFuzzOffset(int maxFuzzOffset) { spec.setMaxFuzzOffset(maxFuzzOffset); }
+    @Override public void setPatchMode(Object patchMode) { spec.setPatchMode(patchMode); }
+    @Override public void setPatchesPrefix(String prefix) { spec.setPatchesPrefix(prefix); }
+    @Override public void setVerbose(boolean verbose) { spec.setVerbose(verbose); }
+    @Override public void setPrintSummary(boolean printSummary) { spec.setPrintSummary(printSummary); }
+    @Override public void setFailOnError(boolean failOnError) { spec.setFailOnError(failOnError); }
+    @Override public void setThreads(int threads) { spec.setThreads(threads); }
+    @Override public void setLogFile(Object logFile) { spec.setLogFile(logFile); }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { spec.setLifecycleLogging(lifecycleLogging); }
+    @Override public void setAsyncLogging(boolean asyncLogging) { spec.setAsyncLogging(asyncLogging); }
+    @Override public void setReportFile(Object reportFile) { spec.setReportFile(reportFile); }
+    @Override public void setCompressionLevel(int compressionLevel) { spec.setCompressionLevel(compressionLevel); }
+    @Override public void setCheckOnly(boolean checkOnly) { spec.setCheckOnly(checkOnly); }
+    @Override public void setEscalate(boolean escalate) { spec.setEscalate(escalate); }
+    @Override public void setFileTimeBudget(int fileTimeBudget) { spec.setFileTimeBudget(fileTimeBudget); }
+    @Override public void setSlowestFiles(int slowestFiles) { spec.setSlowestFiles(slowestFiles); }
+    @Override public void setResultStore(Object resultStore) { spec.setResultStore(resultStore); }
+    @Override public void setResultStoreSize(int resultStoreSize) { spec.setResultStoreSize(resultStoreSize); }
+    @Override public void setMaxInFlight(int maxInFlight) { spec.setMaxInFlight(maxInFlight); }
+    //@formatter:on
+}
@@ -0,0 +1,20 @@
+package codechicken.diffpatch.gradle.patch;
+
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.TaskAction;
+
+/**
+ * Task implementation of {@link PatchAction} with its inputs and outputs
+ * declared, allowing it to be up-to-date checked and stored in the build cache.
+ * <p>
+ * Inputs use relative path sensitivity, so the cached outputs
+ * are shareable between checkouts in different locations.
+ */
+@CacheableTask
+public class CacheablePatchTask extends AbstractPatchTask {
+
+    @TaskAction
+    public void doTask() throws Exception {
+        execute();
+    }
+}
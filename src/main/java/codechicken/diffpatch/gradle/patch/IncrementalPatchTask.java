@@ -0,0 +1,328 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.engine.FilePatchResult;
+import codechicken.diffpatch.gradle.engine.OrderedWorkQueue;
+import codechicken.diffpatch.gradle.engine.PatchOptions;
+import codechicken.diffpatch.gradle.engine.PatchReport;
+import codechicken.diffpatch.gradle.engine.PatchRunner;
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.LogSink;
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.file.FileType;
+import org.gradle.api.tasks.CacheableTask;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.TaskAction;
+import org.gradle.work.FileChange;
+import org.gradle.work.Incremental;
+import org.gradle.work.InputChanges;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * An incremental Task implementation of {@link PatchAction}.
+ * <p>
+ * When the base and patches are directories or zips, and the output and rejects
+ * are directories, only files whose base file or patch changed since the last execution
+ * are re-patched. Everything else in the output is left untouched, and outputs for removed
+ * patches are reverted back to their base file. Changed files are patched on the configured
+ * threads through an {@link OrderedWorkQueue}, capped by maxInFlight as a full execution is.
+ * <p>
+ * A manifest of base and patch hashes is kept alongside the task, so touching a file
+ * without changing its content does not cause it to be re-patched. Full executions
+ * don't hash their inputs, files from a full execution are hashed when they next change.
+ * <p>
+ * Full executions, and any other configuration, run a full {@link PatchAction}.
+ */
+@CacheableTask
+public class IncrementalPatchTask extends AbstractPatchTask {
+
+    private final File projectDir = getProject().getProjectDir();
+
+    @TaskAction
+    public void doTask(InputChanges inputChanges) throws IOException {
+        if (isCheckOnly()) {
+            //Nothing is written, so there is no previous output to update.
+            recordMetrics(createAction().execute().getMetrics());
+            return;
+        }
+        File base = getBase();
+        File patches = getPatches();
+        File output = getOutput();
+        File rejects = getRejects();
+        if (base == null) {
+            throw new IllegalStateException("Base path not specified.");
+        }
+        if (patches == null) {
+            throw new IllegalStateException("Patches path not specified.");
+        }
+        if (output == null) {
+            throw new IllegalStateException("Output path not specified.");
+        }
+        File manifestFile = getManifest();
+        boolean supported = getOutputFormat() == null
+                && (rejects == null || getRejectsFormat() == null)
+                && InputTree.isSupported(base)
+                && InputTree.isSupported(patches);
+        if (!supported) {
+            getLogger().info("Incremental patching not supported for this configuration, running full patch.");
+            Utils.deleteFile(manifestFile.getParentFile(), manifestFile);
+            recordMetrics(createAction().execute().getMetrics());
+            return;
+        }
+
+        String key = "mode=" + getPatchMode()
+                + ";fuzz=" + getMinFuzzQuality()
+                + ";offset=" + getMaxFuzzOffset()
+                + ";prefix=" + getPatchesPrefix()
+                + ";base=" + relative(base)
+                + ";patches=" + relative(patches)
+                + ";output=" + relative(output)
+                + ";rejects=" + relative(rejects);
+
+        PatchManifest manifest = inputChanges.isIncremental() ? PatchManifest.load(manifestFile, key) : null;
+        Set<String> dirty = null;
+        if (manifest != null) {
+            dirty = new TreeSet<>();
+            if (!collectChanges(inputChanges, getBaseFiles(), base, null, false, dirty)
+                    || !collectChanges(inputChanges, getPatchFiles(), patches, getPatchesPrefix(), true, dirty)) {
+                manifest = null;
+            }
+        }
+        PatchAction action = createAction();
+        if (manifest == null) {
+            getLogger().info("Running full patch.");
+            patchFull(action, manifestFile, key);
+        } else {
+            patchIncremental(action, dirty, manifest, manifestFile);
+        }
+    }
+
+    /**
+     * Patches every file with the action, and records the patched files in a new manifest.
+     */
+    private void patchFull(PatchAction action, File manifestFile, String key) throws IOException {
+        //Removed first, so an interrupted execution is never mistaken for a complete one.
+        Utils.deleteFile(manifestFile.getParentFile(), manifestFile);
+        PatchReport report = action.run();
+        recordMetrics(report.getMetrics());
+        boolean failed = report.getExitCode() != 0 && isFailOnError();
+        //A failing execution leaves stale outputs in place, so the next execution must be a full one.
+        if (report.isDetailed() && !failed) {
+            PatchManifest manifest = new PatchManifest(key);
+            for (PatchReport.FileReport file : report.getFiles()) {
+                manifest.put(file.getPath(), PatchManifest.Entry.unhashed(file.isSuccess()));
+            }
+            manifest.save(manifestFile);
+        }
+        if (failed) {
+            throw new RuntimeException("Patches failed to apply.");
+        }
+    }
+
+    /**
+     * Re-patches the given files on the action's threads, updating the manifest.
+     */
+    private void patchIncremental(PatchAction action, Set<String> dirty, PatchManifest manifest, File manifestFile) throws IOException {
+        ExecutionMetrics metrics = new ExecutionMetrics();
+        long start = System.nanoTime();
+        PatchOptions options = action.toOptions();
+        File output = options.getOutput();
+        File rejects = options.getRejects();
+        int threads = Math.max(1, options.getThreads());
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        OrderedWorkQueue<FilePatchResult> queue = new OrderedWorkQueue<>(pool, threads * 4, options.getMaxInFlightBytes(), "patch");
+        List<PatchReport.FileReport> reports = new ArrayList<>();
+        int processed = 0;
+        ZipIndexCache zipCache = getZipCache();
+        try (LogSink sink = action.createLogSink();
+             InputTree baseTree = zipCache.open(options.getBase(), null);
+             InputTree patchTree = zipCache.open(options.getPatches(), options.getPatchesPrefix())) {
+            PatchRunner runner = new PatchRunner(options, sink, getPatchCache(), zipCache);
+            for (String path : dirty) {
+                long readStart = System.nanoTime();
+                byte[] baseBytes = baseTree.read(path);
+                byte[] patchBytes = patchTree.read(path + ".patch");
+                metrics.addTime(ExecutionMetrics.Phase.READ, System.nanoTime() - readStart);
+                String baseHash = Utils.hash(baseBytes);
+                String patchHash = Utils.hash(patchBytes);
+                PatchManifest.Entry prev = manifest.get(path);
+                if (prev != null && prev.matches(baseHash, patchHash)) {
+                    continue;
+                }
+                processed++;
+                File rejectFile = rejects != null ? new File(rejects, path + ".patch.rej") : null;
+                if (rejectFile != null) {
+                    Utils.deleteFile(rejects, rejectFile);
+                }
+                long size = (baseBytes != null ? baseBytes.length : 0) + (patchBytes != null ? patchBytes.length : 0);
+                if (patchBytes == null) {
+                    queue.submit(path, size, null, result -> revert(path, baseBytes, baseHash, output, manifest, metrics, sink));
+                } else {
+                    queue.submit(path, size, () -> runner.patchFile(path, baseBytes, patchBytes),
+                            result -> complete(path, size, baseHash, patchHash, result, output, rejects, manifest, reports, metrics, sink));
+                }
+                metrics.updateInFlight(queue.getInFlightBytes());
+            }
+            queue.drain();
+            runner.trimStore();
+            manifest.save(manifestFile);
+            metrics.addElapsed(System.nanoTime() - start);
+            recordMetrics(metrics);
+
+            File reportFile = getReportFile();
+            if (reportFile != null) {
+                long bytesRead = 0;
+                long bytesWritten = 0;
+                for (PatchReport.FileReport report : reports) {
+                    bytesRead += report.getBytesRead();
+                    bytesWritten += report.getBytesWritten();
+                }
+                PatchReport report = new PatchReport(reports, processed - reports.size(), bytesRead, bytesWritten, metrics.getElapsedNanos());
+                report.setMetrics(metrics);
+                report.write(reportFile);
+            }
+
+            int failed = manifest.getFailedCount();
+            if (options.isPrintSummary()) {
+                sink.accept("Patched " + processed + " of " + dirty.size() + " changed files with " + threads + " threads, " + failed + " files failing.");
+            }
+            if (failed != 0 && options.isFailOnError()) {
+                throw new RuntimeException("Patches failed to apply.");
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Collects the target paths affected by changes to the given input.
+     *
+     * @return false if the input is an archive that has changed, requiring a full patch.
+     */
+    private boolean collectChanges(InputChanges inputChanges, FileCollection files, File root, String prefix, boolean isPatches, Set<String> dirty) {
+        String strip = prefix == null || prefix.isEmpty() ? "" : prefix.endsWith("/") ? prefix : prefix + "/";
+        for (FileChange change : inputChanges.getFileChanges(files)) {
+            if (change.getFileType() == FileType.DIRECTORY) {
+                continue;
+            }
+            if (!root.isDirectory() || change.getFile().equals(root)) {
+                return false;
+            }
+            String path = change.getNormalizedPath().replace(File.separatorChar, '/');
+            if (!path.startsWith(strip)) {
+                continue;
+            }
+            path = path.substring(strip.length());
+            if (isPatches) {
+                if (!path.endsWith(".patch")) {
+                    continue;
+                }
+                path = path.substring(0, path.length() - 6);
+            }
+            dirty.add(path);
+        }
+        return true;
+    }
+
+    /**
+     * Reverts the output for a file without a patch back to its base file, or removes it.
+     */
+    private void revert(String path, byte[] baseBytes, String baseHash, File output, PatchManifest manifest, ExecutionMetrics metrics, Consumer<String> log) throws IOException {
+        File outFile = new File(output, path);
+        if (baseBytes == null) {
+            Utils.deleteFile(output, outFile);
+            manifest.remove(path);
+            if (isVerbose()) {
+                log.accept("Removed: " + path);
+            }
+            return;
+        }
+        long writeStart = System.nanoTime();
+        Utils.writeFile(outFile, baseBytes);
+        metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+        metrics.addFile(baseBytes.length, baseBytes.length);
+        manifest.put(path, new PatchManifest.Entry(baseHash, null, true));
+        if (isVerbose()) {
+            log.accept("Copied: " + path);
+        }
+    }
+
+    /**
+     * Writes a patched file's output and reject, and records it in the manifest.
+     * Files are completed in order, on the task's thread.
+     */
+    private void complete(String path, long size, String baseHash, String patchHash, FilePatchResult result, File output, File rejects, PatchManifest manifest, List<PatchReport.FileReport> reports, ExecutionMetrics metrics, Consumer<String> log) throws IOException {
+        metrics.addTime(ExecutionMetrics.Phase.PROCESS, result.getElapsedNanos());
+
+        long writeStart = System.nanoTime();
+        File outFile = new File(output, path);
+        if (result.getOutput() != null) {
+            Utils.writeFile(outFile, result.getOutput());
+        } else {
+            Utils.deleteFile(output, outFile);
+        }
+        if (rejects != null && result.getReject() != null) {
+            Utils.writeFile(new File(rejects, path + ".patch.rej"), result.getReject());
+        }
+        metrics.addTime(ExecutionMetrics.Phase.WRITE, System.nanoTime() - writeStart);
+
+        metrics.addFile(size, result.getBytesWritten());
+        metrics.addHunks(result.getHunks());
+        manifest.put(path, new PatchManifest.Entry(baseHash, patchHash, result.isSuccess()));
+        reports.add(PatchReport.FileReport.of(result, size));
+        if (isVerbose() || !result.isSuccess()) {
+            log.accept((result.isSuccess() ? "Patched: " : "Failed: ") + path);
+            for (String line : result.getLog()) {
+                log.accept("  " + line);
+            }
+        }
+    }
+
+    @Incremental
+    @Override
+    public FileCollection getBaseFiles() {
+        return super.getBaseFiles();
+    }
+
+    @Incremental
+    @Override
+    public FileCollection getPatchFiles() {
+        return super.getPatchFiles();
+    }
+
+    /**
+     * Gets a path relative to the project directory, for the manifest key,
+     * so a moved or copied project keeps its manifest.
+     */
+    private String relative(File file) {
+        if (file == null) {
+            return null;
+        }
+        try {
+            return projectDir.toPath().relativize(file.getAbsoluteFile().toPath()).toString().replace(File.separatorChar, '/');
+        } catch (IllegalArgumentException e) {
+            //On a different root to the project.
+            return file.getAbsolutePath();
+        }
+    }
+
+    /**
+     * @return The file the patch manifest is stored in.
+     */
+    @OutputFile
+    public File getManifest() {
+        return new File(getTemporaryDir(), "patch-manifest.tsv");
+    }
+}
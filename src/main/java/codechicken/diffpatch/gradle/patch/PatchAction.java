@@ -1,21 +1,32 @@
 package codechicken.diffpatch.gradle.patch;
 
 import codechicken.diffpatch.DiffPatch;
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.engine.PatchFileCache;
+import codechicken.diffpatch.gradle.engine.PatchOptions;
+import codechicken.diffpatch.gradle.engine.PatchReport;
+import codechicken.diffpatch.gradle.engine.PatchRunner;
 import codechicken.diffpatch.gradle.util.ConsumingOutputStream;
+import codechicken.diffpatch.gradle.util.LogSink;
 import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
 import codechicken.diffpatch.util.PatchMode;
 import codechicken.diffpatch.util.archiver.ArchiveFormat;
-import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.PrintStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 /**
  * Executes a Patch operation with DiffPatch.
+ * <p>
+ * Directories and zips are patched in-process by a {@link PatchRunner},
+ * other archive formats are passed to DiffPatch's command line entry point.
  *
  * @see PatchSpec
  * Created by covers1624 on 14/8/20.
@@ -24,7 +35,25 @@ public class PatchAction implements PatchSpec {
 
     private final boolean DEBUG = Boolean.getBoolean("codechicken.diffpatch.gradle.debug");
 
-    private final Project project;
+    //Defaults, shared with PatchProperties.
+    static final float DEFAULT_MIN_FUZZ_QUALITY = -1;
+    static final int DEFAULT_MAX_FUZZ_OFFSET = -1;
+    static final PatchMode DEFAULT_PATCH_MODE = PatchMode.EXACT;
+    static final boolean DEFAULT_VERBOSE = false;
+    static final boolean DEFAULT_PRINT_SUMMARY = true;
+    static final boolean DEFAULT_FAIL_ON_ERROR = true;
+    static final int DEFAULT_THREADS = 1;
+    static final boolean DEFAULT_LIFECYCLE_LOGGING = true;
+    static final boolean DEFAULT_ASYNC_LOGGING = false;
+    static final int DEFAULT_COMPRESSION_LEVEL = -1;
+    static final boolean DEFAULT_CHECK_ONLY = false;
+    static final boolean DEFAULT_ESCALATE = false;
+    static final int DEFAULT_FILE_TIME_BUDGET = 0;
+    static final int DEFAULT_SLOWEST_FILES = 5;
+    static final int DEFAULT_RESULT_STORE_SIZE = 1024;
+    static final int DEFAULT_MAX_IN_FLIGHT = 64;
+
+    private final Logger logger;
 
     private Object base;
     private Object patches;
@@ -32,106 +61,279 @@ public class PatchAction implements PatchSpec {
     private Object rejects;
     private Object outputFormat;
     private Object rejectsFormat;
-    private float minFuzzQuality = -1;
-    private int maxFuzzOffset = -1;
-    private Object patchMode = PatchMode.EXACT;
+    private float minFuzzQuality = DEFAULT_MIN_FUZZ_QUALITY;
+    private int maxFuzzOffset = DEFAULT_MAX_FUZZ_OFFSET;
+    private Object patchMode = DEFAULT_PATCH_MODE;
     private String patchesPrefix;
-    private boolean verbose = false;
-    private boolean printSummary = true;
-    private boolean failOnError = true;
+    private boolean verbose = DEFAULT_VERBOSE;
+    private boolean printSummary = DEFAULT_PRINT_SUMMARY;
+    private boolean failOnError = DEFAULT_FAIL_ON_ERROR;
+    private int threads = DEFAULT_THREADS;
+    private Object logFile;
+    private boolean lifecycleLogging = DEFAULT_LIFECYCLE_LOGGING;
+    private boolean asyncLogging = DEFAULT_ASYNC_LOGGING;
+    private Object reportFile;
+    private PatchFileCache patchCache;
+    private ZipIndexCache zipCache;
+    private ForkJoinPool pool;
+    private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+    private boolean checkOnly = DEFAULT_CHECK_ONLY;
+    private boolean escalate = DEFAULT_ESCALATE;
+    private int fileTimeBudget = DEFAULT_FILE_TIME_BUDGET;
+    private int slowestFiles = DEFAULT_SLOWEST_FILES;
+    private Object resultStore;
+    private int resultStoreSize = DEFAULT_RESULT_STORE_SIZE;
+    private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+
+    /**
+     * Creates a PatchAction. It is not bound to a Project, so all paths
+     * set on it must be absolute. {@link PatchProperties#toAction} creates
+     * one from a task's values.
+     *
+     * @param logger The logger to output to.
+     */
+    public PatchAction(Logger logger) {
+        this.logger = logger;
+    }
 
-    public PatchAction(Project project) {
-        this.project = project;
+    /**
+     * Executes the patch operation.
+     *
+     * @return The report.
+     */
+    public PatchReport execute() {
+        PatchReport report = run();
+        if (report.getExitCode() != 0 && isFailOnError()) {
+            throw new RuntimeException("Patches failed to apply.");
+        }
+        return report;
     }
 
-    public int execute() {
+    /**
+     * Executes the patch operation, without failing if patches fail to apply.
+     *
+     * @return The report.
+     */
+    public PatchReport run() {
         if (base == null) {
             throw new IllegalStateException("Base path not specified.");
         }
         if (patches == null) {
             throw new IllegalStateException("Patches path not specified.");
         }
-        if (output == null) {
+        if (output == null && !checkOnly) {
             throw new IllegalStateException("Output path not specified.");
         }
 
-        File base = getBase();
-        File patches = getPatches();
-        File output = getOutput();
-        File rejects = getRejects();
-        ArchiveFormat outputFormat = getOutputFormat();
-        ArchiveFormat rejectsFormat = getRejectsFormat();
-        float minFuzz = getMinFuzzQuality();
-        int maxOffset = getMaxFuzzOffset();
-        PatchMode mode = getPatchMode();
+        long resolveStart = System.nanoTime();
+        PatchOptions options = toOptions();
+        File reportFile = getReportFile();
+        long resolveNanos = System.nanoTime() - resolveStart;
+
+        PatchReport report = null;
+        try (LogSink sink = createLogSink()) {
+            if (PatchRunner.isSupported(options)) {
+                PatchRunner runner = new PatchRunner(options, sink, patchCache, zipCache);
+                runner.setPool(pool);
+                report = runner.patch();
+            } else if (options.isCheckOnly()) {
+                throw new IllegalStateException("Check only mode requires the base and patches to be directories or zips.");
+            } else if (options.isEscalate()) {
+                throw new IllegalStateException("Escalation requires the base and patches to be directories or zips.");
+            } else {
+                warnIgnored();
+                long start = System.nanoTime();
+                int exit = executeCli(options, sink);
+                report = PatchReport.fromExitCode(exit, System.nanoTime() - start);
+                report.getMetrics().addTime(ExecutionMetrics.Phase.PROCESS, report.getElapsedNanos());
+                report.getMetrics().addElapsed(report.getElapsedNanos());
+            }
+            report.getMetrics().addTime(ExecutionMetrics.Phase.RESOLVE, resolveNanos);
+            report.getMetrics().addElapsed(resolveNanos);
+            if (reportFile != null) {
+                report.write(reportFile);
+            }
+        } catch (IOException e) {
+            codechicken.diffpatch.util.Utils.throwUnchecked(e);
+        }
+        return report;
+    }
+
+    /**
+     * Resolves this action into typed {@link PatchOptions}.
+     *
+     * @return The options.
+     */
+    public PatchOptions toOptions() {
+        PatchOptions options = new PatchOptions();
+        options.setBase(getBase());
+        options.setPatches(getPatches());
+        options.setPatchesPrefix(getPatchesPrefix());
+        options.setCheckOnly(isCheckOnly());
+        options.setFailOnError(isFailOnError());
+        options.setEscalate(isEscalate());
+        options.setFileTimeBudget(getFileTimeBudget());
+        options.setSlowestFiles(getSlowestFiles());
+        options.setResultStore(getResultStore());
+        options.setResultStoreMaxBytes(getResultStoreSize() * 1024L * 1024L);
+        options.setMaxInFlightBytes(getMaxInFlight() * 1024L * 1024L);
+        options.setOutput(getOutput());
+        options.setOutputFormat(getOutputFormat());
+        options.setRejects(getRejects());
+        options.setRejectsFormat(getRejectsFormat());
+        options.setMode(getPatchMode());
+        options.setMinFuzzQuality(getMinFuzzQuality());
+        options.setMaxFuzzOffset(getMaxFuzzOffset());
+        options.setThreads(getThreads());
+        options.setCompressionLevel(getCompressionLevel());
+        options.setVerbose(isVerbose());
+        options.setPrintSummary(isPrintSummary());
+        return options;
+    }
+
+    /**
+     * Creates the {@link LogSink} for an execution of this action.
+     *
+     * @return The sink.
+     * @throws IOException If the log file could not be opened.
+     */
+    public LogSink createLogSink() throws IOException {
+        return new LogSink(isLifecycleLogging() ? logger : null, getLogFile(), isAsyncLogging());
+    }
+
+    /**
+     * Sets the cache to get parsed patch files from, when patching in-process.
+     *
+     * @param patchCache The cache, null to parse every patch file.
+     */
+    public void setPatchCache(PatchFileCache patchCache) {
+        this.patchCache = patchCache;
+    }
+
+    public PatchFileCache getPatchCache() {
+        return patchCache;
+    }
+
+    /**
+     * Sets the cache to open zip inputs from, when patching in-process.
+     *
+     * @param zipCache The cache, null to index zips for each execution.
+     */
+    public void setZipCache(ZipIndexCache zipCache) {
+        this.zipCache = zipCache;
+    }
+
+    public ZipIndexCache getZipCache() {
+        return zipCache;
+    }
+
+    /**
+     * Sets a pool to patch files on when using more than one thread, shared with other work.
+     *
+     * @param pool The pool, null to create one for each execution.
+     * @see PatchRunner#setPool(ForkJoinPool)
+     */
+    public void setPool(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Warns about options which only apply in-process, and so are ignored by {@link #executeCli}.
+     */
+    private void warnIgnored() {
+        List<String> ignored = new ArrayList<>();
+        if (getThreads() != DEFAULT_THREADS) {
+            ignored.add("threads");
+        }
+        if (getCompressionLevel() != DEFAULT_COMPRESSION_LEVEL) {
+            ignored.add("compressionLevel");
+        }
+        if (getFileTimeBudget() != DEFAULT_FILE_TIME_BUDGET) {
+            ignored.add("fileTimeBudget");
+        }
+        if (getSlowestFiles() != DEFAULT_SLOWEST_FILES) {
+            ignored.add("slowestFiles");
+        }
+        if (getResultStore() != null) {
+            ignored.add("resultStore");
+        }
+        if (getResultStoreSize() != DEFAULT_RESULT_STORE_SIZE) {
+            ignored.add("resultStoreSize");
+        }
+        if (getMaxInFlight() != DEFAULT_MAX_IN_FLIGHT) {
+            ignored.add("maxInFlight");
+        }
+        if (!ignored.isEmpty() && logger != null) {
+            logger.warn("Ignoring {}, only supported when the inputs and outputs are directories or zips.", String.join(", ", ignored));
+        }
+    }
 
+    /**
+     * Runs DiffPatch through its command line entry point.
+     * Only used for archive formats the {@link PatchRunner} does not support.
+     */
+    private int executeCli(PatchOptions options, LogSink sink) throws IOException {
         List<String> args = new ArrayList<>();
         args.add("-p");
-        if (minFuzz != -1) {
+        if (options.getMinFuzzQuality() != -1) {
             args.add("--fuzz");
-            args.add(String.valueOf(minFuzz));
+            args.add(String.valueOf(options.getMinFuzzQuality()));
         }
-        if (maxOffset != -1) {
+        if (options.getMaxFuzzOffset() != -1) {
             args.add("--offset");
-            args.add(String.valueOf(maxOffset));
+            args.add(String.valueOf(options.getMaxFuzzOffset()));
         }
-        if (isVerbose()) {
+        if (options.isVerbose()) {
             args.add("--verbose");
         }
-        if (isPrintSummary()) {
+        if (options.isPrintSummary()) {
             args.add("--summary");
         }
         args.add("--output");
-        args.add(output.getAbsolutePath());
-        if (outputFormat != null) {
+        args.add(options.getOutput().getAbsolutePath());
+        if (options.getOutputFormat() != null) {
             args.add("--archive");
-            args.add(outputFormat.name());
+            args.add(options.getOutputFormat().name());
         }
-        if (mode != null) {
+        if (options.getMode() != null) {
             args.add("--mode");
-            args.add(mode.name());
+            args.add(options.getMode().name());
         }
-        if (patchesPrefix != null) {
+        if (options.getPatchesPrefix() != null) {
             args.add("--prefix");
-            args.add(patchesPrefix);
+            args.add(options.getPatchesPrefix());
         }
-        if (rejects != null) {
+        if (options.getRejects() != null) {
             args.add("--reject");
-            args.add(rejects.getAbsolutePath());
-            if (rejectsFormat != null) {
+            args.add(options.getRejects().getAbsolutePath());
+            if (options.getRejectsFormat() != null) {
                 args.add("--archive-rejects");
-                args.add(rejectsFormat.name());
+                args.add(options.getRejectsFormat().name());
             }
         }
-        args.add(base.getAbsolutePath());
-        args.add(patches.getAbsolutePath());
+        args.add(options.getBase().getAbsolutePath());
+        args.add(options.getPatches().getAbsolutePath());
 
         if (DEBUG) {
             String line = args.stream().map(e -> "\"" + e + "\"").collect(Collectors.joining(" "));
-            project.getLogger().info("Starting DiffPatch with arguments: {}", line);
+            logger.info("Starting DiffPatch with arguments: {}", line);
         }
 
-        PrintStream logger = new PrintStream(new ConsumingOutputStream(line -> project.getLogger().lifecycle(line)));
-        int exit = 0;
-        try {
-            exit = DiffPatch.mainI(args.toArray(new String[0]), logger, null);
-        } catch (IOException e) {
-            codechicken.diffpatch.util.Utils.throwUnchecked(e);
+        int exit;
+        try (PrintStream printer = new PrintStream(new ConsumingOutputStream(sink))) {
+            exit = DiffPatch.mainI(args.toArray(new String[0]), printer, null);
         }
         if (exit != 0 && exit != 1) {
             throw new RuntimeException("DiffPatch failed with exit code: " + exit);
         }
-        if (exit != 0 && isFailOnError()) {
-            throw new RuntimeException("Patches failed to apply.");
-        }
         return exit;
     }
 
     //@formatter:off
-    @Override public File getBase() { return base != null ? Utils.resolveFile(project, base) : null; }
-    @Override public File getPatches() { return patches != null ? Utils.resolveFile(project, patches) : null; }
-    @Override public File getOutput() { return output != null ? Utils.resolveFile(project, output) : null; }
-    @Override public File getRejects() { return rejects != null ? Utils.resolveFile(project, rejects) : null; }
+    @Override public File getBase() { return Utils.resolveAbsoluteFile(base); }
+    @Override public File getPatches() { return Utils.resolveAbsoluteFile(patches); }
+    @Override public File getOutput() { return Utils.resolveAbsoluteFile(output); }
+    @Override public File getRejects() { return Utils.resolveAbsoluteFile(rejects); }
     @Override public ArchiveFormat getOutputFormat() { return outputFormat != null ? Utils.resolveArchiveFormat(outputFormat) : null; }
     @Override public ArchiveFormat getRejectsFormat() { return rejectsFormat != null ? Utils.resolveArchiveFormat(rejectsFormat) : null; }
     @Override public float getMinFuzzQuality() { return minFuzzQuality; }
@@ -141,6 +343,19 @@ public class PatchAction implements PatchSpec {
     @Override public boolean isVerbose() { return verbose; }
     @Override public boolean isPrintSummary() { return printSummary; }
     @Override public boolean isFailOnError() { return failOnError; }
+    @Override public int getThreads() { return threads; }
+    @Override public File getLogFile() { return Utils.resolveAbsoluteFile(logFile); }
+    @Override public boolean isLifecycleLogging() { return lifecycleLogging; }
+    @Override public boolean isAsyncLogging() { return asyncLogging; }
+    @Override public File getReportFile() { return Utils.resolveAbsoluteFile(reportFile); }
+    @Override public int getCompressionLevel() { return compressionLevel; }
+    @Override public boolean isCheckOnly() { return checkOnly; }
+    @Override public boolean isEscalate() { return escalate; }
+    @Override public int getFileTimeBudget() { return fileTimeBudget; }
+    @Override public int getSlowestFiles() { return slowestFiles; }
+    @Override public File getResultStore() { return Utils.resolveAbsoluteFile(resultStore); }
+    @Override public int getResultStoreSize() { return resultStoreSize; }
+    @Override public int getMaxInFlight() { return maxInFlight; }
     @Override public void setBase(Object base) { this.base = base; }
     @Override public void setPatches(Object patches) { this.patches = patches; }
     @Override public void setOutput(Object output) { this.output = output; }
@@ -154,5 +369,18 @@ public class PatchAction implements PatchSpec {
     @Override public void setVerbose(boolean verbose) { this.verbose = verbose; }
     @Override public void setPrintSummary(boolean printSummary) { this.printSummary = printSummary; }
     @Override public void setFailOnError(boolean failOnError) { this.failOnError = failOnError; }
+    @Override public void setThreads(int threads) { this.threads = threads; }
+    @Override public void setLogFile(Object logFile) { this.logFile = logFile; }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { this.lifecycleLogging = lifecycleLogging; }
+    @Override public void setAsyncLogging(boolean asyncLogging) { this.asyncLogging = asyncLogging; }
+    @Override public void setReportFile(Object reportFile) { this.reportFile = reportFile; }
+    @Override public void setCompressionLevel(int compressionLevel) { this.compressionLevel = compressionLevel; }
+    @Override public void setCheckOnly(boolean checkOnly) { this.checkOnly = checkOnly; }
+    @Override public void setEscalate(boolean escalate) { this.escalate = escalate; }
+    @Override public void setFileTimeBudget(int fileTimeBudget) { this.fileTimeBudget = fileTimeBudget; }
+    @Override public void setSlowestFiles(int slowestFiles) { this.slowestFiles = slowestFiles; }
+    @Override public void setResultStore(Object resultStore) { this.resultStore = resultStore; }
+    @Override public void setResultStoreSize(int resultStoreSize) { this.resultStoreSize = resultStoreSize; }
+    @Override public void setMaxInFlight(int maxInFlight) { this.maxInFlight = maxInFlight; }
     //@formatter:on
 }
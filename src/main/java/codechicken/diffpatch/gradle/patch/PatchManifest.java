@@ -0,0 +1,130 @@
+package codechicken.diffpatch.gradle.patch;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * Persisted record of the base and patch file hashes used to produce
+ * each output file of an {@link IncrementalPatchTask}.
+ * <p>
+ * Stored as a simple tab separated file, the first line holding the
+ * configuration key the manifest was produced with.
+ */
+public class PatchManifest {
+
+    private static final String NULL_HASH = "-";
+    /**
+     * Never equal to a real hash, so an entry with unknown hashes never matches.
+     */
+    private static final String UNKNOWN_HASH = "?";
+
+    private final String key;
+    private final Map<String, Entry> entries = new TreeMap<>();
+
+    public PatchManifest(String key) {
+        this.key = key;
+    }
+
+    /**
+     * Loads a manifest from disk.
+     *
+     * @param file The file.
+     * @param key  The expected configuration key.
+     * @return The manifest, or null if it does not exist or was produced with a different configuration.
+     * @throws IOException If an IO error occurs.
+     */
+    public static PatchManifest load(File file, String key) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        PatchManifest manifest = new PatchManifest(key);
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!key.equals(reader.readLine())) {
+                return null;
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] split = line.split("\t");
+                if (split.length != 4) {
+                    return null;
+                }
+                manifest.entries.put(split[0], new Entry(fromHash(split[1]), fromHash(split[2]), Boolean.parseBoolean(split[3])));
+            }
+        }
+        return manifest;
+    }
+
+    public void save(File file) throws IOException {
+        Files.createDirectories(file.getAbsoluteFile().getParentFile().toPath());
+        try (Writer writer = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(key);
+            writer.write('\n');
+            for (Map.Entry<String, Entry> e : entries.entrySet()) {
+                Entry entry = e.getValue();
+                writer.write(e.getKey() + "\t" + toHash(entry.baseHash) + "\t" + toHash(entry.patchHash) + "\t" + entry.success + "\n");
+            }
+        }
+    }
+
+    public Entry get(String path) {
+        return entries.get(path);
+    }
+
+    public void put(String path, Entry entry) {
+        entries.put(path, entry);
+    }
+
+    public void remove(String path) {
+        entries.remove(path);
+    }
+
+    /**
+     * @return The number of files which failed to patch.
+     */
+    public int getFailedCount() {
+        return (int) entries.values().stream().filter(e -> !e.success).count();
+    }
+
+    private static String toHash(String hash) {
+        return hash != null ? hash : NULL_HASH;
+    }
+
+    private static String fromHash(String hash) {
+        return NULL_HASH.equals(hash) ? null : hash;
+    }
+
+    public static class Entry {
+
+        public final String baseHash;
+        public final String patchHash;
+        public final boolean success;
+
+        public Entry(String baseHash, String patchHash, boolean success) {
+            this.baseHash = baseHash;
+            this.patchHash = patchHash;
+            this.success = success;
+        }
+
+        /**
+         * Creates an entry for a file whose inputs were not hashed,
+         * which is processed again the next time either input changes.
+         *
+         * @param success If the file patched successfully.
+         * @return The entry.
+         */
+        public static Entry unhashed(boolean success) {
+            return new Entry(UNKNOWN_HASH, UNKNOWN_HASH, success);
+        }
+
+        public boolean matches(String baseHash, String patchHash) {
+            return Objects.equals(this.baseHash, baseHash) && Objects.equals(this.patchHash, patchHash);
+        }
+    }
+}
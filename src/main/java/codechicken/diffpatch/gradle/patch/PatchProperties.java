@@ -0,0 +1,215 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.gradle.util.Utils;
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.model.ObjectFactory;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.provider.ProviderFactory;
+
+import java.io.File;
+import java.util.function.Function;
+
+/**
+ * A {@link PatchSpec} which holds its values in Gradle {@link Property}s, used by the patch tasks.
+ * <p>
+ * Values given to the setters are resolved lazily, when they are read. A {@link Provider}
+ * may be given for any file or enum value, and is wired in directly, so task dependencies
+ * carry through. Relative paths are resolved against the project directory.
+ * <p>
+ * No reference to the Project is kept, so tasks holding this are compatible with
+ * Gradle's configuration cache. {@link #toAction(Logger)} creates the action to execute.
+ */
+public class PatchProperties implements PatchSpec {
+
+    private final ProviderFactory providers;
+    private final File projectDir;
+    private final Property<File> base;
+    private final Property<File> patches;
+    private final Property<File> output;
+    private final Property<File> rejects;
+    private final Property<ArchiveFormat> outputFormat;
+    private final Property<ArchiveFormat> rejectsFormat;
+    private final Property<Float> minFuzzQuality;
+    private final Property<Integer> maxFuzzOffset;
+    private final Property<PatchMode> patchMode;
+    private final Property<String> patchesPrefix;
+    private final Property<Boolean> verbose;
+    private final Property<Boolean> printSummary;
+    private final Property<Boolean> failOnError;
+    private final Property<Integer> threads;
+    private final Property<File> logFile;
+    private final Property<Boolean> lifecycleLogging;
+    private final Property<Boolean> asyncLogging;
+    private final Property<File> reportFile;
+    private final Property<Integer> compressionLevel;
+    private final Property<Boolean> checkOnly;
+    private final Property<Boolean> escalate;
+    private final Property<Integer> fileTimeBudget;
+    private final Property<Integer> slowestFiles;
+    private final Property<File> resultStore;
+    private final Property<Integer> resultStoreSize;
+    private final Property<Integer> maxInFlight;
+
+    public PatchProperties(Project project) {
+        ObjectFactory objects = project.getObjects();
+        providers = project.getProviders();
+        projectDir = project.getProjectDir();
+        base = objects.property(File.class);
+        patches = objects.property(File.class);
+        output = objects.property(File.class);
+        rejects = objects.property(File.class);
+        outputFormat = objects.property(ArchiveFormat.class);
+        rejectsFormat = objects.property(ArchiveFormat.class);
+        minFuzzQuality = objects.property(Float.class).convention(PatchAction.DEFAULT_MIN_FUZZ_QUALITY);
+        maxFuzzOffset = objects.property(Integer.class).convention(PatchAction.DEFAULT_MAX_FUZZ_OFFSET);
+        patchMode = objects.property(PatchMode.class).convention(PatchAction.DEFAULT_PATCH_MODE);
+        patchesPrefix = objects.property(String.class);
+        verbose = objects.property(Boolean.class).convention(PatchAction.DEFAULT_VERBOSE);
+        printSummary = objects.property(Boolean.class).convention(PatchAction.DEFAULT_PRINT_SUMMARY);
+        failOnError = objects.property(Boolean.class).convention(PatchAction.DEFAULT_FAIL_ON_ERROR);
+        threads = objects.property(Integer.class).convention(PatchAction.DEFAULT_THREADS);
+        logFile = objects.property(File.class);
+        lifecycleLogging = objects.property(Boolean.class).convention(PatchAction.DEFAULT_LIFECYCLE_LOGGING);
+        asyncLogging = objects.property(Boolean.class).convention(PatchAction.DEFAULT_ASYNC_LOGGING);
+        reportFile = objects.property(File.class);
+        compressionLevel = objects.property(Integer.class).convention(PatchAction.DEFAULT_COMPRESSION_LEVEL);
+        checkOnly = objects.property(Boolean.class).convention(PatchAction.DEFAULT_CHECK_ONLY);
+        escalate = objects.property(Boolean.class).convention(PatchAction.DEFAULT_ESCALATE);
+        fileTimeBudget = objects.property(Integer.class).convention(PatchAction.DEFAULT_FILE_TIME_BUDGET);
+        slowestFiles = objects.property(Integer.class).convention(PatchAction.DEFAULT_SLOWEST_FILES);
+        resultStore = objects.property(File.class);
+        resultStoreSize = objects.property(Integer.class).convention(PatchAction.DEFAULT_RESULT_STORE_SIZE);
+        maxInFlight = objects.property(Integer.class).convention(PatchAction.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+    /**
+     * Creates a {@link PatchAction} from the current values, with all paths absolute.
+     * The action does not reference the Project, so may be created at execution time.
+     *
+     * @param logger The logger for the action to output to.
+     * @return The action.
+     */
+    public PatchAction toAction(Logger logger) {
+        PatchAction action = new PatchAction(logger);
+        action.setBase(absolute(getBase()));
+        action.setPatches(absolute(getPatches()));
+        action.setOutput(absolute(getOutput()));
+        action.setRejects(absolute(getRejects()));
+        action.setOutputFormat(getOutputFormat());
+        action.setRejectsFormat(getRejectsFormat());
+        action.setMinFuzzQuality(getMinFuzzQuality());
+        action.setMaxFuzzOffset(getMaxFuzzOffset());
+        action.setPatchMode(getPatchMode());
+        action.setPatchesPrefix(getPatchesPrefix());
+        action.setVerbose(isVerbose());
+        action.setPrintSummary(isPrintSummary());
+        action.setFailOnError(isFailOnError());
+        action.setThreads(getThreads());
+        action.setLogFile(absolute(getLogFile()));
+        action.setLifecycleLogging(isLifecycleLogging());
+        action.setAsyncLogging(isAsyncLogging());
+        action.setReportFile(absolute(getReportFile()));
+        action.setCompressionLevel(getCompressionLevel());
+        action.setCheckOnly(isCheckOnly());
+        action.setEscalate(isEscalate());
+        action.setFileTimeBudget(getFileTimeBudget());
+        action.setSlowestFiles(getSlowestFiles());
+        action.setResultStore(absolute(getResultStore()));
+        action.setResultStoreSize(getResultStoreSize());
+        action.setMaxInFlight(getMaxInFlight());
+        return action;
+    }
+
+    /**
+     * @return The base path, as a provider carrying the task dependencies of any provider it was set from.
+     */
+    public Provider<File> getBaseProvider() {
+        return base;
+    }
+
+    /**
+     * @return The patches path, as a provider carrying the task dependencies of any provider it was set from.
+     */
+    public Provider<File> getPatchesProvider() {
+        return patches;
+    }
+
+    /**
+     * Wraps a value given to a setter so it is resolved when read.
+     * Providers are mapped rather than wrapped, keeping their task dependencies.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> Provider<T> lazy(Object value, Function<Object, T> resolver) {
+        if (value instanceof Provider) {
+            return ((Provider<Object>) value).map(resolver::apply);
+        }
+        return providers.provider(() -> value != null ? resolver.apply(value) : null);
+    }
+
+    private File file(Object value) {
+        return Utils.resolveFile(projectDir, value);
+    }
+
+    private static File absolute(File file) {
+        return file != null ? file.getAbsoluteFile() : null;
+    }
+
+    //@formatter:off
+    @Override public File getBase() { return base.getOrNull(); }
+    @Override public File getPatches() { return patches.getOrNull(); }
+    @Override public File getOutput() { return output.getOrNull(); }
+    @Override public File getRejects() { return rejects.getOrNull(); }
+    @Override public ArchiveFormat getOutputFormat() { return outputFormat.getOrNull(); }
+    @Override public ArchiveFormat getRejectsFormat() { return rejectsFormat.getOrNull(); }
+    @Override public float getMinFuzzQuality() { return minFuzzQuality.get(); }
+    @Override public int getMaxFuzzOffset() { return maxFuzzOffset.get(); }
+    @Override public PatchMode getPatchMode() { return patchMode.getOrNull(); }
+    @Override public String getPatchesPrefix() { return patchesPrefix.getOrNull(); }
+    @Override public boolean isVerbose() { return verbose.get(); }
+    @Override public boolean isPrintSummary() { return printSummary.get(); }
+    @Override public boolean isFailOnError() { return failOnError.get(); }
+    @Override public int getThreads() { return threads.get(); }
+    @Override public File getLogFile() { return logFile.getOrNull(); }
+    @Override public boolean isLifecycleLogging() { return lifecycleLogging.get(); }
+    @Override public boolean isAsyncLogging() { return asyncLogging.get(); }
+    @Override public File getReportFile() { return reportFile.getOrNull(); }
+    @Override public int getCompressionLevel() { return compressionLevel.get(); }
+    @Override public boolean isCheckOnly() { return checkOnly.get(); }
+    @Override public boolean isEscalate() { return escalate.get(); }
+    @Override public int getFileTimeBudget() { return fileTimeBudget.get(); }
+    @Override public int getSlowestFiles() { return slowestFiles.get(); }
+    @Override public File getResultStore() { return resultStore.getOrNull(); }
+    @Override public int getResultStoreSize() { return resultStoreSize.get(); }
+    @Override public int getMaxInFlight() { return maxInFlight.get(); }
+    @Override public void setBase(Object base) { this.base.set(lazy(base, this::file)); }
+    @Override public void setPatches(Object patches) { this.patches.set(lazy(patches, this::file)); }
+    @Override public void setOutput(Object output) { this.output.set(lazy(output, this::file)); }
+    @Override public void setRejects(Object rejects) { this.rejects.set(lazy(rejects, this::file)); }
+    @Override public void setOutputFormat(Object outputFormat) { this.outputFormat.set(lazy(outputFormat, Utils::resolveArchiveFormat)); }
+    @Override public void setRejectsFormat(Object rejectsFormat) { this.rejectsFormat.set(lazy(rejectsFormat, Utils::resolveArchiveFormat)); }
+    @Override public void setMinFuzzQuality(float fuzz) { this.minFuzzQuality.set(fuzz); }
+    @Override public void setMaxFuzzOffset(int maxFuzzOffset) { this.maxFuzzOffset.set(maxFuzzOffset); }
+    @Override public void setPatchMode(Object patchMode) { this.patchMode.set(lazy(patchMode, Utils::resolvePatchMode)); }
+    @Override public void setPatchesPrefix(String prefix) { this.patchesPrefix.set(prefix); }
+    @Override public void setVerbose(boolean verbose) { this.verbose.set(verbose); }
+    @Override public void setPrintSummary(boolean printSummary) { this.printSummary.set(printSummary); }
+    @Override public void setFailOnError(boolean failOnError) { this.failOnError.set(failOnError); }
+    @Override public void setThreads(int threads) { this.threads.set(threads); }
+    @Override public void setLogFile(Object logFile) { this.logFile.set(lazy(logFile, this::file)); }
+    @Override public void setLifecycleLogging(boolean lifecycleLogging) { this.lifecycleLogging.set(lifecycleLogging); }
+    @Override public void setAsyncLogging(boolean asyncLogging) { this.asyncLogging.set(asyncLogging); }
+    @Override public void setReportFile(Object reportFile) { this.reportFile.set(lazy(reportFile, this::file)); }
+    @Override public void setCompressionLevel(int compressionLevel) { this.compressionLevel.set(compressionLevel); }
+    @Override public void setCheckOnly(boolean checkOnly) { this.checkOnly.set(checkOnly); }
+    @Override public void setEscalate(boolean escalate) { this.escalate.set(escalate); }
+    @Override public void setFileTimeBudget(int fileTimeBudget) { this.fileTimeBudget.set(fileTimeBudget); }
+    @Override public void setSlowestFiles(int slowestFiles) { this.slowestFiles.set(slowestFiles); }
+    @Override public void setResultStore(Object resultStore) { this.resultStore.set(lazy(resultStore, this::file)); }
+    @Override public void setResultStoreSize(int resultStoreSize) { this.resultStoreSize.set(resultStoreSize); }
+    @Override public void setMaxInFlight(int maxInFlight) { this.maxInFlight.set(maxInFlight); }
+    //@formatter:on
+}
@@ -0,0 +1,115 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.Named;
+import org.gradle.api.Project;
+import org.gradle.api.file.ConfigurableFileCollection;
+import org.gradle.api.file.FileCollection;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Console;
+import org.gradle.api.tasks.Input;
+import org.gradle.api.tasks.InputFiles;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Optional;
+import org.gradle.api.tasks.OutputDirectory;
+import org.gradle.api.tasks.OutputFile;
+import org.gradle.api.tasks.PathSensitive;
+import org.gradle.api.tasks.PathSensitivity;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+/**
+ * A single named {@link PatchSpec} of a {@link PatchSetTask}.
+ * Each entry is executed as its own {@link PatchAction}.
+ * <p>
+ * Entries are nested inputs of the task, declaring their inputs and
+ * outputs the same as {@link AbstractPatchTask} does.
+ */
+public class PatchSetEntry extends PatchProperties implements Named {
+
+    private final String name;
+    private final ConfigurableFileCollection baseFiles;
+    private final ConfigurableFileCollection patchFiles;
+
+    public PatchSetEntry(String name, Project project) {
+        super(project);
+        this.name = name;
+        baseFiles = project.files((Callable<Object>) () -> getBaseProvider().isPresent() ? getBaseProvider() : null);
+        patchFiles = project.files((Callable<Object>) () -> getPatchesProvider().isPresent() ? getPatchesProvider() : null);
+    }
+
+    @Input
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getBaseFiles() {
+        return baseFiles;
+    }
+
+    @InputFiles
+    @PathSensitive(PathSensitivity.RELATIVE)
+    public FileCollection getPatchFiles() {
+        return patchFiles;
+    }
+
+    @Optional
+    @OutputDirectory
+    public File getOutputDirectory() {
+        return !isCheckOnly() && getOutputFormat() == null ? getOutput() : null;
+    }
+
+    @Optional
+    @OutputFile
+    public File getOutputArchive() {
+        return !isCheckOnly() && getOutputFormat() != null ? getOutput() : null;
+    }
+
+    @Optional
+    @OutputDirectory
+    public File getRejectsDirectory() {
+        return !isCheckOnly() && getRejects() != null && getRejectsFormat() == null ? getRejects() : null;
+    }
+
+    @Optional
+    @OutputFile
+    public File getRejectsArchive() {
+        return !isCheckOnly() && getRejects() != null && getRejectsFormat() != null ? getRejects() : null;
+    }
+
+    //@formatter:off
+    @Internal @Override public Provider<File> getBaseProvider() { return super.getBaseProvider(); }
+    @Internal @Override public Provider<File> getPatchesProvider() { return super.getPatchesProvider(); }
+    @Internal @Override public File getBase() { return super.getBase(); }
+    @Internal @Override public File getPatches() { return super.getPatches(); }
+    @Internal @Override public File getOutput() { return super.getOutput(); }
+    @Internal @Override public File getRejects() { return super.getRejects(); }
+    @Optional @Input @Override public ArchiveFormat getOutputFormat() { return super.getOutputFormat(); }
+    @Optional @Input @Override public ArchiveFormat getRejectsFormat() { return super.getRejectsFormat(); }
+    @Input @Override public float getMinFuzzQuality() { return super.getMinFuzzQuality(); }
+    @Input @Override public int getMaxFuzzOffset() { return super.getMaxFuzzOffset(); }
+    @Input @Override public PatchMode getPatchMode() { return super.getPatchMode(); }
+    @Optional @Input @Override public String getPatchesPrefix() { return super.getPatchesPrefix(); }
+    @Console @Override public boolean isVerbose() { return super.isVerbose(); }
+    @Console @Override public boolean isPrintSummary() { return super.isPrintSummary(); }
+    @Input @Override public boolean isFailOnError() { return super.isFailOnError(); }
+    @Internal @Override public int getThreads() { return super.getThreads(); }
+    @Internal @Override public File getLogFile() { return super.getLogFile(); }
+    @Console @Override public boolean isLifecycleLogging() { return super.isLifecycleLogging(); }
+    @Console @Override public boolean isAsyncLogging() { return super.isAsyncLogging(); }
+    @Optional @OutputFile @Override public File getReportFile() { return super.getReportFile(); }
+    @Input @Override public int getCompressionLevel() { return super.getCompressionLevel(); }
+    @Input @Override public boolean isCheckOnly() { return super.isCheckOnly(); }
+    @Input @Override public boolean isEscalate() { return super.isEscalate(); }
+    @Input @Override public int getFileTimeBudget() { return super.getFileTimeBudget(); }
+    @Console @Override public int getSlowestFiles() { return super.getSlowestFiles(); }
+    @Internal @Override public File getResultStore() { return super.getResultStore(); }
+    @Internal @Override public int getResultStoreSize() { return super.getResultStoreSize(); }
+    @Internal @Override public int getMaxInFlight() { return super.getMaxInFlight(); }
+    //@formatter:on
+}
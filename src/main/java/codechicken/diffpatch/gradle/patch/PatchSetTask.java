@@ -0,0 +1,168 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.gradle.engine.PatchReport;
+import codechicken.diffpatch.gradle.engine.PatchRunner;
+import codechicken.diffpatch.gradle.service.MetricsService;
+import codechicken.diffpatch.gradle.service.PatchCacheService;
+import codechicken.diffpatch.gradle.service.ZipCacheService;
+import org.gradle.api.Action;
+import org.gradle.api.DefaultTask;
+import org.gradle.api.NamedDomainObjectContainer;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.tasks.Internal;
+import org.gradle.api.tasks.Nested;
+import org.gradle.api.tasks.TaskAction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Task which applies many {@link PatchSpec}s at once, in place of declaring a {@link PatchTask} for each.
+ * <p>
+ * Each entry is executed as its own {@link PatchAction}, with the same semantics as a PatchTask.
+ * Entries are driven one after another from the task's thread, which reads, waits for and
+ * writes their files, while every entry patches its files on one shared pool of {@link #getThreads()}
+ * threads. Entries share the build's parsed patch and zip index caches. A single summary is
+ * logged for all entries.
+ * <p>
+ * Entries which fail to apply and have {@link PatchSpec#isFailOnError()} set fail the task,
+ * once all other entries have finished.
+ * <pre>
+ * task applyPatches(type: PatchSetTask) {
+ *     entries {
+ *         moduleA {
+ *             base = file("base/moduleA")
+ *             patches = file("patches/moduleA")
+ *             output = file("build/moduleA")
+ *         }
+ *     }
+ * }
+ * </pre>
+ * Entries are nested inputs, so the task is up-to-date when no entry's inputs or outputs changed.
+ * It is not cacheable.
+ */
+public class PatchSetTask extends DefaultTask {
+
+    private final NamedDomainObjectContainer<PatchSetEntry> entries;
+    private final Provider<MetricsService> metricsService;
+    private final Provider<PatchCacheService> patchCacheService;
+    private final Provider<ZipCacheService> zipCacheService;
+    private int threads = Runtime.getRuntime().availableProcessors();
+    private boolean printSummary = true;
+
+    public PatchSetTask() {
+        entries = getProject().getObjects().domainObjectContainer(PatchSetEntry.class, name -> new PatchSetEntry(name, getProject()));
+        metricsService = MetricsService.register(getProject());
+        patchCacheService = PatchCacheService.register(getProject());
+        zipCacheService = ZipCacheService.register(getProject());
+    }
+
+    @TaskAction
+    public void doTask() {
+        long start = System.nanoTime();
+        int threads = Math.max(1, this.threads);
+        ForkJoinPool pool = threads > 1 ? new ForkJoinPool(threads) : null;
+        try {
+            int files = 0;
+            int copied = 0;
+            int failedFiles = 0;
+            List<String> failed = new ArrayList<>();
+            RuntimeException error = null;
+            for (PatchSetEntry entry : entries) {
+                PatchAction action = entry.toAction(getLogger());
+                action.setPatchCache(patchCacheService.get().getCache());
+                action.setZipCache(zipCacheService.get().getCache());
+                //Every entry uses all of the task's threads, only pool workers patch files and only this thread waits on them.
+                if (PatchRunner.isSupported(action.toOptions())) {
+                    action.setThreads(threads);
+                    action.setPool(pool);
+                }
+                PatchReport report;
+                try {
+                    report = action.run();
+                } catch (RuntimeException ex) {
+                    if (error == null) {
+                        error = new RuntimeException("Failed to patch entry: " + entry.getName(), ex);
+                    } else {
+                        error.addSuppressed(ex);
+                    }
+                    continue;
+                }
+                metricsService.get().record(getPath() + ":" + entry.getName(), "patch", report.getMetrics());
+                files += report.getFiles().size();
+                copied += report.getCopied();
+                failedFiles += report.getFailed();
+                if (report.getExitCode() != 0 && entry.isFailOnError()) {
+                    failed.add(entry.getName());
+                }
+            }
+            if (error != null) {
+                throw error;
+            }
+            if (printSummary) {
+                getLogger().lifecycle("Patched {} entries with {} threads in {}ms, {} files patched, {} copied, {} failed.",
+                        entries.size(),
+                        threads,
+                        (System.nanoTime() - start) / 1000000,
+                        files,
+                        copied,
+                        failedFiles
+                );
+            }
+            if (!failed.isEmpty()) {
+                throw new RuntimeException("Patches failed to apply for: " + String.join(", ", failed));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * @return The entries to patch.
+     */
+    @Nested
+    public NamedDomainObjectContainer<PatchSetEntry> getEntries() {
+        return entries;
+    }
+
+    public void entries(Action<? super NamedDomainObjectContainer<PatchSetEntry>> action) {
+        action.execute(entries);
+    }
+
+    /**
+     * Sets the number of threads to patch files with.
+     * Defaults to the number of available processors.
+     * Every entry patches its files on these threads, in place of its own
+     * {@link PatchSpec#getThreads()}, so this bounds the threads used by the whole task.
+     *
+     * @param threads The number of threads.
+     */
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    public void threads(int threads) {
+        setThreads(threads);
+    }
+
+    /**
+     * Sets if a summary of all entries is logged once they have finished.
+     *
+     * @param printSummary If the summary is logged.
+     */
+    public void setPrintSummary(boolean printSummary) {
+        this.printSummary = printSummary;
+    }
+
+    public void printSummary(boolean printSummary) {
+        setPrintSummary(printSummary);
+    }
+
+    //@formatter:off
+    @Internal public int getThreads() { return threads; }
+    @Internal public boolean isPrintSummary() { return printSummary; }
+    //@formatter:on
+}
@@ -6,6 +6,10 @@ import codechicken.diffpatch.util.archiver.ArchiveFormat;
 import java.io.File;
 
 /**
+ * Setters taking an Object accept anything Gradle can resolve to a File or value,
+ * including a {@link org.gradle.api.provider.Provider}. On the patch tasks, values are
+ * resolved lazily and Providers keep their task dependencies, see {@link PatchProperties}.
+ * <p>
  * Created by covers1624 on 14/8/20.
  */
 public interface PatchSpec {
@@ -107,6 +111,93 @@ public interface PatchSpec {
      */
     boolean isFailOnError();
 
+    /**
+     * The number of threads to apply patches with.
+     *
+     * @return The number of threads.
+     */
+    int getThreads();
+
+    /**
+     * Gets the file log output is written to.
+     *
+     * @return The file, or null.
+     */
+    File getLogFile();
+
+    /**
+     * @return If log output is sent to Gradle's lifecycle logger.
+     */
+    boolean isLifecycleLogging();
+
+    /**
+     * @return If log output is written by a background thread.
+     */
+    boolean isAsyncLogging();
+
+    /**
+     * Gets the file a JSON {@link codechicken.diffpatch.gradle.engine.PatchReport} is written to.
+     *
+     * @return The file, or null.
+     */
+    File getReportFile();
+
+    /**
+     * The compression level used when writing the output and rejects archives.
+     *
+     * @return The level, -1 for the default, 0 to store entries uncompressed.
+     */
+    int getCompressionLevel();
+
+    /**
+     * If patches are only checked, without writing any output.
+     *
+     * @return If check only mode is enabled.
+     */
+    boolean isCheckOnly();
+
+    /**
+     * If patch modes are escalated per file, up to {@link #getPatchMode()}.
+     *
+     * @return If escalation is enabled.
+     */
+    boolean isEscalate();
+
+    /**
+     * The time budget for patching a single file, in milliseconds.
+     *
+     * @return The budget, 0 if unlimited.
+     */
+    int getFileTimeBudget();
+
+    /**
+     * The number of slowest files to log with the summary.
+     *
+     * @return The number of files.
+     */
+    int getSlowestFiles();
+
+    /**
+     * Gets the directory of the persistent patch result store.
+     *
+     * @return The directory, or null.
+     */
+    File getResultStore();
+
+    /**
+     * The maximum size of the persistent patch result store, in MiB.
+     *
+     * @return The size.
+     */
+    int getResultStoreSize();
+
+    /**
+     * The maximum size of files held in memory at once, in MiB.
+     *
+     * @return The size.
+     */
+    int getMaxInFlight();
+
     /**
      * Sets the base path to patch.
      * Can be a File, Supplier, Closure, String.
@@ -218,6 +309,139 @@ public interface PatchSpec {
      */
     void setFailOnError(boolean failOnError);
 
+    /**
+     * Sets the number of threads to apply patches with.
+     * When greater than 1, patch files are applied concurrently on a
+     * bounded pool, with output still written in a deterministic order.
+     * Only directories and zips are supported by the in-process engine,
+     * other archive formats always run single threaded.
+     *
+     * @param threads The number of threads.
+     */
+    void setThreads(int threads);
+
+    /**
+     * Sets a file to write log output to, in addition to or
+     * instead of the lifecycle logger.
+     * Can be a File, Supplier, Closure, String.
+     * A Supplier or Closure will be evaluated at task execution.
+     *
+     * @param logFile The file.
+     */
+    void setLogFile(Object logFile);
+
+    /**
+     * Sets if log output is sent to Gradle's lifecycle logger.
+     * Disable along with setting a log file to only log to the file.
+     *
+     * @param lifecycleLogging The value.
+     */
+    void setLifecycleLogging(boolean lifecycleLogging);
+
+    /**
+     * Sets if log output is queued and written by a background thread,
+     * so diffing and patching never blocks on the logger or log file.
+     *
+     * @param asyncLogging The value.
+     */
+    void setAsyncLogging(boolean asyncLogging);
+
+    /**
+     * Sets a file to write a JSON report of the patch operation to,
+     * with per-file status, hunk match modes, offsets, fuzz quality,
+     * bytes and timing. A natural place is next to {@link #getRejects()}.
+     * Can be a File, Supplier, Closure, String.
+     * A Supplier or Closure will be evaluated at task execution.
+     *
+     * @param reportFile The file.
+     */
+    void setReportFile(Object reportFile);
+
+    /**
+     * Sets the compression level used when writing the output and rejects archives,
+     * from 0 to 9. -1 (default) uses the Deflater's default level, and 0 stores
+     * entries without compression, the cheapest option for intermediate archives
+     * consumed by another task. Entries copied unchanged from a zip input keep
+     * their original compression. Ignored for directory outputs.
+     *
+     * @param compressionLevel The level.
+     */
+    void setCompressionLevel(int compressionLevel);
+
+    /**
+     * Sets if patches are only checked to apply against the base, without writing any output.
+     * Patches are applied in memory and the results discarded, no output or rejects are written
+     * and files without a patch are not read. The output path is not required.
+     * <p>
+     * If {@link #isFailOnError()} is set, checking stops at the first failing file,
+     * otherwise every file is checked and reported.
+     *
+     * @param checkOnly If check only mode is enabled.
+     */
+    void setCheckOnly(boolean checkOnly);
+
+    /**
+     * Sets if patch modes are escalated per file. Each file is first patched with
+     * {@link PatchMode#EXACT}, and only files with failed hunks are retried with each
+     * higher mode in turn, {@link PatchMode#ACCESS}, {@link PatchMode#OFFSET} then
+     * {@link PatchMode#FUZZY}, up to {@link #getPatchMode()}. The report records the mode each file needed.
+     *
+     * @param escalate If escalation is enabled.
+     */
+    void setEscalate(boolean escalate);
+
+    /**
+     * Sets the time budget for patching a single file, in milliseconds.
+     * A file still being patched when its budget runs out is abandoned: its base
+     * file is output unchanged, the whole patch is written to the rejects with the
+     * reason, and the file counts as failed. With {@link #setEscalate(boolean)},
+     * the budget covers all modes tried. Defaults to 0, unlimited.
+     *
+     * @param fileTimeBudget The budget.
+     */
+    void setFileTimeBudget(int fileTimeBudget);
+
+    /**
+     * Sets the number of slowest files to log with the summary, with the
+     * time each took to patch. Defaults to 5, 0 to disable.
+     *
+     * @param slowestFiles The number of files.
+     */
+    void setSlowestFiles(int slowestFiles);
+
+    /**
+     * Sets a directory to store patch results in, keyed by the content of the
+     * base file, the patch and the options affecting the result. Files whose
+     * result is already stored are not patched again. The store may be shared
+     * between builds, worktrees and Gradle daemons, such as a directory in the
+     * Gradle user home. Disabled when null, the default.
+     * Can be a File, Supplier, Closure, String.
+     * A Supplier or Closure will be evaluated at task execution.
+     *
+     * @param resultStore The directory.
+     */
+    void setResultStore(Object resultStore);
+
+    /**
+     * Sets the maximum size of the persistent patch result store, in MiB.
+     * Once exceeded, the least recently used results are evicted at the end
+     * of a run. Defaults to 1024.
+     *
+     * @param resultStoreSize The size.
+     */
+    void setResultStoreSize(int resultStoreSize);
+
+    /**
+     * Sets the maximum size of files held in memory at once, in MiB.
+     * Trees are processed file by file, with output written as it goes,
+     * so this bounds the memory used across all threads. A single file
+     * larger than this is still processed, on its own. Defaults to 64,
+     * lower it for memory limited daemons.
+     *
+     * @param maxInFlight The size.
+     */
+    void setMaxInFlight(int maxInFlight);
+
     //Groovy magic overloads.
     //@formatter:off
     default void base(Object base) { setBase(base); }
@@ -233,5 +457,18 @@ public interface PatchSpec {
     default void verbose(boolean verbose) { setVerbose(verbose); }
     default void printSummary(boolean printSummary) { setPrintSummary(printSummary); }
     default void failOnError(boolean failOnError) { setFailOnError(failOnError); }
+    default void threads(int threads) { setThreads(threads); }
+    default void logFile(Object logFile) { setLogFile(logFile); }
+    default void lifecycleLogging(boolean lifecycleLogging) { setLifecycleLogging(lifecycleLogging); }
+    default void asyncLogging(boolean asyncLogging) { setAsyncLogging(asyncLogging); }
+    default void reportFile(Object reportFile) { setReportFile(reportFile); }
+    default void compressionLevel(int compressionLevel) { setCompressionLevel(compressionLevel); }
+    default void checkOnly(boolean checkOnly) { setCheckOnly(checkOnly); }
+    default void escalate(boolean escalate) { setEscalate(escalate); }
+    default void fileTimeBudget(int fileTimeBudget) { setFileTimeBudget(fileTimeBudget); }
+    default void slowestFiles(int slowestFiles) { setSlowestFiles(slowestFiles); }
+    default void resultStore(Object resultStore) { setResultStore(resultStore); }
+    default void resultStoreSize(int resultStoreSize) { setResultStoreSize(resultStoreSize); }
+    default void maxInFlight(int maxInFlight) { setMaxInFlight(maxInFlight); }
     //@formatter:on
 }
@@ -0,0 +1,168 @@
+package codechicken.diffpatch.gradle.patch;
+
+import codechicken.diffpatch.gradle.engine.PatchReport;
+import codechicken.diffpatch.gradle.service.MetricsService;
+import codechicken.diffpatch.gradle.service.PatchCacheService;
+import codechicken.diffpatch.gradle.service.ZipCacheService;
+import codechicken.diffpatch.gradle.util.WorkerIsolation;
+import codechicken.diffpatch.util.PatchMode;
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.workers.WorkAction;
+import org.gradle.workers.WorkParameters;
+import org.gradle.workers.WorkerExecutor;
+
+import java.io.File;
+
+/**
+ * Runs a {@link PatchAction} inside a Gradle worker.
+ * <p>
+ * Without isolation, the work uses the build's {@link MetricsService}, {@link PatchCacheService}
+ * and {@link ZipCacheService} like a task executing directly. Gradle can't pass build services
+ * into isolated workers, so with {@link WorkerIsolation#CLASSLOADER classloader} or
+ * {@link WorkerIsolation#PROCESS process} isolation no metrics are recorded, and every
+ * patch and zip is parsed afresh.
+ *
+ * @see #submit(WorkerExecutor, WorkerIsolation, PatchSpec, String, Provider, Provider, Provider)
+ */
+public abstract class PatchWorkAction implements WorkAction<PatchWorkAction.Parameters> {
+
+    private static final Logger LOGGER = Logging.getLogger(PatchWorkAction.class);
+
+    /**
+     * Submits the given {@link PatchSpec} for execution with the {@link WorkerExecutor}.
+     * All values are resolved immediately.
+     *
+     * @param executor          The {@link WorkerExecutor}.
+     * @param isolation         The isolation mode to run the work with.
+     * @param spec              The spec to execute.
+     * @param taskPath          The path of the task submitting the work, to record metrics against.
+     * @param metricsService    The build's metrics service.
+     * @param patchCacheService The build's patch cache service.
+     * @param zipCacheService   The build's zip cache service.
+     */
+    public static void submit(WorkerExecutor executor, WorkerIsolation isolation, PatchSpec spec, String taskPath, Provider<MetricsService> metricsService, Provider<PatchCacheService> patchCacheService, Provider<ZipCacheService> zipCacheService) {
+        if (isolation != WorkerIsolation.NONE) {
+            LOGGER.info("Metrics and the patch and zip caches are disabled for {}, build services are not available with {} isolation.", taskPath, isolation);
+        }
+        isolation.createQueue(executor).submit(PatchWorkAction.class, params -> {
+            params.getTaskPath().set(taskPath);
+            if (isolation == WorkerIsolation.NONE) {
+                params.getMetricsService().set(metricsService);
+                params.getPatchCacheService().set(patchCacheService);
+                params.getZipCacheService().set(zipCacheService);
+            }
+            params.getBase().set(absolute(spec.getBase()));
+            params.getPatches().set(absolute(spec.getPatches()));
+            params.getOutput().set(absolute(spec.getOutput()));
+            params.getRejects().set(absolute(spec.getRejects()));
+            params.getOutputFormat().set(spec.getOutputFormat());
+            params.getRejectsFormat().set(spec.getRejectsFormat());
+            params.getMinFuzzQuality().set(spec.getMinFuzzQuality());
+            params.getMaxFuzzOffset().set(spec.getMaxFuzzOffset());
+            params.getPatchMode().set(spec.getPatchMode());
+            params.getPatchesPrefix().set(spec.getPatchesPrefix());
+            params.getVerbose().set(spec.isVerbose());
+            params.getPrintSummary().set(spec.isPrintSummary());
+            params.getFailOnError().set(spec.isFailOnError());
+            params.getThreads().set(spec.getThreads());
+            params.getLogFile().set(absolute(spec.getLogFile()));
+            params.getLifecycleLogging().set(spec.isLifecycleLogging());
+            params.getAsyncLogging().set(spec.isAsyncLogging());
+            params.getReportFile().set(absolute(spec.getReportFile()));
+            params.getCompressionLevel().set(spec.getCompressionLevel());
+            params.getCheckOnly().set(spec.isCheckOnly());
+            params.getEscalate().set(spec.isEscalate());
+            params.getFileTimeBudget().set(spec.getFileTimeBudget());
+            params.getSlowestFiles().set(spec.getSlowestFiles());
+            params.getResultStore().set(absolute(spec.getResultStore()));
+            params.getResultStoreSize().set(spec.getResultStoreSize());
+            params.getMaxInFlight().set(spec.getMaxInFlight());
+        });
+    }
+
+    @Override
+    public void execute() {
+        Parameters params = getParameters();
+        PatchAction action = new PatchAction(Logging.getLogger(PatchAction.class));
+        action.setBase(params.getBase().getOrNull());
+        action.setPatches(params.getPatches().getOrNull());
+        action.setOutput(params.getOutput().getOrNull());
+        action.setRejects(params.getRejects().getOrNull());
+        action.setOutputFormat(params.getOutputFormat().getOrNull());
+        action.setRejectsFormat(params.getRejectsFormat().getOrNull());
+        action.setMinFuzzQuality(params.getMinFuzzQuality().get());
+        action.setMaxFuzzOffset(params.getMaxFuzzOffset().get());
+        action.setPatchMode(params.getPatchMode().get());
+        action.setPatchesPrefix(params.getPatchesPrefix().getOrNull());
+        action.setVerbose(params.getVerbose().get());
+        action.setPrintSummary(params.getPrintSummary().get());
+        action.setFailOnError(params.getFailOnError().get());
+        action.setThreads(params.getThreads().get());
+        action.setLogFile(params.getLogFile().getOrNull());
+        action.setLifecycleLogging(params.getLifecycleLogging().get());
+        action.setAsyncLogging(params.getAsyncLogging().get());
+        action.setReportFile(params.getReportFile().getOrNull());
+        action.setCompressionLevel(params.getCompressionLevel().get());
+        action.setCheckOnly(params.getCheckOnly().get());
+        action.setEscalate(params.getEscalate().get());
+        action.setFileTimeBudget(params.getFileTimeBudget().get());
+        action.setSlowestFiles(params.getSlowestFiles().get());
+        action.setResultStore(params.getResultStore().getOrNull());
+        action.setResultStoreSize(params.getResultStoreSize().get());
+        action.setMaxInFlight(params.getMaxInFlight().get());
+        if (params.getPatchCacheService().isPresent()) {
+            action.setPatchCache(params.getPatchCacheService().get().getCache());
+        }
+        if (params.getZipCacheService().isPresent()) {
+            action.setZipCache(params.getZipCacheService().get().getCache());
+        }
+        PatchReport report = action.execute();
+        if (params.getMetricsService().isPresent()) {
+            params.getMetricsService().get().record(params.getTaskPath().get(), "patch", report.getMetrics());
+        }
+    }
+
+    private static File absolute(File file) {
+        return file != null ? file.getAbsoluteFile() : null;
+    }
+
+    public interface Parameters extends WorkParameters {
+
+        //@formatter:off
+        Property<File> getBase();
+        Property<File> getPatches();
+        Property<File> getOutput();
+        Property<File> getRejects();
+        Property<ArchiveFormat> getOutputFormat();
+        Property<ArchiveFormat> getRejectsFormat();
+        Property<Float> getMinFuzzQuality();
+        Property<Integer> getMaxFuzzOffset();
+        Property<PatchMode> getPatchMode();
+        Property<String> getPatchesPrefix();
+        Property<Boolean> getVerbose();
+        Property<Boolean> getPrintSummary();
+        Property<Boolean> getFailOnError();
+        Property<Integer> getThreads();
+        Property<File> getLogFile();
+        Property<Boolean> getLifecycleLogging();
+        Property<Boolean> getAsyncLogging();
+        Property<File> getReportFile();
+        Property<Integer> getCompressionLevel();
+        Property<Boolean> getCheckOnly();
+        Property<Boolean> getEscalate();
+        Property<Integer> getFileTimeBudget();
+        Property<Integer> getSlowestFiles();
+        Property<File> getResultStore();
+        Property<Integer> getResultStoreSize();
+        Property<Integer> getMaxInFlight();
+        Property<String> getTaskPath();
+        Property<MetricsService> getMetricsService();
+        Property<PatchCacheService> getPatchCacheService();
+        Property<ZipCacheService> getZipCacheService();
+        //@formatter:on
+    }
+}
@@ -0,0 +1,183 @@
+package codechicken.diffpatch.gradle.service;
+
+import codechicken.diffpatch.gradle.engine.ExecutionMetrics;
+import codechicken.diffpatch.gradle.util.JsonWriter;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A {@link BuildService} which collects {@link ExecutionMetrics} from every diff and patch
+ * task in a build, and summarises them when the build finishes.
+ * <p>
+ * The summary is logged at lifecycle level when the {@value #PRINT_PROPERTY} project property
+ * is true, and at info level otherwise. It is written as JSON to the file given by the
+ * {@value #FILE_PROPERTY} project property, resolved against the root project.
+ * Alternatively, the service may be registered with its parameters before any task uses it:
+ * <pre>
+ * gradle.sharedServices.registerIfAbsent('diffPatchMetrics', MetricsService) {
+ *     parameters.printSummary = true
+ *     parameters.reportFile = file('build/diffpatch-metrics.json')
+ * }
+ * </pre>
+ */
+public abstract class MetricsService implements BuildService<MetricsService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "diffPatchMetrics";
+    public static final String PRINT_PROPERTY = "diffpatch.metrics";
+    public static final String FILE_PROPERTY = "diffpatch.metricsFile";
+
+    private static final Logger LOGGER = Logging.getLogger(MetricsService.class);
+
+    private final List<Entry> entries = new ArrayList<>();
+
+    /**
+     * Registers the service with the build, if it is not already.
+     *
+     * @param project The project registering the service.
+     * @return The provider for the service.
+     */
+    public static Provider<MetricsService> register(Project project) {
+        return project.getGradle().getSharedServices().registerIfAbsent(NAME, MetricsService.class, spec -> {
+            Object print = project.findProperty(PRINT_PROPERTY);
+            spec.getParameters().getPrintSummary().set(print != null && Boolean.parseBoolean(print.toString()));
+            Object file = project.findProperty(FILE_PROPERTY);
+            if (file != null) {
+                spec.getParameters().getReportFile().set(project.getRootProject().file(file));
+            }
+        });
+    }
+
+    /**
+     * Records the metrics for a task execution.
+     *
+     * @param taskPath The path of the task.
+     * @param kind     The kind of operation, 'diff' or 'patch'.
+     * @param metrics  The metrics.
+     */
+    public synchronized void record(String taskPath, String kind, ExecutionMetrics metrics) {
+        entries.add(new Entry(taskPath, kind, metrics));
+    }
+
+    /**
+     * @return The metrics recorded so far, summed by kind of operation.
+     */
+    public synchronized Map<String, ExecutionMetrics> getTotals() {
+        Map<String, ExecutionMetrics> totals = new TreeMap<>();
+        for (Entry entry : entries) {
+            totals.computeIfAbsent(entry.kind, e -> new ExecutionMetrics()).merge(entry.metrics);
+        }
+        return totals;
+    }
+
+    /**
+     * @return The human readable summary of the metrics recorded so far.
+     */
+    public synchronized List<String> getSummary() {
+        List<String> lines = new ArrayList<>();
+        if (entries.isEmpty()) {
+            return lines;
+        }
+        lines.add("DiffPatch metrics:");
+        for (Entry entry : entries) {
+            lines.add("  " + entry.taskPath + " (" + entry.kind + "): " + entry.metrics.summary());
+        }
+        getTotals().forEach((kind, metrics) -> lines.add("  Total " + kind + ": " + metrics.summary()));
+        return lines;
+    }
+
+    /**
+     * Writes the metrics recorded so far as JSON.
+     *
+     * @param file The file to write to.
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized void write(File file) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        try (JsonWriter json = new JsonWriter(Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8))) {
+            json.beginObject();
+            json.name("tasks").beginArray();
+            for (Entry entry : entries) {
+                json.beginObject();
+                json.name("path").value(entry.taskPath);
+                json.name("kind").value(entry.kind);
+                json.name("metrics");
+                entry.metrics.write(json);
+                json.endObject();
+            }
+            json.endArray();
+            json.name("totals").beginObject();
+            for (Map.Entry<String, ExecutionMetrics> entry : getTotals().entrySet()) {
+                json.name(entry.getKey());
+                entry.getValue().write(json);
+            }
+            json.endObject();
+            json.endObject();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        boolean print = getParameters().getPrintSummary().getOrElse(false);
+        for (String line : getSummary()) {
+            if (print) {
+                LOGGER.lifecycle(line);
+            } else {
+                LOGGER.info(line);
+            }
+        }
+        File file = getParameters().getReportFile().getOrNull();
+        if (file != null) {
+            try {
+                write(file);
+            } catch (IOException e) {
+                codechicken.diffpatch.util.Utils.throwUnchecked(e);
+            }
+        }
+    }
+
+    public interface Parameters extends BuildServiceParameters {
+
+        /**
+         * @return If the summary is logged at lifecycle level.
+         */
+        Property<Boolean> getPrintSummary();
+
+        /**
+         * @return The file to write the metrics to as JSON, optional.
+         */
+        Property<File> getReportFile();
+    }
+
+    private static class Entry {
+
+        private final String taskPath;
+        private final String kind;
+        private final ExecutionMetrics metrics;
+
+        private Entry(String taskPath, String kind, ExecutionMetrics metrics) {
+            this.taskPath = taskPath;
+            this.kind = kind;
+            this.metrics = metrics;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package codechicken.diffpatch.gradle.service;
+
+import codechicken.diffpatch.gradle.engine.PatchFileCache;
+import org.gradle.api.Project;
+import org.gradle.api.logging.Logger;
+import org.gradle.api.logging.Logging;
+import org.gradle.api.provider.Property;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * A {@link BuildService} providing the {@link PatchFileCache} shared by all patch tasks.
+ * <p>
+ * The cache itself lives for as long as the plugin's classes are loaded, so parsed patches
+ * are reused across builds in the same Gradle daemon. Its maximum size, in MiB, is set with the
+ * {@value #SIZE_PROPERTY} project property, defaulting to {@value #DEFAULT_SIZE_MB}. A size of 0
+ * disables the cache.
+ */
+public abstract class PatchCacheService implements BuildService<PatchCacheService.Parameters>, AutoCloseable {
+
+    public static final String NAME = "diffPatchPatchCache";
+    public static final String SIZE_PROPERTY = "diffpatch.patchCacheSize";
+    public static final long DEFAULT_SIZE_MB = 128;
+
+    private static final Logger LOGGER = Logging.getLogger(PatchCacheService.class);
+    private static final PatchFileCache CACHE = new PatchFileCache(DEFAULT_SIZE_MB * 1024 * 1024);
+
+    private final long startHits;
+    private final long startMisses;
+
+    public PatchCacheService() {
+        CACHE.setMaxBytes(getParameters().getMaxBytes().getOrElse(DEFAULT_SIZE_MB * 1024 * 1024));
+        startHits = CACHE.getHits();
+        startMisses = CACHE.getMisses();
+    }
+
+    /**
+     * Registers the service with the build, if it is not already.
+     *
+     * @param project The project registering the service.
+     * @return The provider for the service.
+     */
+    public static Provider<PatchCacheService> register(Project project) {
+        return project.getGradle().getSharedServices().registerIfAbsent(NAME, PatchCacheService.class, spec -> {
+            Object size = project.findProperty(SIZE_PROPERTY);
+            long sizeMb = size != null ? Long.parseLong(size.toString()) : DEFAULT_SIZE_MB;
+            spec.getParameters().getMaxBytes().set(sizeMb * 1024 * 1024);
+        });
+    }
+
+    /**
+     * @return The cache.
+     */
+    public PatchFileCache getCache() {
+        return CACHE;
+    }
+
+    @Override
+    public void close() {
+        LOGGER.info("Patch cache: {} hits, {} misses this build, {} entries, {} of {} bytes.",
+                CACHE.getHits() - startHits,
+                CACHE.getMisses() - startMisses,
+                CACHE.getCount(),
+                CACHE.getSize(),
+                CACHE.getMaxBytes()
+        );
+    }
+
+    public interface Parameters extends BuildServiceParameters {
+
+        /**
+         * @return The maximum estimated size of the cache, in bytes.
+         */
+        Property<Long> getMaxBytes();
+    }
+}
@@ -0,0 +1,41 @@
+package codechicken.diffpatch.gradle.service;
+
+import codechicken.diffpatch.gradle.util.ZipIndexCache;
+import org.gradle.api.Project;
+import org.gradle.api.provider.Provider;
+import org.gradle.api.services.BuildService;
+import org.gradle.api.services.BuildServiceParameters;
+
+/**
+ * A {@link BuildService} providing the {@link ZipIndexCache} shared by all patch tasks in a build,
+ * so a base or patches zip used by several tasks is indexed once.
+ * The cache holds no file handles, the indexes are dropped when the build finishes.
+ */
+public abstract class ZipCacheService implements BuildService<BuildServiceParameters.None>, AutoCloseable {
+
+    public static final String NAME = "diffPatchZipCache";
+
+    private final ZipIndexCache cache = new ZipIndexCache();
+
+    /**
+     * Registers the service with the build, if it is not already.
+     *
+     * @param project The project registering the service.
+     * @return The provider for the service.
+     */
+    public static Provider<ZipCacheService> register(Project project) {
+        return project.getGradle().getSharedServices().registerIfAbsent(NAME, ZipCacheService.class, spec -> { });
+    }
+
+    /**
+     * @return The cache.
+     */
+    public ZipIndexCache getCache() {
+        return cache;
+    }
+
+    @Override
+    public void close() {
+        cache.clear();
+    }
+}
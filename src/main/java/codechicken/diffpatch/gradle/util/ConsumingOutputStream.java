@@ -1,18 +1,28 @@
 package codechicken.diffpatch.gradle.util;
 
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.function.Consumer;
 
 /**
+ * An OutputStream which splits its input into UTF-8 lines,
+ * passing each completed line to a consumer.
+ * <p>
+ * Bytes are buffered until a line feed is found, so multi-byte
+ * characters are never split. Carriage returns preceding a
+ * line feed are stripped.
+ * <p>
  * Created by covers1624 on 20/12/18.
  */
 public class ConsumingOutputStream extends OutputStream {
 
-    private static final char CR = '\r';
-    private static final char LF = '\n';
+    private static final byte CR = '\r';
+    private static final byte LF = '\n';
 
     private final Consumer<String> consumer;
-    private final StringBuilder buffer = new StringBuilder();
+    private byte[] buffer = new byte[256];
+    private int length;
 
     public ConsumingOutputStream(Consumer<String> consumer) {
         this.consumer = consumer;
@@ -20,23 +30,59 @@ public class ConsumingOutputStream extends OutputStream {
 
     @Override
     public void write(int b) {
-        char ch = (char) (b & 0xFF);
-        if (ch == CR) {
+        if (b == LF) {
+            emit();
             return;
         }
-        buffer.append(ch);
-        if (ch == LF) {
-            flush();
+        ensureCapacity(length + 1);
+        buffer[length++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int end = off + len;
+        int start = off;
+        for (int i = off; i < end; i++) {
+            if (b[i] == LF) {
+                append(b, start, i - start);
+                emit();
+                start = i + 1;
+            }
         }
+        append(b, start, end - start);
     }
 
+    /**
+     * Flushes any partial line to the consumer.
+     */
     @Override
-    public void flush() {
-        String str = buffer.toString();
-        if (str.endsWith("\n")) {
-            str = str.replaceAll("\n", "");
-            consumer.accept(str);
-            buffer.setLength(0);
+    public void close() {
+        if (length != 0) {
+            emit();
+        }
+    }
+
+    private void append(byte[] b, int off, int len) {
+        if (len == 0) {
+            return;
+        }
+        ensureCapacity(length + len);
+        System.arraycopy(b, off, buffer, length, len);
+        length += len;
+    }
+
+    private void emit() {
+        int len = length;
+        if (len > 0 && buffer[len - 1] == CR) {
+            len--;
+        }
+        consumer.accept(new String(buffer, 0, len, StandardCharsets.UTF_8));
+        length = 0;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(capacity, buffer.length * 2));
         }
     }
 }
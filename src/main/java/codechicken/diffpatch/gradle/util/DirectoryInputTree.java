@@ -0,0 +1,96 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+
+/**
+ * An {@link InputTree} backed by a directory on disk.
+ */
+public class DirectoryInputTree implements InputTree {
+
+    /**
+     * Files smaller than this are read onto the heap by {@link #readBuffer(String)},
+     * as mapping them costs more than copying them.
+     */
+    private static final long MIN_MAP_SIZE = 64 * 1024;
+
+    private final Path root;
+    private SortedSet<String> paths;
+
+    public DirectoryInputTree(File dir, String prefix) {
+        Path root = dir.toPath();
+        if (prefix != null && !prefix.isEmpty()) {
+            root = root.resolve(prefix);
+        }
+        this.root = root;
+    }
+
+    @Override
+    public SortedSet<String> getPaths() throws IOException {
+        if (paths == null) {
+            SortedSet<String> paths = new TreeSet<>();
+            if (Files.isDirectory(root)) {
+                try (Stream<Path> stream = Files.walk(root)) {
+                    stream.filter(Files::isRegularFile)
+                            .forEach(e -> paths.add(root.relativize(e).toString().replace(File.separatorChar, '/')));
+                }
+            }
+            this.paths = Collections.unmodifiableSortedSet(paths);
+        }
+        return paths;
+    }
+
+    @Override
+    public byte[] read(String path) throws IOException {
+        Path file = root.resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        return Files.readAllBytes(file);
+    }
+
+    @Override
+    public long size(String path) throws IOException {
+        Path file = root.resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return -1;
+        }
+        return Files.size(file);
+    }
+
+    @Override
+    public ByteBuffer readBuffer(String path) throws IOException {
+        Path file = root.resolve(path);
+        if (!Files.isRegularFile(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < MIN_MAP_SIZE || size > Integer.MAX_VALUE) {
+                return ByteBuffer.wrap(Files.readAllBytes(file));
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+    }
+
+    /**
+     * @param path The path.
+     * @return The location of the given path on disk.
+     */
+    public Path resolve(String path) {
+        return root.resolve(path);
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,93 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+/**
+ * An {@link OutputTree} writing to a directory on disk.
+ * <p>
+ * The directory is synced in place: files whose content is unchanged are not rewritten,
+ * and files which existed but were not written again are deleted by {@link #finish()}.
+ */
+public class DirectoryOutputTree implements OutputTree {
+
+    private final File root;
+    private final Set<String> stale = new HashSet<>();
+
+    public DirectoryOutputTree(File root) throws IOException {
+        this.root = root;
+        if (root.isDirectory()) {
+            Path rootPath = root.toPath();
+            try (Stream<Path> stream = Files.walk(rootPath)) {
+                stream.filter(Files::isRegularFile)
+                        .forEach(e -> stale.add(rootPath.relativize(e).toString().replace(File.separatorChar, '/')));
+            }
+        } else {
+            Utils.deleteDirectory(root);
+        }
+    }
+
+    @Override
+    public void write(String path, byte[] bytes) throws IOException {
+        File file = new File(root, path);
+        if (stale.remove(path) && file.length() == bytes.length && Utils.contentEquals(file, bytes)) {
+            return;
+        }
+        Utils.writeFile(file, bytes);
+    }
+
+    /**
+     * Files copied from a directory are transferred on disk without being read into memory.
+     * A file with the same content as its source is skipped.
+     */
+    @Override
+    public long copy(InputTree from, String path) throws IOException {
+        if (!(from instanceof DirectoryInputTree)) {
+            return OutputTree.super.copy(from, path);
+        }
+        Path src = ((DirectoryInputTree) from).resolve(path);
+        Path dst = new File(root, path).toPath();
+        long size = Files.size(src);
+        if (stale.remove(path) && Files.size(dst) == size && Utils.contentEquals(src, dst)) {
+            return size;
+        }
+        if (dst.getParent() != null) {
+            Files.createDirectories(dst.getParent());
+        }
+        try (FileChannel in = FileChannel.open(src, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(dst, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long pos = 0;
+            while (pos < size) {
+                long n = in.transferTo(pos, size - pos, out);
+                if (n <= 0) {
+                    throw new IOException("Input changed whilst copying: " + src);
+                }
+                pos += n;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Deletes all files which were not written.
+     */
+    @Override
+    public void finish() throws IOException {
+        for (String path : stale) {
+            Utils.deleteFile(root, new File(root, path));
+        }
+        stale.clear();
+    }
+
+    @Override
+    public void close() {
+        stale.clear();
+    }
+}
@@ -0,0 +1,84 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.SortedSet;
+
+/**
+ * A read only view of a tree of files, either a directory or a zip archive.
+ * All paths are relative to the root of the tree and use <code>/</code> as a separator.
+ */
+public interface InputTree extends Closeable {
+
+    /**
+     * Opens the given file as an InputTree.
+     *
+     * @param file   The directory or zip file.
+     * @param prefix An optional prefix to only expose files under, stripped from all paths.
+     * @return The tree.
+     * @throws IOException If an IO error occurs.
+     */
+    static InputTree open(File file, String prefix) throws IOException {
+        if (file.isDirectory()) {
+            return new DirectoryInputTree(file, prefix);
+        }
+        if (isZip(file)) {
+            return new ZipInputTree(file, prefix);
+        }
+        throw new IllegalArgumentException("Unsupported input: " + file);
+    }
+
+    /**
+     * If the given file can be opened with {@link #open(File, String)}.
+     *
+     * @param file The file.
+     * @return If the file is supported.
+     */
+    static boolean isSupported(File file) {
+        return file.isDirectory() || isZip(file);
+    }
+
+    static boolean isZip(File file) {
+        String name = file.getName();
+        return file.isFile() && (name.endsWith(".zip") || name.endsWith(".jar"));
+    }
+
+    /**
+     * @return All file paths in this tree, sorted.
+     * @throws IOException If an IO error occurs.
+     */
+    SortedSet<String> getPaths() throws IOException;
+
+    /**
+     * Reads the given file from the tree.
+     *
+     * @param path The path.
+     * @return The bytes, or null if the file does not exist.
+     * @throws IOException If an IO error occurs.
+     */
+    byte[] read(String path) throws IOException;
+
+    /**
+     * Gets the size of the given file, without reading it.
+     *
+     * @param path The path.
+     * @return The size in bytes, or -1 if the file does not exist.
+     * @throws IOException If an IO error occurs.
+     */
+    long size(String path) throws IOException;
+
+    /**
+     * Reads the given file from the tree as a buffer, which may be
+     * memory mapped rather than copied onto the heap.
+     *
+     * @param path The path.
+     * @return The buffer, or null if the file does not exist.
+     * @throws IOException If an IO error occurs.
+     */
+    default ByteBuffer readBuffer(String path) throws IOException {
+        byte[] bytes = read(path);
+        return bytes != null ? ByteBuffer.wrap(bytes) : null;
+    }
+}
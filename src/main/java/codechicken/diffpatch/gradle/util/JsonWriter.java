@@ -0,0 +1,149 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * A minimal streaming JSON writer, used for reports.
+ * Output is indented with 2 spaces.
+ */
+public class JsonWriter implements Closeable {
+
+    private final Writer writer;
+    private final Deque<Boolean> hasElements = new ArrayDeque<>();
+    private boolean pendingName;
+
+    public JsonWriter(Writer writer) {
+        this.writer = writer;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        separate();
+        string(name);
+        writer.write(": ");
+        pendingName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        separate();
+        if (value == null) {
+            writer.write("null");
+        } else {
+            string(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separate();
+        writer.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        separate();
+        writer.write(Double.isFinite(value) ? Double.toString(value) : "null");
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separate();
+        writer.write(Boolean.toString(value));
+        return this;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.write('\n');
+        writer.close();
+    }
+
+    private JsonWriter open(char c) throws IOException {
+        separate();
+        writer.write(c);
+        hasElements.push(false);
+        return this;
+    }
+
+    private JsonWriter close(char c) throws IOException {
+        if (hasElements.pop()) {
+            newLine();
+        }
+        writer.write(c);
+        return this;
+    }
+
+    private void separate() throws IOException {
+        if (pendingName) {
+            pendingName = false;
+            return;
+        }
+        if (hasElements.isEmpty()) {
+            return;
+        }
+        if (hasElements.peek()) {
+            writer.write(',');
+        }
+        hasElements.pop();
+        hasElements.push(true);
+        newLine();
+    }
+
+    private void newLine() throws IOException {
+        writer.write('\n');
+        for (int i = 0; i < hasElements.size(); i++) {
+            writer.write("  ");
+        }
+    }
+
+    private void string(String str) throws IOException {
+        writer.write('"');
+        for (int i = 0; i < str.length(); i++) {
+            char c = str.charAt(i);
+            switch (c) {
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        writer.write(String.format("\\u%04x", (int) c));
+                    } else {
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
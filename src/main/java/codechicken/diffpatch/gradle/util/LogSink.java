@@ -0,0 +1,120 @@
+package codechicken.diffpatch.gradle.util;
+
+import org.gradle.api.logging.Logger;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/**
+ * A destination for diff and patch log lines.
+ * <p>
+ * Lines can be sent to the lifecycle logger, a log file, or both.
+ * When asynchronous, lines are queued and written by a background
+ * thread, so callers never block on Gradle's logger or disk.
+ */
+public class LogSink implements Consumer<String>, Closeable {
+
+    /**
+     * Queued to signal the background thread to stop. Compared by identity.
+     */
+    @SuppressWarnings("StringOperationCanBeSimplified")
+    private static final String END = new String("");
+
+    private final Logger logger;
+    private final BufferedWriter writer;
+    private final BlockingQueue<String> queue;
+    private final Thread thread;
+    private volatile Throwable failure;
+
+    /**
+     * Creates a new LogSink.
+     *
+     * @param logger  The logger to output lines to at lifecycle level, or null.
+     * @param logFile The file to write lines to, or null.
+     * @param async   If lines should be written by a background thread.
+     * @throws IOException If the log file could not be opened.
+     */
+    public LogSink(Logger logger, File logFile, boolean async) throws IOException {
+        this.logger = logger;
+        if (logFile != null) {
+            File parent = logFile.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                Files.createDirectories(parent.toPath());
+            }
+            writer = Files.newBufferedWriter(logFile.toPath(), StandardCharsets.UTF_8);
+        } else {
+            writer = null;
+        }
+        if (async) {
+            queue = new LinkedBlockingQueue<>();
+            thread = new Thread(this::run, "DiffPatch Log Sink");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            queue = null;
+            thread = null;
+        }
+    }
+
+    @Override
+    public void accept(String line) {
+        if (queue != null) {
+            queue.add(line);
+        } else {
+            write(line);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (thread != null) {
+            queue.add(END);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writer != null) {
+            writer.close();
+        }
+        if (failure != null) {
+            throw new IOException("Failed to write log.", failure);
+        }
+    }
+
+    private void run() {
+        try {
+            String line;
+            while ((line = queue.take()) != END) {
+                write(line);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable e) {
+            failure = e;
+        }
+    }
+
+    private void write(String line) {
+        if (logger != null) {
+            logger.lifecycle(line);
+        }
+        if (writer != null) {
+            try {
+                writer.write(line);
+                writer.newLine();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
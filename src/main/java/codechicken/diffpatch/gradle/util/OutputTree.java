@@ -0,0 +1,84 @@
+package codechicken.diffpatch.gradle.util;
+
+import codechicken.diffpatch.util.archiver.ArchiveFormat;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * A write only tree of files, either a directory or a zip archive.
+ * All paths are relative to the root of the tree and use <code>/</code> as a separator.
+ */
+public interface OutputTree extends Closeable {
+
+    /**
+     * Opens the given file as an OutputTree, replacing any existing content.
+     * Directories are synced in place, files which are not written again are deleted by {@link #finish()}.
+     * Archives are written beside the file, and only replace it on {@link #finish()}.
+     *
+     * @param file             The directory or archive file.
+     * @param format           The archive format, null for a directory.
+     * @param compressionLevel The compression level for archives, -1 for the default, 0 to store entries.
+     * @return The tree.
+     * @throws IOException If an IO error occurs.
+     */
+    static OutputTree open(File file, ArchiveFormat format, int compressionLevel) throws IOException {
+        if (format == null) {
+            return new DirectoryOutputTree(file);
+        }
+        if (format == ArchiveFormat.ZIP) {
+            return new ZipOutputTree(file, compressionLevel);
+        }
+        throw new IllegalArgumentException("Unsupported output format: " + format);
+    }
+
+    /**
+     * If the given format can be opened with {@link #open(File, ArchiveFormat, int)}.
+     *
+     * @param format The format.
+     * @return If the format is supported.
+     */
+    static boolean isSupported(ArchiveFormat format) {
+        return format == null || format == ArchiveFormat.ZIP;
+    }
+
+    /**
+     * Writes a file to the tree.
+     *
+     * @param path  The path.
+     * @param bytes The bytes.
+     * @throws IOException If an IO error occurs.
+     */
+    void write(String path, byte[] bytes) throws IOException;
+
+    /**
+     * Copies a file unchanged from an {@link InputTree}.
+     * Implementations avoid reading the file into memory where they can.
+     *
+     * @param from The tree to copy from.
+     * @param path The path, the same in both trees.
+     * @return The number of bytes in the file.
+     * @throws IOException If an IO error occurs.
+     */
+    default long copy(InputTree from, String path) throws IOException {
+        byte[] bytes = from.read(path);
+        if (bytes == null) {
+            throw new FileNotFoundException("Missing input: " + path);
+        }
+        write(path, bytes);
+        return bytes.length;
+    }
+
+    /**
+     * Marks the tree as completely written, called once a run has succeeded and
+     * before {@link #close()}. Trees synced in place only remove files which were
+     * not written again here, and archives only replace the previous archive here,
+     * so a failed run leaves the previous output in place.
+     *
+     * @throws IOException If an IO error occurs.
+     */
+    default void finish() throws IOException {
+    }
+}
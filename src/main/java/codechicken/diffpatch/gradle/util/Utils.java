@@ -1,27 +1,80 @@
 package codechicken.diffpatch.gradle.util;
 
+import codechicken.diffpatch.gradle.engine.DiffEngine;
 import codechicken.diffpatch.util.PatchMode;
 import codechicken.diffpatch.util.archiver.ArchiveFormat;
 import groovy.lang.Closure;
 import org.gradle.api.Project;
+import org.gradle.api.file.FileSystemLocation;
+import org.gradle.api.provider.Provider;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Locale;
 import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * Created by covers1624 on 14/8/20.
  */
 public class Utils {
 
-    public static File resolveFile(Project project, Object obj) {
-        if (obj instanceof Closure<?>) {
-            return resolveFile(project, ((Closure<?>) obj).call());
+    /**
+     * Resolves a file which must be absolute, for the actions, which have nothing to resolve relative paths against.
+     *
+     * @param obj The value, may be null.
+     * @return The file, or null if the value was null.
+     */
+    public static File resolveAbsoluteFile(Object obj) {
+        File file = resolveFile((File) null, obj);
+        if (file != null && !file.isAbsolute()) {
+            throw new IllegalStateException("Unable to resolve non absolute file without a Project: " + obj);
+        }
+        return file;
+    }
+
+    /**
+     * Resolves a file without a Project, for use where the Project may not be
+     * referenced, such as when Gradle's configuration cache is enabled.
+     * Supports the same values as {@link Project#file(Object)} for local files,
+     * plus Closures, Suppliers and Providers returning them.
+     *
+     * @param baseDir The directory relative paths are resolved against.
+     * @param obj     The value, may be null.
+     * @return The file, or null if the value was null.
+     */
+    public static File resolveFile(File baseDir, Object obj) {
+        if (obj == null) {
+            return null;
+        } else if (obj instanceof Closure<?>) {
+            return resolveFile(baseDir, ((Closure<?>) obj).call());
         } else if (obj instanceof Supplier<?>) {
-            return resolveFile(project, ((Supplier<?>) obj).get());
-        } else {
-            return project.file(obj);
+            return resolveFile(baseDir, ((Supplier<?>) obj).get());
+        } else if (obj instanceof Provider<?>) {
+            return resolveFile(baseDir, ((Provider<?>) obj).getOrNull());
+        } else if (obj instanceof FileSystemLocation) {
+            return ((FileSystemLocation) obj).getAsFile();
+        } else if (obj instanceof Path) {
+            return resolveFile(baseDir, ((Path) obj).toFile());
+        } else if (obj instanceof URI) {
+            return new File((URI) obj);
         }
+        File file = obj instanceof File ? (File) obj : new File(obj.toString());
+        return file.isAbsolute() ? file : new File(baseDir, file.getPath());
     }
 
     public static PatchMode resolvePatchMode(Object value) {
@@ -42,6 +95,42 @@ public class Utils {
         throw new IllegalArgumentException("Unable to parse PatchMode, Unknown value: " + value.toString());
     }
 
+    public static DiffEngine resolveDiffEngine(Object value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (value instanceof DiffEngine) {
+            return (DiffEngine) value;
+        }
+        if (value instanceof CharSequence) {
+            String upper = value.toString().toUpperCase(Locale.ROOT);
+            try {
+                return DiffEngine.valueOf(upper);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown DiffEngine String value: " + value.toString());
+            }
+        }
+        throw new IllegalArgumentException("Unable to parse DiffEngine, Unknown value: " + value.toString());
+    }
+
+    public static WorkerIsolation resolveWorkerIsolation(Object value) {
+        if (value == null) {
+            throw new NullPointerException("value");
+        }
+        if (value instanceof WorkerIsolation) {
+            return (WorkerIsolation) value;
+        }
+        if (value instanceof CharSequence) {
+            String upper = value.toString().toUpperCase(Locale.ROOT);
+            try {
+                return WorkerIsolation.valueOf(upper);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Unknown WorkerIsolation String value: " + value.toString());
+            }
+        }
+        throw new IllegalArgumentException("Unable to parse WorkerIsolation, Unknown value: " + value.toString());
+    }
+
     public static ArchiveFormat resolveArchiveFormat(Object value) {
         if (value == null) {
             throw new NullPointerException("value");
@@ -59,4 +148,249 @@ public class Utils {
         }
         throw new IllegalArgumentException("Unable to parse ArchiveFormat, Unknown value: " + value.toString());
     }
+
+    /**
+     * Splits the given UTF-8 bytes into lines, the same way DiffPatch reads files.
+     * Both <code>\n</code> and <code>\r\n</code> line endings are accepted.
+     *
+     * @param bytes The bytes.
+     * @return The lines.
+     */
+    public static List<String> splitLines(byte[] bytes) {
+        List<String> lines = new ArrayList<>();
+        String str = new String(bytes, StandardCharsets.UTF_8);
+        int start = 0;
+        int len = str.length();
+        while (start < len) {
+            int end = str.indexOf('\n', start);
+            int next = end + 1;
+            if (end == -1) {
+                end = len;
+                next = len;
+            }
+            int lineEnd = end > start && str.charAt(end - 1) == '\r' ? end - 1 : end;
+            lines.add(str.substring(start, lineEnd));
+            start = next;
+        }
+        return lines;
+    }
+
+    /**
+     * Joins the given lines back into UTF-8 bytes, terminating each line with <code>\n</code>.
+     *
+     * @param lines The lines.
+     * @return The bytes.
+     */
+    public static byte[] joinLines(List<String> lines) {
+        StringBuilder builder = new StringBuilder();
+        for (String line : lines) {
+            builder.append(line).append('\n');
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Computes the SHA-256 hash of the given bytes as a hex string.
+     *
+     * @param bytes The bytes, may be null.
+     * @return The hash, or null if bytes was null.
+     */
+    public static String hash(byte[] bytes) {
+        if (bytes == null) {
+            return null;
+        }
+        return toHex(sha256().digest(bytes));
+    }
+
+    /**
+     * Computes the SHA-256 hash of the remaining bytes in the given buffer as a hex string.
+     * The buffer's position is not changed.
+     *
+     * @param buffer The buffer.
+     * @return The hash.
+     */
+    public static String hash(ByteBuffer buffer) {
+        MessageDigest digest = sha256();
+        digest.update(buffer.duplicate());
+        return toHex(digest.digest());
+    }
+
+    /**
+     * Computes the SHA-256 hash of several byte arrays as a hex string.
+     * Each part is prefixed with its length, so different splits of the
+     * same bytes, and null parts, hash differently.
+     *
+     * @param parts The parts, each may be null.
+     * @return The hash.
+     */
+    public static String hash(byte[]... parts) {
+        MessageDigest digest = sha256();
+        ByteBuffer length = ByteBuffer.allocate(4);
+        for (byte[] part : parts) {
+            length.clear();
+            length.putInt(part != null ? part.length : -1);
+            digest.update(length.array());
+            if (part != null) {
+                digest.update(part);
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException("SHA-256 not available.", e);
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder builder = new StringBuilder(digest.length * 2);
+        for (byte b : digest) {
+            builder.append(Character.forDigit((b >> 4) & 0xF, 16));
+            builder.append(Character.forDigit(b & 0xF, 16));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Reads the given stream fully.
+     *
+     * @param is The stream.
+     * @return The bytes.
+     * @throws IOException If an IO error occurs.
+     */
+    public static byte[] toBytes(InputStream is) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            os.write(buffer, 0, len);
+        }
+        return os.toByteArray();
+    }
+
+    /**
+     * Gets the remaining bytes in the given buffer. If the buffer wraps
+     * an entire array, the array is returned without copying.
+     * The buffer's position is not changed.
+     *
+     * @param buffer The buffer, may be null.
+     * @return The bytes, or null if buffer was null.
+     */
+    public static byte[] toBytes(ByteBuffer buffer) {
+        if (buffer == null) {
+            return null;
+        }
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0 && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Writes the given bytes to a file, creating any parent directories.
+     *
+     * @param file  The file.
+     * @param bytes The bytes.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void writeFile(File file, byte[] bytes) throws IOException {
+        Path path = file.toPath();
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Files.write(path, bytes);
+    }
+
+    /**
+     * Checks if the given file has exactly the given content.
+     *
+     * @param file  The file.
+     * @param bytes The content.
+     * @return If the file exists with the same content.
+     * @throws IOException If an IO error occurs.
+     */
+    public static boolean contentEquals(File file, byte[] bytes) throws IOException {
+        if (!file.isFile() || file.length() != bytes.length) {
+            return false;
+        }
+        return Arrays.equals(Files.readAllBytes(file.toPath()), bytes);
+    }
+
+    /**
+     * Checks if two files have the same content, without reading either into memory.
+     *
+     * @param a The first file.
+     * @param b The second file.
+     * @return If both files exist and have the same content.
+     * @throws IOException If an IO error occurs.
+     */
+    public static boolean contentEquals(Path a, Path b) throws IOException {
+        if (!Files.isRegularFile(a) || !Files.isRegularFile(b) || Files.size(a) != Files.size(b)) {
+            return false;
+        }
+        try (DataInputStream ia = new DataInputStream(Files.newInputStream(a));
+             DataInputStream ib = new DataInputStream(Files.newInputStream(b))) {
+            byte[] bufA = new byte[8192];
+            byte[] bufB = new byte[8192];
+            for (long remaining = Files.size(a); remaining > 0; ) {
+                int len = (int) Math.min(bufA.length, remaining);
+                ia.readFully(bufA, 0, len);
+                ib.readFully(bufB, 0, len);
+                for (int i = 0; i < len; i++) {
+                    if (bufA[i] != bufB[i]) {
+                        return false;
+                    }
+                }
+                remaining -= len;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Deletes the given file if it exists, along with any parent directories
+     * left empty, stopping at <code>root</code>.
+     *
+     * @param root The root directory, never deleted.
+     * @param file The file.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void deleteFile(File root, File file) throws IOException {
+        if (!Files.deleteIfExists(file.toPath())) {
+            return;
+        }
+        File parent = file.getParentFile();
+        while (parent != null && !parent.equals(root)) {
+            String[] children = parent.list();
+            if (children == null || children.length != 0) {
+                break;
+            }
+            Files.delete(parent.toPath());
+            parent = parent.getParentFile();
+        }
+    }
+
+    /**
+     * Recursively deletes the given directory, if it exists.
+     *
+     * @param dir The directory.
+     * @throws IOException If an IO error occurs.
+     */
+    public static void deleteDirectory(File dir) throws IOException {
+        if (!dir.exists()) {
+            return;
+        }
+        try (Stream<Path> stream = Files.walk(dir.toPath())) {
+            List<Path> paths = new ArrayList<>();
+            stream.sorted(Comparator.reverseOrder()).forEach(paths::add);
+            for (Path path : paths) {
+                Files.delete(path);
+            }
+        }
+    }
 }
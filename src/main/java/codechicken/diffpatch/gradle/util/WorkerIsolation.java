@@ -0,0 +1,58 @@
+package codechicken.diffpatch.gradle.util;
+
+import codechicken.diffpatch.DiffPatch;
+import org.gradle.workers.WorkQueue;
+import org.gradle.workers.WorkerExecutor;
+
+import java.io.File;
+import java.net.URISyntaxException;
+
+/**
+ * The isolation to submit diff and patch operations to Gradle's
+ * {@link WorkerExecutor} with.
+ */
+public enum WorkerIsolation {
+    /**
+     * Work is run in the build's ClassLoader.
+     */
+    NONE,
+    /**
+     * Work is run in an isolated ClassLoader containing only DiffPatch and this plugin.
+     */
+    CLASSLOADER,
+    /**
+     * Work is run in a separate worker daemon process.
+     */
+    PROCESS;
+
+    /**
+     * Creates a {@link WorkQueue} for this isolation mode.
+     *
+     * @param executor The {@link WorkerExecutor}.
+     * @return The queue.
+     */
+    public WorkQueue createQueue(WorkerExecutor executor) {
+        switch (this) {
+            case NONE:
+                return executor.noIsolation();
+            case CLASSLOADER:
+                return executor.classLoaderIsolation(spec -> spec.getClasspath().from(getClasspath()));
+            case PROCESS:
+                return executor.processIsolation(spec -> spec.getClasspath().from(getClasspath()));
+            default:
+                throw new IllegalStateException("Unhandled WorkerIsolation: " + this);
+        }
+    }
+
+    private static Object[] getClasspath() {
+        return new Object[] { codeSource(DiffPatch.class), codeSource(WorkerIsolation.class) };
+    }
+
+    private static File codeSource(Class<?> clazz) {
+        try {
+            return new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (URISyntaxException e) {
+            throw new RuntimeException("Unable to find code source for: " + clazz.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/**
+ * The central directory of a zip file, indexed once on open.
+ * <p>
+ * The index holds no file handle. Entries are read with positional reads on a
+ * {@link FileChannel} owned by the caller, see {@link ZipIndexInputTree}, so a zip
+ * which is truncated or replaced after being indexed fails with an exception
+ * rather than crashing the JVM, and is never left locked. Every entry read is
+ * checked against the CRC in the central directory.
+ * <p>
+ * Instances are immutable and safe to read from multiple threads.
+ * Zip64 archives and archives over 2GiB are not supported, see {@link #open(File)}.
+ */
+public class ZipIndex {
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int END_SIZE = 22;
+    private static final int ZIP64_MAGIC = 0xFFFFFFFF;
+
+    private final File file;
+    private final long length;
+    private final long lastModified;
+    private final SortedMap<String, Entry> entries;
+
+    private ZipIndex(File file, long length, long lastModified, SortedMap<String, Entry> entries) {
+        this.file = file;
+        this.length = length;
+        this.lastModified = lastModified;
+        this.entries = Collections.unmodifiableSortedMap(entries);
+    }
+
+    /**
+     * Indexes the given zip file.
+     *
+     * @param file The file.
+     * @return The index, or null if the file is a zip this reader does not support.
+     * @throws IOException If an IO error occurs, or the file is not a valid zip.
+     */
+    public static ZipIndex open(File file) throws IOException {
+        long lastModified = file.lastModified();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length > Integer.MAX_VALUE) {
+                return null;
+            }
+            int tailLen = (int) Math.min(length, END_SIZE + 0xFFFF);
+            ByteBuffer tail = read(channel, length - tailLen, tailLen, file);
+            int end = findEnd(tail);
+            if (end == -1) {
+                throw new ZipException("Missing end of central directory: " + file);
+            }
+            int count = tail.getShort(end + 10) & 0xFFFF;
+            int dirSize = tail.getInt(end + 12);
+            int offset = tail.getInt(end + 16);
+            if (count == 0xFFFF || offset == ZIP64_MAGIC) {
+                return null;
+            }
+            if (dirSize < 0 || offset < 0 || (long) offset + dirSize > length) {
+                throw new ZipException("Invalid central directory: " + file);
+            }
+
+            ByteBuffer dir = read(channel, offset, dirSize, file);
+            SortedMap<String, Entry> entries = new TreeMap<>();
+            int pos = 0;
+            for (int i = 0; i < count; i++) {
+                if (pos + 46 > dirSize || dir.getInt(pos) != CENTRAL_HEADER) {
+                    throw new ZipException("Invalid central directory header at " + (offset + pos) + ": " + file);
+                }
+                int method = dir.getShort(pos + 10) & 0xFFFF;
+                int crc = dir.getInt(pos + 16);
+                int compressedSize = dir.getInt(pos + 20);
+                int size = dir.getInt(pos + 24);
+                int nameLen = dir.getShort(pos + 28) & 0xFFFF;
+                int extraLen = dir.getShort(pos + 30) & 0xFFFF;
+                int commentLen = dir.getShort(pos + 32) & 0xFFFF;
+                int headerOffset = dir.getInt(pos + 42);
+                if (compressedSize < 0 || size < 0 || headerOffset < 0) {
+                    //Either Zip64 values, or entries too large to read into an array.
+                    return null;
+                }
+                if (pos + 46 + nameLen > dirSize) {
+                    throw new ZipException("Invalid central directory header at " + (offset + pos) + ": " + file);
+                }
+                byte[] nameBytes = new byte[nameLen];
+                ByteBuffer dup = dir.duplicate();
+                dup.position(pos + 46);
+                dup.get(nameBytes);
+                String name = new String(nameBytes, StandardCharsets.UTF_8);
+                if (!name.endsWith("/")) {
+                    entries.put(name, new Entry(method, crc, headerOffset, compressedSize, size));
+                }
+                pos += 46 + nameLen + extraLen + commentLen;
+            }
+            return new ZipIndex(file, length, lastModified, entries);
+        }
+    }
+
+    private static int findEnd(ByteBuffer buffer) {
+        for (int i = buffer.limit() - END_SIZE; i >= 0; i--) {
+            if (buffer.getInt(i) == END_HEADER) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return If the file has not been modified since it was indexed.
+     */
+    public boolean isCurrent() {
+        return file.length() == length && file.lastModified() == lastModified;
+    }
+
+    /**
+     * Reads and inflates an entry, checking its CRC.
+     *
+     * @param channel A channel open on this index's file.
+     * @param name    The entry name.
+     * @return The bytes, or null if the entry does not exist.
+     * @throws IOException If the entry is invalid, or does not match its CRC.
+     */
+    public byte[] read(FileChannel channel, String name) throws IOException {
+        Entry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        return decode(name, entry, readStored(channel, name, entry));
+    }
+
+    /**
+     * Gets the stored data of an entry, without inflating it into the result.
+     * The data is still inflated once to check its CRC, which is far cheaper than
+     * the deflate it lets a copy skip.
+     *
+     * @param channel A channel open on this index's file.
+     * @param name    The entry name.
+     * @param entry   The entry.
+     * @return A buffer over the entry's data, compressed with the entry's method.
+     * @throws IOException If the entry is invalid, or does not match its CRC.
+     */
+    public ByteBuffer getRawData(FileChannel channel, String name, Entry entry) throws IOException {
+        ByteBuffer data = readStored(channel, name, entry);
+        decode(name, entry, data.duplicate());
+        return data;
+    }
+
+    private ByteBuffer readStored(FileChannel channel, String name, Entry entry) throws IOException {
+        ByteBuffer header = read(channel, entry.headerOffset, 30, file);
+        if (header.getInt(0) != LOCAL_HEADER) {
+            throw new ZipException("Invalid local header for " + name + ": " + file);
+        }
+        long dataStart = (long) entry.headerOffset + 30 + (header.getShort(26) & 0xFFFF) + (header.getShort(28) & 0xFFFF);
+        //Inflater in nowrap mode may require an extra byte after the compressed data, so one is left spare.
+        ByteBuffer data = ByteBuffer.allocate(entry.compressedSize + 1);
+        data.limit(entry.compressedSize);
+        readFully(channel, dataStart, data, file);
+        data.flip();
+        return data;
+    }
+
+    private byte[] decode(String name, Entry entry, ByteBuffer data) throws IOException {
+        byte[] out;
+        if (entry.method == 0) {
+            if (data.remaining() != entry.size) {
+                throw new ZipException("Invalid size for stored entry " + name + ": " + file);
+            }
+            out = new byte[entry.size];
+            data.get(out);
+        } else if (entry.method == 8) {
+            out = inflate(name, entry, data);
+        } else {
+            throw new ZipException("Unsupported compression method " + entry.method + " for " + name + ": " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(out);
+        if ((int) crc.getValue() != entry.crc) {
+            throw new ZipException("CRC mismatch for " + name + ": " + file);
+        }
+        return out;
+    }
+
+    private byte[] inflate(String name, Entry entry, ByteBuffer data) throws IOException {
+        byte[] out = new byte[entry.size];
+        Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(data.array(), data.arrayOffset() + data.position(), data.remaining() + 1);
+            int len = 0;
+            while (len < out.length) {
+                int n = inflater.inflate(out, len, out.length - len);
+                if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                len += n;
+            }
+            if (len != out.length) {
+                throw new ZipException("Truncated entry " + name + ": " + file);
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid compressed data for " + name + ": " + file + ", " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        return out;
+    }
+
+    private static ByteBuffer read(FileChannel channel, long pos, int len, File file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(channel, pos, buffer, file);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void readFully(FileChannel channel, long pos, ByteBuffer buffer, File file) throws IOException {
+        long start = pos - buffer.position();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new ZipException("Unexpected end of zip, it may have been truncated: " + file);
+            }
+        }
+    }
+
+    //@formatter:off
+    public File getFile() { return file; }
+    /** @return All file entries by name, sorted. Directory entries are excluded. */
+    public SortedMap<String, Entry> getEntries() { return entries; }
+    //@formatter:on
+
+    /**
+     * The location of an entry within the zip.
+     */
+    public static class Entry {
+
+        private final int method;
+        private final int crc;
+        private final int headerOffset;
+        private final int compressedSize;
+        private final int size;
+
+        private Entry(int method, int crc, int headerOffset, int compressedSize, int size) {
+            this.method = method;
+            this.crc = crc;
+            this.headerOffset = headerOffset;
+            this.compressedSize = compressedSize;
+            this.size = size;
+        }
+
+        //@formatter:off
+        public int getMethod() { return method; }
+        public int getCrc() { return crc; }
+        public int getHeaderOffset() { return headerOffset; }
+        public int getCompressedSize() { return compressedSize; }
+        public int getSize() { return size; }
+        //@formatter:on
+    }
+}
@@ -0,0 +1,66 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Holds {@link ZipIndex}es so a zip used as input by multiple tasks is only indexed once.
+ * A zip is indexed again if it has been modified since it was indexed.
+ * <p>
+ * Only the indexes are shared, no file handles are held. Each tree opened from the
+ * cache opens the zip itself, and releases it when closed at the end of the task
+ * execution using it.
+ */
+public class ZipIndexCache {
+
+    private final Map<File, ZipIndex> zips = new HashMap<>();
+
+    /**
+     * Opens the given file as an {@link InputTree}, using a shared {@link ZipIndex} for zips
+     * where possible, and {@link InputTree#open} otherwise.
+     *
+     * @param file   The directory or zip file.
+     * @param prefix An optional prefix to only expose files under, stripped from all paths.
+     * @return The tree.
+     * @throws IOException If an IO error occurs.
+     */
+    public InputTree open(File file, String prefix) throws IOException {
+        if (InputTree.isZip(file)) {
+            ZipIndex zip = get(file);
+            if (zip != null) {
+                return new ZipIndexInputTree(zip, prefix);
+            }
+        }
+        return InputTree.open(file, prefix);
+    }
+
+    /**
+     * Gets the shared {@link ZipIndex} for a file, indexing it if required.
+     *
+     * @param file The zip file.
+     * @return The index, or null if {@link ZipIndex} does not support the zip.
+     * @throws IOException If an IO error occurs.
+     */
+    public synchronized ZipIndex get(File file) throws IOException {
+        File key = file.getAbsoluteFile();
+        ZipIndex zip = zips.get(key);
+        if (zip == null || !zip.isCurrent()) {
+            zip = ZipIndex.open(key);
+            if (zip != null) {
+                zips.put(key, zip);
+            } else {
+                zips.remove(key);
+            }
+        }
+        return zip;
+    }
+
+    /**
+     * Drops all held indexes.
+     */
+    public synchronized void clear() {
+        zips.clear();
+    }
+}
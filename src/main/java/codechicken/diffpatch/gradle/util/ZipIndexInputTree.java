@@ -0,0 +1,75 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.SortedSet;
+import java.util.TreeSet;
+
+/**
+ * An {@link InputTree} view of a {@link ZipIndex}.
+ * The index may be shared, but the file is opened by this tree, and released when it is closed.
+ */
+public class ZipIndexInputTree implements InputTree {
+
+    private final ZipIndex index;
+    private final String strip;
+    private final SortedSet<String> paths = new TreeSet<>();
+    private final FileChannel channel;
+
+    public ZipIndexInputTree(ZipIndex index, String prefix) throws IOException {
+        this.index = index;
+        strip = prefix == null || prefix.isEmpty() ? "" : prefix.endsWith("/") ? prefix : prefix + "/";
+        for (String name : index.getEntries().keySet()) {
+            if (name.startsWith(strip)) {
+                paths.add(name.substring(strip.length()));
+            }
+        }
+        channel = FileChannel.open(index.getFile().toPath(), StandardOpenOption.READ);
+    }
+
+    @Override
+    public SortedSet<String> getPaths() {
+        return Collections.unmodifiableSortedSet(paths);
+    }
+
+    @Override
+    public byte[] read(String path) throws IOException {
+        return index.read(channel, strip + path);
+    }
+
+    @Override
+    public long size(String path) {
+        ZipIndex.Entry entry = getEntry(path);
+        return entry != null ? entry.getSize() : -1;
+    }
+
+    /**
+     * Gets the raw entry for a path, to copy it without inflating.
+     *
+     * @param path The path.
+     * @return The entry, or null if the file does not exist.
+     */
+    public ZipIndex.Entry getEntry(String path) {
+        return index.getEntries().get(strip + path);
+    }
+
+    /**
+     * Gets the stored, possibly compressed, data of an entry.
+     *
+     * @param path  The path.
+     * @param entry The entry from {@link #getEntry(String)}.
+     * @return A buffer over the data.
+     * @throws IOException If the entry is invalid, or does not match its CRC.
+     */
+    public ByteBuffer getRawData(String path, ZipIndex.Entry entry) throws IOException {
+        return index.getRawData(channel, strip + path, entry);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,63 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * An {@link InputTree} backed by a zip file.
+ */
+public class ZipInputTree implements InputTree {
+
+    private final ZipFile zipFile;
+    private final SortedMap<String, ZipEntry> entries = new TreeMap<>();
+
+    public ZipInputTree(File file, String prefix) throws IOException {
+        zipFile = new ZipFile(file);
+        String strip = prefix == null || prefix.isEmpty() ? "" : prefix.endsWith("/") ? prefix : prefix + "/";
+        Enumeration<? extends ZipEntry> enumeration = zipFile.entries();
+        while (enumeration.hasMoreElements()) {
+            ZipEntry entry = enumeration.nextElement();
+            String name = entry.getName();
+            if (entry.isDirectory() || !name.startsWith(strip)) {
+                continue;
+            }
+            entries.put(name.substring(strip.length()), entry);
+        }
+    }
+
+    @Override
+    public SortedSet<String> getPaths() {
+        return Collections.unmodifiableSortedSet(new TreeSet<>(entries.keySet()));
+    }
+
+    @Override
+    public byte[] read(String path) throws IOException {
+        ZipEntry entry = entries.get(path);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = zipFile.getInputStream(entry)) {
+            return Utils.toBytes(is);
+        }
+    }
+
+    @Override
+    public long size(String path) {
+        ZipEntry entry = entries.get(path);
+        return entry != null ? entry.getSize() : -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        zipFile.close();
+    }
+}
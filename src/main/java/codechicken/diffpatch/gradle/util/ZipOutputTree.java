@@ -0,0 +1,300 @@
+package codechicken.diffpatch.gradle.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * An {@link OutputTree} writing to a zip file.
+ * Entries are written in the order they are provided, with a
+ * fixed timestamp so archives are reproducible.
+ * <p>
+ * Output is buffered in large blocks and written straight to the file channel.
+ * Entries are deflated at the configured level, or stored when the level is 0
+ * or compression would not make them smaller.
+ * <p>
+ * Entries copied from a {@link ZipIndexInputTree} are written with their
+ * compressed data as-is, without being inflated and deflated again.
+ * <p>
+ * The archive is written to a temporary file beside it, which only replaces
+ * the archive once {@link #finish()} is called. Closing without finishing
+ * deletes the temporary file, leaving any previous archive untouched.
+ */
+public class ZipOutputTree implements OutputTree {
+
+    /**
+     * The timestamp given to all entries, the same constant Gradle uses for reproducible archives.
+     */
+    public static final long ENTRY_TIME = new GregorianCalendar(1980, Calendar.FEBRUARY, 1, 0, 0, 0).getTimeInMillis();
+
+    private static final int LOCAL_HEADER = 0x04034b50;
+    private static final int CENTRAL_HEADER = 0x02014b50;
+    private static final int END_HEADER = 0x06054b50;
+    private static final int ZIP64_END_HEADER = 0x06064b50;
+    private static final int ZIP64_LOCATOR = 0x07064b50;
+    private static final int UTF8_FLAG = 1 << 11;
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long MAX_32 = 0xFFFFFFFFL;
+    private static final int MAX_16 = 0xFFFF;
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Path file;
+    private final Path tmp;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+    private final Deflater deflater;
+    private final CRC32 crc = new CRC32();
+    private final List<CentralEntry> entries = new ArrayList<>();
+    private final int dosTime;
+    private final int dosDate;
+    private byte[] deflateBuffer = new byte[64 * 1024];
+    private long offset;
+    private boolean finished;
+
+    public ZipOutputTree(File file) throws IOException {
+        this(file, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param file             The zip file to write.
+     * @param compressionLevel The compression level, -1 for the default, 0 to store entries.
+     * @throws IOException If an IO error occurs.
+     */
+    public ZipOutputTree(File file, int compressionLevel) throws IOException {
+        if (compressionLevel < -1 || compressionLevel > 9) {
+            throw new IllegalArgumentException("Invalid compression level: " + compressionLevel);
+        }
+        deflater = compressionLevel != 0 ? new Deflater(compressionLevel, true) : null;
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            Files.createDirectories(parent.toPath());
+        }
+        this.file = file.toPath();
+        tmp = this.file.resolveSibling(file.getName() + "." + UUID.randomUUID() + ".tmp");
+        channel = FileChannel.open(tmp, StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+        Calendar cal = new GregorianCalendar();
+        cal.setTimeInMillis(ENTRY_TIME);
+        dosTime = cal.get(Calendar.HOUR_OF_DAY) << 11 | cal.get(Calendar.MINUTE) << 5 | cal.get(Calendar.SECOND) >> 1;
+        dosDate = (cal.get(Calendar.YEAR) - 1980) << 9 | (cal.get(Calendar.MONTH) + 1) << 5 | cal.get(Calendar.DAY_OF_MONTH);
+    }
+
+    @Override
+    public void write(String path, byte[] bytes) throws IOException {
+        crc.reset();
+        crc.update(bytes);
+        int len = deflater != null ? deflate(bytes) : bytes.length;
+        if (len < bytes.length) {
+            writeEntry(path, DEFLATED, (int) crc.getValue(), bytes.length, ByteBuffer.wrap(deflateBuffer, 0, len));
+        } else {
+            writeEntry(path, STORED, (int) crc.getValue(), bytes.length, ByteBuffer.wrap(bytes));
+        }
+    }
+
+    @Override
+    public long copy(InputTree from, String path) throws IOException {
+        if (!(from instanceof ZipIndexInputTree)) {
+            return OutputTree.super.copy(from, path);
+        }
+        ZipIndexInputTree zipTree = (ZipIndexInputTree) from;
+        ZipIndex.Entry entry = zipTree.getEntry(path);
+        if (entry == null || (entry.getMethod() != STORED && entry.getMethod() != DEFLATED)) {
+            return OutputTree.super.copy(from, path);
+        }
+        writeEntry(path, entry.getMethod(), entry.getCrc(), entry.getSize(), zipTree.getRawData(path, entry));
+        return entry.getSize();
+    }
+
+    private int deflate(byte[] bytes) {
+        deflater.reset();
+        deflater.setInput(bytes);
+        deflater.finish();
+        int len = 0;
+        while (!deflater.finished()) {
+            if (len == deflateBuffer.length) {
+                byte[] newBuffer = new byte[deflateBuffer.length * 2];
+                System.arraycopy(deflateBuffer, 0, newBuffer, 0, len);
+                deflateBuffer = newBuffer;
+            }
+            len += deflater.deflate(deflateBuffer, len, deflateBuffer.length - len);
+        }
+        return len;
+    }
+
+    private void writeEntry(String path, int method, int crc, long size, ByteBuffer data) throws IOException {
+        byte[] name = path.getBytes(StandardCharsets.UTF_8);
+        long compressedSize = data.remaining();
+        entries.add(new CentralEntry(name, method, crc, compressedSize, size, offset));
+
+        ensure(30 + name.length);
+        buffer.putInt(LOCAL_HEADER);
+        buffer.putShort((short) 20);
+        buffer.putShort((short) UTF8_FLAG);
+        buffer.putShort((short) method);
+        buffer.putShort((short) dosTime);
+        buffer.putShort((short) dosDate);
+        buffer.putInt(crc);
+        buffer.putInt((int) compressedSize);
+        buffer.putInt((int) size);
+        buffer.putShort((short) name.length);
+        buffer.putShort((short) 0);
+        buffer.put(name);
+        offset += 30 + name.length;
+        put(data);
+        offset += compressedSize;
+    }
+
+    /**
+     * Writes the central directory, then moves the archive into place. Zip64 end records
+     * are written if there are more than 65535 entries or the archive is larger than 4GiB.
+     */
+    @Override
+    public void finish() throws IOException {
+        long cdStart = offset;
+        for (CentralEntry entry : entries) {
+            boolean zip64 = entry.offset >= MAX_32;
+            ensure(46 + entry.name.length + (zip64 ? 12 : 0));
+            buffer.putInt(CENTRAL_HEADER);
+            buffer.putShort((short) (zip64 ? 45 : 20));
+            buffer.putShort((short) (zip64 ? 45 : 20));
+            buffer.putShort((short) UTF8_FLAG);
+            buffer.putShort((short) entry.method);
+            buffer.putShort((short) dosTime);
+            buffer.putShort((short) dosDate);
+            buffer.putInt(entry.crc);
+            buffer.putInt((int) entry.compressedSize);
+            buffer.putInt((int) entry.size);
+            buffer.putShort((short) entry.name.length);
+            buffer.putShort((short) (zip64 ? 12 : 0));
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putShort((short) 0);
+            buffer.putInt(0);
+            buffer.putInt(zip64 ? (int) MAX_32 : (int) entry.offset);
+            buffer.put(entry.name);
+            if (zip64) {
+                buffer.putShort((short) 0x0001);
+                buffer.putShort((short) 8);
+                buffer.putLong(entry.offset);
+            }
+            offset += 46 + entry.name.length + (zip64 ? 12 : 0);
+        }
+        long cdSize = offset - cdStart;
+        boolean zip64 = entries.size() >= MAX_16 || cdStart >= MAX_32 || cdSize >= MAX_32;
+        if (zip64) {
+            long zip64End = offset;
+            ensure(56 + 20);
+            buffer.putInt(ZIP64_END_HEADER);
+            buffer.putLong(44);
+            buffer.putShort((short) 45);
+            buffer.putShort((short) 45);
+            buffer.putInt(0);
+            buffer.putInt(0);
+            buffer.putLong(entries.size());
+            buffer.putLong(entries.size());
+            buffer.putLong(cdSize);
+            buffer.putLong(cdStart);
+            buffer.putInt(ZIP64_LOCATOR);
+            buffer.putInt(0);
+            buffer.putLong(zip64End);
+            buffer.putInt(1);
+        }
+        ensure(22);
+        buffer.putInt(END_HEADER);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) Math.min(entries.size(), MAX_16));
+        buffer.putShort((short) Math.min(entries.size(), MAX_16));
+        buffer.putInt((int) Math.min(cdSize, MAX_32));
+        buffer.putInt((int) Math.min(cdStart, MAX_32));
+        buffer.putShort((short) 0);
+        flush();
+        channel.close();
+        try {
+            Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finished = true;
+    }
+
+    /**
+     * Releases the archive, deleting the temporary file if {@link #finish()} was not called.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (deflater != null) {
+                deflater.end();
+            }
+            channel.close();
+        } finally {
+            if (!finished) {
+                Files.deleteIfExists(tmp);
+            }
+        }
+    }
+
+    private void ensure(int len) throws IOException {
+        if (buffer.remaining() < len) {
+            flush();
+        }
+    }
+
+    private void put(ByteBuffer data) throws IOException {
+        if (data.remaining() <= buffer.remaining()) {
+            buffer.put(data);
+            return;
+        }
+        flush();
+        if (data.remaining() <= buffer.remaining()) {
+            buffer.put(data);
+            return;
+        }
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    private static class CentralEntry {
+
+        private final byte[] name;
+        private final int method;
+        private final int crc;
+        private final long compressedSize;
+        private final long size;
+        private final long offset;
+
+        private CentralEntry(byte[] name, int method, int crc, long compressedSize, long size, long offset) {
+            this.name = name;
+            this.method = method;
+            this.crc = crc;
+            this.compressedSize = compressedSize;
+            this.size = size;
+            this.offset = offset;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package codechicken.diffpatch.gradle.diff;
+
+import codechicken.diffpatch.gradle.engine.DiffReport;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link DiffManifest} survives a save and load, and merges the reports of an incremental execution.
+ */
+public class DiffManifestTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSaveLoad() throws IOException {
+        File file = new File(temp.getRoot(), "tmp/diff-manifest.tsv");
+        assertNull(DiffManifest.load(file));
+
+        DiffManifest manifest = new DiffManifest();
+        manifest.put(report("b.txt", DiffReport.Status.MODIFIED, null));
+        manifest.put(report("a.txt", DiffReport.Status.ADDED, "Hunk 1\tfailed\r\nat line 3 \\ end"));
+        manifest.put(report("c.txt", DiffReport.Status.REMOVED, ""));
+        manifest.save(file);
+
+        DiffManifest loaded = DiffManifest.load(file);
+        assertNotNull(loaded);
+        List<DiffReport.FileReport> files = loaded.getFiles();
+        assertEquals(Arrays.asList("a.txt", "b.txt", "c.txt"), paths(files));
+        DiffReport.FileReport a = files.get(0);
+        assertEquals(DiffReport.Status.ADDED, a.getStatus());
+        assertEquals(2, a.getHunks());
+        assertEquals(100, a.getBytesRead());
+        assertEquals(50, a.getBytesWritten());
+        assertEquals(1234, a.getElapsedNanos());
+        assertEquals("Hunk 1\tfailed\r\nat line 3 \\ end", a.getVerifyError());
+        assertNull(files.get(1).getVerifyError());
+        assertEquals("", files.get(2).getVerifyError());
+    }
+
+    @Test
+    public void testMalformed() throws IOException {
+        File file = temp.newFile("diff-manifest.tsv");
+        Files.write(file.toPath(), "a.txt\tMODIFIED\t1\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(DiffManifest.load(file));
+        Files.write(file.toPath(), "a.txt\tRENAMED\t1\t2\t3\t4\t-\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(DiffManifest.load(file));
+        Files.write(file.toPath(), "a.txt\tMODIFIED\tone\t2\t3\t4\t-\n".getBytes(StandardCharsets.UTF_8));
+        assertNull(DiffManifest.load(file));
+    }
+
+    @Test
+    public void testUpdate() {
+        DiffManifest manifest = new DiffManifest();
+        manifest.put(report("kept.txt", DiffReport.Status.MODIFIED, null));
+        manifest.put(report("now-identical.txt", DiffReport.Status.MODIFIED, null));
+        manifest.put(report("rediffed.txt", DiffReport.Status.MODIFIED, "Failed."));
+
+        //Only the dirty files were diffed again, everything else keeps its previous report.
+        manifest.update(
+                Arrays.asList("now-identical.txt", "rediffed.txt", "added.txt", "still-identical.txt"),
+                Arrays.asList(report("rediffed.txt", DiffReport.Status.MODIFIED, null), report("added.txt", DiffReport.Status.ADDED, null))
+        );
+        List<DiffReport.FileReport> files = manifest.getFiles();
+        assertEquals(Arrays.asList("added.txt", "kept.txt", "rediffed.txt"), paths(files));
+        assertEquals(DiffReport.Status.ADDED, files.get(0).getStatus());
+        assertNull(files.get(2).getVerifyError());
+
+        manifest.update(Collections.singletonList("kept.txt"), Collections.emptyList());
+        assertEquals(Arrays.asList("added.txt", "rediffed.txt"), paths(manifest.getFiles()));
+    }
+
+    private static DiffReport.FileReport report(String path, DiffReport.Status status, String verifyError) {
+        return new DiffReport.FileReport(path, status, 2, 100, 50, 1234, verifyError);
+    }
+
+    private static List<String> paths(List<DiffReport.FileReport> files) {
+        return files.stream().map(DiffReport.FileReport::getPath).collect(Collectors.toList());
+    }
+}
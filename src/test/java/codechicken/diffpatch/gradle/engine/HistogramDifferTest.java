@@ -0,0 +1,132 @@
+package codechicken.diffpatch.gradle.engine;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Round trips {@link HistogramDiffer} output through DiffPatch, diffing each pair of
+ * inputs then applying the written patch to the base, which must give back the modified lines.
+ */
+public class HistogramDifferTest {
+
+    @Test
+    public void testBothEmpty() {
+        List<String> empty = Collections.emptyList();
+        assertEquals(0, new HistogramDiffer().match(empty, empty).length);
+        assertFalse(diff(empty, empty).isChanged());
+    }
+
+    @Test
+    public void testIdentical() {
+        List<String> lines = lines("a", "b", "c");
+        assertArrayEquals(new int[] { 0, 1, 2 }, new HistogramDiffer().match(lines, lines));
+        assertFalse(diff(lines, lines).isChanged());
+    }
+
+    @Test
+    public void testAllInserted() {
+        roundTrip(Collections.emptyList(), lines("a", "b", "c"));
+    }
+
+    @Test
+    public void testAllDeleted() {
+        roundTrip(lines("a", "b", "c"), Collections.emptyList());
+    }
+
+    @Test
+    public void testAllReplaced() {
+        roundTrip(lines("a", "b", "c"), lines("d", "e", "f"));
+    }
+
+    @Test
+    public void testRepeatedLines() {
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            base.add("    public void method" + i + "() {");
+            base.add("        if (flag) {");
+            base.add("            call" + i + "();");
+            base.add("        }");
+            base.add("    }");
+            base.add("");
+        }
+        List<String> modified = new ArrayList<>(base);
+        modified.add(600, "        }");
+        modified.add(600, "            extra();");
+        modified.add(600, "        if (other) {");
+        modified.remove(300);
+        modified.remove(300);
+        modified.set(900, "    }");
+        roundTrip(base, modified);
+    }
+
+    @Test
+    public void testOnlyRepeatedLines() {
+        roundTrip(lines("}", "}", "}", "", "}", "}"), lines("}", "", "}", "}", "", "}", "}", "}"));
+    }
+
+    @Test
+    public void testLargeEdit() {
+        Random rand = new Random(1);
+        List<String> base = new ArrayList<>();
+        for (int i = 0; i < 20000; i++) {
+            base.add(i % 7 == 0 ? "}" : i % 11 == 0 ? "" : "line " + rand.nextInt(5000));
+        }
+        List<String> modified = new ArrayList<>(base);
+        for (int i = 0; i < 2000; i++) {
+            int pos = rand.nextInt(modified.size());
+            switch (rand.nextInt(3)) {
+                case 0:
+                    modified.remove(pos);
+                    break;
+                case 1:
+                    modified.add(pos, "added " + rand.nextInt(5000));
+                    break;
+                default:
+                    modified.set(pos, "changed " + rand.nextInt(5000));
+                    break;
+            }
+        }
+        roundTrip(base, modified);
+    }
+
+    private static void roundTrip(List<String> base, List<String> modified) {
+        assertValidMatch(base, modified, new HistogramDiffer().match(base, modified));
+        FileDiffResult result = diff(base, modified);
+        assertTrue(result.isChanged());
+        assertNull(result.getVerifyError(), result.getVerifyError());
+    }
+
+    /**
+     * Diffs with verification enabled, which parses the written patch and applies it to the base.
+     */
+    private static FileDiffResult diff(List<String> base, List<String> modified) {
+        DiffOptions options = new DiffOptions();
+        options.setEngine(DiffEngine.HISTOGRAM);
+        options.setVerify(true);
+        return new DiffRunner(options, line -> { }).diffFile("Test.java", base, modified);
+    }
+
+    private static void assertValidMatch(List<String> base, List<String> modified, int[] matches) {
+        assertEquals(base.size(), matches.length);
+        int last = -1;
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] == -1) {
+                continue;
+            }
+            assertTrue("Matches out of order at line " + i, matches[i] > last);
+            assertEquals("Matched different lines at line " + i, base.get(i), modified.get(matches[i]));
+            last = matches[i];
+        }
+    }
+
+    private static List<String> lines(String... lines) {
+        return Arrays.asList(lines);
+    }
+}
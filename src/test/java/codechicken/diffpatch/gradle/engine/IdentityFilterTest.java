@@ -0,0 +1,103 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.gradle.util.InputTree;
+import codechicken.diffpatch.gradle.util.Utils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link IdentityFilter} finds identical files, and hands back what it read of changed files.
+ */
+public class IdentityFilterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testCompare() throws IOException {
+        File base = temp.newFolder("base");
+        File modified = temp.newFolder("modified");
+        write(base, "same.txt", "same\n");
+        write(modified, "same.txt", "same\n");
+        write(base, "changed.txt", "aaaa\n");
+        write(modified, "changed.txt", "bbbb\n");
+        write(base, "resized.txt", "a\n");
+        write(modified, "resized.txt", "longer\n");
+        write(modified, "added.txt", "added\n");
+
+        try (InputTree baseTree = InputTree.open(base, null);
+             InputTree modifiedTree = InputTree.open(modified, null);
+             IdentityFilter filter = new IdentityFilter(baseTree, modifiedTree, null)) {
+            IdentityFilter.Comparison same = filter.compare("same.txt");
+            assertTrue(same.isIdentical());
+            assertNull(same.getBase());
+
+            //Same size, so both sides are read and returned.
+            IdentityFilter.Comparison changed = filter.compare("changed.txt");
+            assertFalse(changed.isIdentical());
+            assertEquals("aaaa\n", string(Utils.toBytes(changed.getBase())));
+            assertEquals("bbbb\n", string(Utils.toBytes(changed.getModified())));
+
+            //Different sizes are never read.
+            IdentityFilter.Comparison resized = filter.compare("resized.txt");
+            assertFalse(resized.isIdentical());
+            assertNull(resized.getBase());
+            assertNull(resized.getModified());
+            assertFalse(filter.isIdentical("added.txt"));
+
+            assertEquals(1, filter.getIdentical());
+            assertEquals(10, filter.getIdenticalBytes());
+        }
+    }
+
+    @Test
+    public void testHashIndex() throws IOException {
+        File base = temp.newFolder("base");
+        File modified = temp.newFolder("modified");
+        File index = temp.newFolder("index");
+        write(base, "same.txt", "same\n");
+        write(modified, "same.txt", "same\n");
+        write(base, "changed.txt", "aaaa\n");
+        write(modified, "changed.txt", "bbbb\n");
+        //Files modified just now are too racy to index.
+        long past = System.currentTimeMillis() - 60000;
+        for (File dir : new File[] { base, modified }) {
+            for (File file : dir.listFiles()) {
+                assertTrue(file.setLastModified(past));
+            }
+        }
+        try (InputTree baseTree = InputTree.open(base, null);
+             InputTree modifiedTree = InputTree.open(modified, null);
+             IdentityFilter filter = new IdentityFilter(baseTree, modifiedTree, index)) {
+            assertTrue(filter.isIdentical("same.txt"));
+            assertFalse(filter.isIdentical("changed.txt"));
+        }
+
+        //The unchanged base is compared by its indexed hash, only the modified side is read.
+        write(modified, "same.txt", "diff\n");
+        assertTrue(new File(modified, "same.txt").setLastModified(past + 10000));
+        try (InputTree baseTree = InputTree.open(base, null);
+             InputTree modifiedTree = InputTree.open(modified, null);
+             IdentityFilter filter = new IdentityFilter(baseTree, modifiedTree, index)) {
+            IdentityFilter.Comparison comparison = filter.compare("same.txt");
+            assertFalse(comparison.isIdentical());
+            assertNull(comparison.getBase());
+            assertEquals("diff\n", string(Utils.toBytes(comparison.getModified())));
+        }
+    }
+
+    private static void write(File dir, String path, String contents) throws IOException {
+        Utils.writeFile(new File(dir, path), contents.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String string(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,154 @@
+package codechicken.diffpatch.gradle.engine;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link OrderedWorkQueue} completes files in submission order, whatever order
+ * the pool finishes them in, without exceeding its file and byte caps.
+ */
+public class OrderedWorkQueueTest {
+
+    @Test
+    public void testInOrderUnderMaxInFlight() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Random rand = new Random(1);
+            OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<>(pool, 16, 1000, "test");
+            List<Integer> completed = new ArrayList<>();
+            AtomicInteger inFlight = new AtomicInteger();
+            int maxFiles = 0;
+            for (int i = 0; i < 200; i++) {
+                int index = i;
+                int sleep = rand.nextInt(3);
+                long size = 50 + rand.nextInt(200);
+                queue.submit("file" + i, size, () -> {
+                    sleep(sleep);
+                    return index;
+                }, result -> {
+                    assertEquals(index, result.intValue());
+                    completed.add(result);
+                    inFlight.decrementAndGet();
+                });
+                maxFiles = Math.max(maxFiles, inFlight.incrementAndGet());
+                assertEquals(inFlight.get(), queue.getPending());
+                assertTrue("In flight " + queue.getInFlightBytes(), queue.getInFlightBytes() <= 1000);
+            }
+            queue.drain();
+            assertEquals(0, queue.getPending());
+            assertEquals(0, queue.getInFlightBytes());
+            assertEquals(200, completed.size());
+            for (int i = 0; i < completed.size(); i++) {
+                assertEquals(i, completed.get(i).intValue());
+            }
+            //The byte cap, not the file cap, limits this queue.
+            assertTrue("Max files " + maxFiles, maxFiles < 16);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testMaxPending() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<>(pool, 3, Long.MAX_VALUE, "test");
+            List<Integer> completed = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                int index = i;
+                queue.submit("file" + i, 1, () -> index, completed::add);
+                assertTrue(queue.getPending() <= 3);
+                assertEquals(Math.max(0, i - 2), completed.size());
+            }
+            queue.drain();
+            assertEquals(10, completed.size());
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testOversizedFileOnItsOwn() throws IOException {
+        OrderedWorkQueue<String> queue = new OrderedWorkQueue<>(null, 16, 100, "test");
+        List<String> completed = new ArrayList<>();
+        queue.submit("small", 10, () -> "small", completed::add);
+        queue.submit("large", 500, () -> "large", completed::add);
+        assertEquals(1, queue.getPending());
+        assertEquals(500, queue.getInFlightBytes());
+        queue.submit("after", 10, () -> "after", completed::add);
+        assertEquals(1, queue.getPending());
+        queue.drain();
+        assertEquals(3, completed.size());
+        assertEquals("after", completed.get(2));
+    }
+
+    @Test
+    public void testNullWork() throws IOException {
+        OrderedWorkQueue<String> queue = new OrderedWorkQueue<>(null, 16, 100, "test");
+        List<String> completed = new ArrayList<>();
+        queue.submit("a", 0, () -> "a", completed::add);
+        queue.submit("copied", 0, null, completed::add);
+        queue.drain();
+        assertEquals("a", completed.get(0));
+        assertNull(completed.get(1));
+    }
+
+    @Test
+    public void testStop() throws IOException {
+        OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<>(null, 16, Long.MAX_VALUE, "test");
+        List<Integer> completed = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            int index = i;
+            queue.submit("file" + i, 1, () -> index, result -> {
+                completed.add(result);
+                if (result == 2) {
+                    queue.stop();
+                }
+            });
+        }
+        queue.drain();
+        assertTrue(queue.isStopped());
+        assertEquals(3, completed.size());
+
+        queue.submit("late", 1, () -> 10, completed::add);
+        queue.drain();
+        assertEquals(3, completed.size());
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        try {
+            OrderedWorkQueue<Integer> queue = new OrderedWorkQueue<>(pool, 16, Long.MAX_VALUE, "test");
+            queue.submit("broken", 1, () -> {
+                throw new IllegalStateException("Broken.");
+            }, result -> fail());
+            try {
+                queue.drain();
+                fail();
+            } catch (RuntimeException e) {
+                assertEquals("Failed to test: broken", e.getMessage());
+                assertTrue(e.getCause() instanceof IllegalStateException);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private static void sleep(int millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
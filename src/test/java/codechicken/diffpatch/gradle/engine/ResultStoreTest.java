@@ -0,0 +1,159 @@
+package codechicken.diffpatch.gradle.engine;
+
+import codechicken.diffpatch.util.PatchMode;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ResultStore} entries survive a put and get, and that trimming evicts the least recently used.
+ */
+public class ResultStoreTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testPutGet() throws IOException {
+        ResultStore store = new ResultStore(temp.newFolder("store"), 1024 * 1024);
+        String key = key(store, "base");
+        assertNull(store.get("A.java", key));
+
+        FilePatchResult result = result("output", "reject", false);
+        result.setTier(PatchMode.FUZZY);
+        store.put(key, result);
+
+        FilePatchResult stored = store.get("A.java", key);
+        assertNotNull(stored);
+        assertEquals("A.java", stored.getPath());
+        assertFalse(stored.isSuccess());
+        assertEquals(PatchMode.FUZZY, stored.getTier());
+        assertArrayEquals(result.getOutput(), stored.getOutput());
+        assertArrayEquals(result.getReject(), stored.getReject());
+        assertEquals(2, stored.getHunks().size());
+        HunkResult hunk = stored.getHunks().get(1);
+        assertFalse(hunk.isSuccess());
+        assertEquals(PatchMode.FUZZY, hunk.getMode());
+        assertEquals(-3, hunk.getOffset());
+        assertEquals(0.5F, hunk.getFuzzyQuality(), 0);
+        assertEquals("hunk 2", hunk.getSummary());
+        assertEquals(1, store.getHits());
+        assertEquals(1, store.getMisses());
+    }
+
+    @Test
+    public void testKeyCoversInputs() {
+        ResultStore store = new ResultStore(temp.getRoot(), 1024);
+        PatchOptions options = new PatchOptions();
+        byte[] patch = bytes("patch");
+        String key = store.key(options, bytes("base"), patch);
+        assertEquals(key, store.key(options, bytes("base"), patch));
+        assertNotEquals(key, store.key(options, bytes("other"), patch));
+        assertNotEquals(key, store.key(options, null, patch));
+        assertNotEquals(key, store.key(options, bytes("base"), bytes("other")));
+        options.setMode(PatchMode.FUZZY);
+        assertNotEquals(key, store.key(options, bytes("base"), patch));
+    }
+
+    @Test
+    public void testErrorsNotStored() throws IOException {
+        ResultStore store = new ResultStore(temp.newFolder("store"), 1024 * 1024);
+        String key = key(store, "base");
+        store.put(key, new FilePatchResult("A.java", false, null, null, Collections.emptyList(), "Missing base file."));
+        assertNull(store.get("A.java", key));
+    }
+
+    @Test
+    public void testTruncatedEntry() throws IOException {
+        File root = temp.newFolder("store");
+        ResultStore store = new ResultStore(root, 1024 * 1024);
+        String key = key(store, "base");
+        store.put(key, result("output", null, true));
+        Path entry = entries(root).get(0);
+        byte[] bytes = Files.readAllBytes(entry);
+        for (int len : new int[] { bytes.length - 1, bytes.length / 2, 3, 0 }) {
+            Files.write(entry, Arrays.copyOf(bytes, len));
+            assertNull("Truncated to " + len, store.get("A.java", key));
+        }
+        assertEquals(0, store.getHits());
+
+        //A fresh put replaces the damaged entry.
+        store.put(key, result("output", null, true));
+        assertNotNull(store.get("A.java", key));
+    }
+
+    @Test
+    public void testTrim() throws IOException {
+        File root = temp.newFolder("store");
+        ResultStore store = new ResultStore(root, 4096);
+        byte[] output = new byte[1000];
+        long now = System.currentTimeMillis();
+        String[] keys = new String[8];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = key(store, "base" + i);
+            store.put(keys[i], result(new String(output, StandardCharsets.UTF_8), null, true));
+        }
+        //Ages each entry by its index, oldest first, then marks the oldest as just used.
+        for (int i = 0; i < keys.length; i++) {
+            Files.setLastModifiedTime(entry(root, keys[i]), FileTime.fromMillis(now - (keys.length - i) * 60000L));
+        }
+        assertNotNull(store.get("A.java", keys[0]));
+
+        store.trim();
+        long total = 0;
+        for (Path path : entries(root)) {
+            total += Files.size(path);
+        }
+        assertTrue("Store still " + total + " bytes", total <= 4096);
+        assertTrue(Files.exists(entry(root, keys[0])));
+        assertTrue(Files.exists(entry(root, keys[keys.length - 1])));
+        assertFalse(Files.exists(entry(root, keys[1])));
+        assertNull(store.get("A.java", keys[1]));
+    }
+
+    @Test
+    public void testTrimMissingStore() throws IOException {
+        new ResultStore(new File(temp.getRoot(), "missing"), 0).trim();
+    }
+
+    private static String key(ResultStore store, String base) {
+        return store.key(new PatchOptions(), bytes(base), bytes("patch"));
+    }
+
+    private static FilePatchResult result(String output, String reject, boolean success) {
+        List<HunkResult> hunks = Arrays.asList(
+                new HunkResult(true, PatchMode.EXACT, 0, 1, "hunk 1"),
+                new HunkResult(success, PatchMode.FUZZY, -3, 0.5F, "hunk 2")
+        );
+        return new FilePatchResult("A.java", success, output != null ? bytes(output) : null, reject != null ? bytes(reject) : null, hunks);
+    }
+
+    private static Path entry(File root, String key) {
+        return root.toPath().resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    private static List<Path> entries(File root) throws IOException {
+        try (Stream<Path> stream = Files.walk(root.toPath(), 2)) {
+            return stream.filter(p -> p.getParent() != null && !p.getParent().equals(root.toPath()) && Files.isRegularFile(p))
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static byte[] bytes(String str) {
+        return str.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,89 @@
+package codechicken.diffpatch.gradle.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link ConsumingOutputStream} splits its input into lines, however the bytes are written.
+ */
+public class ConsumingOutputStreamTest {
+
+    @Test
+    public void testSplitLines() {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        write(os, "one\ntwo\n\nthree");
+        assertEquals(Arrays.asList("one", "two", ""), lines);
+        write(os, " continued\n");
+        assertEquals(Arrays.asList("one", "two", "", "three continued"), lines);
+    }
+
+    @Test
+    public void testSingleBytes() {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        for (byte b : "a\r\nb\n".getBytes(StandardCharsets.UTF_8)) {
+            os.write(b);
+        }
+        assertEquals(Arrays.asList("a", "b"), lines);
+    }
+
+    @Test
+    public void testCrlf() {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        write(os, "one\r\ntwo\r");
+        write(os, "\nin\rline\n");
+        assertEquals(Arrays.asList("one", "two", "in\rline"), lines);
+    }
+
+    @Test
+    public void testMultiByteSplitAcrossWrites() {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        byte[] bytes = "caf\u00e9 \u20ac\n".getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < bytes.length; i += 2) {
+            os.write(bytes, i, Math.min(2, bytes.length - i));
+        }
+        assertEquals(Collections.singletonList("caf\u00e9 \u20ac"), lines);
+    }
+
+    @Test
+    public void testLongLine() {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append(i);
+        }
+        write(os, builder + "\n");
+        assertEquals(Collections.singletonList(builder.toString()), lines);
+    }
+
+    @Test
+    public void testPartialLineOnClose() throws IOException {
+        List<String> lines = new ArrayList<>();
+        ConsumingOutputStream os = new ConsumingOutputStream(lines::add);
+        write(os, "done\npartial");
+        //Flushing must not break a line which is still being written.
+        os.flush();
+        assertEquals(Collections.singletonList("done"), lines);
+        os.close();
+        assertEquals(Arrays.asList("done", "partial"), lines);
+        os.close();
+        assertEquals(2, lines.size());
+    }
+
+    private static void write(ConsumingOutputStream os, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        os.write(bytes, 0, bytes.length);
+    }
+}
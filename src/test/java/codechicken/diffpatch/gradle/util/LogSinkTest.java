@@ -0,0 +1,96 @@
+package codechicken.diffpatch.gradle.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Tests {@link LogSink} writes every line to its log file, in order, whether or not it is asynchronous.
+ */
+public class LogSinkTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSync() throws IOException {
+        assertWritesInOrder(false);
+    }
+
+    @Test
+    public void testAsync() throws IOException {
+        assertWritesInOrder(true);
+    }
+
+    @Test
+    public void testCreatesParentDirectories() throws IOException {
+        File logFile = new File(temp.getRoot(), "logs/nested/log.txt");
+        try (LogSink sink = new LogSink(null, logFile, true)) {
+            sink.accept("line");
+        }
+        assertEquals(Collections.singletonList("line"), Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testNoDestination() throws IOException {
+        try (LogSink sink = new LogSink(null, null, true)) {
+            sink.accept("dropped");
+        }
+    }
+
+    @Test
+    public void testAsyncFromManyThreads() throws Exception {
+        File logFile = new File(temp.getRoot(), "log.txt");
+        int threads = 4;
+        int perThread = 2000;
+        try (LogSink sink = new LogSink(null, logFile, true)) {
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int id = t;
+                Thread thread = new Thread(() -> {
+                    for (int i = 0; i < perThread; i++) {
+                        sink.accept(id + ":" + i);
+                    }
+                });
+                thread.start();
+                writers.add(thread);
+            }
+            for (Thread thread : writers) {
+                thread.join();
+            }
+        }
+        List<String> lines = Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8);
+        assertEquals(threads * perThread, lines.size());
+        //Lines from one thread keep their order.
+        int[] next = new int[threads];
+        for (String line : lines) {
+            String[] split = line.split(":");
+            int id = Integer.parseInt(split[0]);
+            assertEquals(next[id]++, Integer.parseInt(split[1]));
+        }
+    }
+
+    private void assertWritesInOrder(boolean async) throws IOException {
+        File logFile = new File(temp.getRoot(), "log.txt");
+        List<String> expected = new ArrayList<>();
+        try (LogSink sink = new LogSink(null, logFile, async)) {
+            for (int i = 0; i < 10000; i++) {
+                String line = "line " + i;
+                sink.accept(line);
+                expected.add(line);
+            }
+        }
+        //Closing waits for every queued line to be written.
+        assertEquals(expected, Files.readAllLines(logFile.toPath(), StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,207 @@
+package codechicken.diffpatch.gradle.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.Assert.*;
+
+/**
+ * Writes archives with {@link ZipOutputTree} and reads them back with {@link ZipFile}.
+ */
+public class ZipOutputTreeTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testWriteDeflated() throws IOException {
+        assertRoundTrip(-1);
+    }
+
+    @Test
+    public void testWriteStored() throws IOException {
+        assertRoundTrip(0);
+    }
+
+    @Test
+    public void testIncompressibleEntriesStored() throws IOException {
+        byte[] bytes = new byte[4096];
+        new Random(1).nextBytes(bytes);
+        File file = temp.newFile("out.zip");
+        try (ZipOutputTree tree = new ZipOutputTree(file)) {
+            tree.write("random.bin", bytes);
+            tree.finish();
+        }
+        try (ZipFile zip = new ZipFile(file)) {
+            ZipEntry entry = zip.getEntry("random.bin");
+            assertEquals(ZipEntry.STORED, entry.getMethod());
+            assertArrayEquals(bytes, read(zip, entry));
+        }
+    }
+
+    @Test
+    public void testUnicodeNames() throws IOException {
+        File file = temp.newFile("out.zip");
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("dir/\u00fcn\u00efc\u00f6d\u00e9.txt", "\u00fcn\u00efc\u00f6d\u00e9\n".getBytes(StandardCharsets.UTF_8));
+        write(file, files, -1);
+        assertContents(file, files);
+        try (InputTree tree = new ZipIndexCache().open(file, null)) {
+            assertEquals(files.keySet(), tree.getPaths());
+        }
+    }
+
+    @Test
+    public void testReproducible() throws IOException {
+        File a = temp.newFile("a.zip");
+        File b = temp.newFile("b.zip");
+        write(a, files(), -1);
+        write(b, files(), -1);
+        assertArrayEquals(Files.readAllBytes(a.toPath()), Files.readAllBytes(b.toPath()));
+    }
+
+    @Test
+    public void testCopyFromZip() throws IOException {
+        File source = temp.newFile("source.zip");
+        Map<String, byte[]> files = files();
+        try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(source))) {
+            for (Map.Entry<String, byte[]> e : files.entrySet()) {
+                zos.putNextEntry(new ZipEntry(e.getKey()));
+                zos.write(e.getValue());
+                zos.closeEntry();
+            }
+        }
+        File file = temp.newFile("out.zip");
+        try (InputTree from = new ZipIndexCache().open(source, null); ZipOutputTree tree = new ZipOutputTree(file)) {
+            assertTrue(from instanceof ZipIndexInputTree);
+            for (String path : from.getPaths()) {
+                assertEquals(files.get(path).length, tree.copy(from, path));
+            }
+            tree.finish();
+        }
+        assertContents(file, files);
+    }
+
+    @Test
+    public void testCopyFromDirectory() throws IOException {
+        File dir = temp.newFolder("source");
+        Map<String, byte[]> files = files();
+        for (Map.Entry<String, byte[]> e : files.entrySet()) {
+            Utils.writeFile(new File(dir, e.getKey()), e.getValue());
+        }
+        File file = temp.newFile("out.zip");
+        try (InputTree from = InputTree.open(dir, null); ZipOutputTree tree = new ZipOutputTree(file)) {
+            for (String path : from.getPaths()) {
+                tree.copy(from, path);
+            }
+            tree.finish();
+        }
+        assertContents(file, files);
+    }
+
+    @Test
+    public void testCloseWithoutFinish() throws IOException {
+        File dir = temp.newFolder("out");
+        File file = new File(dir, "out.zip");
+        Map<String, byte[]> files = files();
+        write(file, files, -1);
+        byte[] previous = Files.readAllBytes(file.toPath());
+
+        try (ZipOutputTree tree = new ZipOutputTree(file)) {
+            tree.write("other.txt", "other\n".getBytes(StandardCharsets.UTF_8));
+        }
+        assertArrayEquals(previous, Files.readAllBytes(file.toPath()));
+        assertArrayEquals(new String[] { "out.zip" }, dir.list());
+        assertContents(file, files);
+    }
+
+    @Test
+    public void testZip64EntryCount() throws IOException {
+        int count = 70000;
+        File file = temp.newFile("out.zip");
+        try (ZipOutputTree tree = new ZipOutputTree(file)) {
+            for (int i = 0; i < count; i++) {
+                tree.write("file" + i + ".txt", ("content " + i).getBytes(StandardCharsets.UTF_8));
+            }
+            tree.finish();
+        }
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(count, zip.size());
+            for (int i = 0; i < count; i += 9999) {
+                assertEquals("content " + i, new String(read(zip, zip.getEntry("file" + i + ".txt")), StandardCharsets.UTF_8));
+            }
+        }
+        //Zip64 archives are not indexed, the cache falls back to ZipFile.
+        try (InputTree tree = new ZipIndexCache().open(file, null)) {
+            assertFalse(tree instanceof ZipIndexInputTree);
+            assertEquals(count, tree.getPaths().size());
+            assertEquals("content " + (count - 1), new String(tree.read("file" + (count - 1) + ".txt"), StandardCharsets.UTF_8));
+        }
+    }
+
+    private void assertRoundTrip(int compressionLevel) throws IOException {
+        File file = temp.newFile("out.zip");
+        Map<String, byte[]> files = files();
+        write(file, files, compressionLevel);
+        assertContents(file, files);
+        if (compressionLevel == 0) {
+            try (ZipFile zip = new ZipFile(file)) {
+                zip.stream().forEach(e -> assertEquals(ZipEntry.STORED, e.getMethod()));
+            }
+        }
+    }
+
+    private static void write(File file, Map<String, byte[]> files, int compressionLevel) throws IOException {
+        try (ZipOutputTree tree = new ZipOutputTree(file, compressionLevel)) {
+            for (Map.Entry<String, byte[]> e : files.entrySet()) {
+                tree.write(e.getKey(), e.getValue());
+            }
+            tree.finish();
+        }
+    }
+
+    private static void assertContents(File file, Map<String, byte[]> files) throws IOException {
+        try (ZipFile zip = new ZipFile(file)) {
+            assertEquals(files.size(), zip.size());
+            for (Map.Entry<String, byte[]> e : files.entrySet()) {
+                ZipEntry entry = zip.getEntry(e.getKey());
+                assertNotNull(e.getKey(), entry);
+                assertEquals(ZipOutputTree.ENTRY_TIME, entry.getTime());
+                assertArrayEquals(e.getKey(), e.getValue(), read(zip, entry));
+            }
+        }
+    }
+
+    private static Map<String, byte[]> files() {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 10000; i++) {
+            large.append("line ").append(i).append('\n');
+        }
+        Map<String, byte[]> files = new LinkedHashMap<>();
+        files.put("a.txt", "hello\n".getBytes(StandardCharsets.UTF_8));
+        files.put("empty.txt", new byte[0]);
+        files.put("dir/large.txt", large.toString().getBytes(StandardCharsets.UTF_8));
+        files.put("dir/sub/b.txt", "b\n".getBytes(StandardCharsets.UTF_8));
+        return files;
+    }
+
+    private static byte[] read(ZipFile zip, ZipEntry entry) throws IOException {
+        try (InputStream is = zip.getInputStream(entry)) {
+            return Utils.toBytes(is);
+        }
+    }
+}